@@ -0,0 +1,247 @@
+package hudson.plugins.im;
+
+import hudson.plugins.im.outbound.OutboundDispatcher;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+
+/**
+ * Isolates the calls to the IM server of one protocol from those of the others.
+ * <p>
+ * Each channel (i.e. IM protocol) gets its own pool of worker threads with a bounded queue -
+ * as many workers as the {@link OutboundDispatcher} has lanes, so the lanes can send in parallel.
+ * Each call is aborted after a timeout, which starts when the call starts running - waiting in
+ * the queue isn't counted. So a hung connection - e.g. to an IRC server - can't block sends and
+ * presence updates of another protocol.
+ * While all workers of a channel are hanging, further calls of that channel fail immediately.
+ * <p>
+ * Can be configured with the following system properties (prefixed by the name of this class):
+ * <ul>
+ * <li><code>.timeoutSeconds</code> - maximum duration of a call (default: 30)</li>
+ * <li><code>.queueCapacity</code> - maximum number of calls waiting per channel (default: 100)</li>
+ * </ul>
+ */
+public final class Bulkhead {
+
+    private static final Logger LOGGER = Logger.getLogger(Bulkhead.class.getName());
+
+    private static final String PROPERTY_PREFIX = Bulkhead.class.getName();
+
+    static final long TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(
+            SystemProperties.getLong(PROPERTY_PREFIX + ".timeoutSeconds", 30L));
+    private static final int QUEUE_CAPACITY = Math.max(1, SystemProperties.getInteger(PROPERTY_PREFIX + ".queueCapacity", 100));
+
+    private static final ConcurrentMap<String, Bulkhead> BULKHEADS = new ConcurrentHashMap<>();
+
+    static {
+        IMMetrics.setQueueDepth(IMMetrics.Queue.BULKHEADS, Bulkhead::getQueueDepth);
+    }
+
+    /**
+     * A call to the IM server.
+     */
+    @FunctionalInterface
+    public interface Call {
+        void run() throws IMException;
+    }
+
+    /**
+     * Thrown if a call wasn't run because the workers are hanging or overloaded.
+     * Unlike other failures, this doesn't mean that the connection is lost, and as the call
+     * never reached the IM server, it may be retried.
+     */
+    public static final class RejectedCallException extends IMException {
+        private static final long serialVersionUID = 1L;
+
+        public RejectedCallException(String msg) {
+            super(msg);
+        }
+    }
+
+    /**
+     * Thrown if a call was aborted after the timeout. It may have reached the IM server nevertheless,
+     * so retrying it could e.g. send a message twice.
+     */
+    public static final class TimedOutCallException extends IMException {
+        private static final long serialVersionUID = 1L;
+
+        public TimedOutCallException(String msg) {
+            super(msg);
+        }
+    }
+
+    private final String name;
+    private final int workers;
+    private final long timeoutMillis;
+    private final ThreadPoolExecutor worker;
+    private final Set<Task> running = ConcurrentHashMap.newKeySet();
+
+    Bulkhead(String name, int workers, long timeoutMillis, int queueCapacity) {
+        this.name = name;
+        this.workers = workers;
+        this.timeoutMillis = timeoutMillis;
+        this.worker = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueCapacity),
+                new NamingThreadFactory(new DaemonThreadFactory(), "IM-Bulkhead-" + name));
+        this.worker.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Returns the bulkhead of a channel.
+     *
+     * @param channel identifies the IM protocol, see {@link IMConnectionProvider#getChannel()}
+     */
+    public static Bulkhead forChannel(String channel) {
+        return BULKHEADS.computeIfAbsent(channel,
+                c -> new Bulkhead(c, OutboundDispatcher.getLaneCount(), TIMEOUT_MILLIS, QUEUE_CAPACITY));
+    }
+
+    /**
+     * Returns the number of calls waiting in all bulkheads.
+     */
+    static int getQueueDepth() {
+        int depth = 0;
+        for (Bulkhead bulkhead : BULKHEADS.values()) {
+            depth += bulkhead.worker.getQueue().size();
+        }
+        return depth;
+    }
+
+    /**
+     * Runs the call on a worker of this bulkhead and waits for it to finish.
+     *
+     * @throws RejectedCallException if the call couldn't be started because the workers are hanging or overloaded
+     * @throws TimedOutCallException if the call timed out
+     * @throws IMException if the call failed
+     */
+    public void call(Call call) throws IMException {
+        Task task = submit(call);
+        try {
+            // waiting in the queue doesn't count against the timeout - as long as the workers make progress
+            while (!task.started.await(this.timeoutMillis, TimeUnit.MILLISECONDS)) {
+                if (isHanging()) {
+                    task.cancel(false);
+                    if (task.started.getCount() == 0) {
+                        // started just now: it might be running despite the cancellation
+                        throw new TimedOutCallException("Call via " + this.name + " was aborted");
+                    }
+                    throw new RejectedCallException("Connection via " + this.name + " isn't responding");
+                }
+            }
+            task.get();
+        } catch (CancellationException e) {
+            throw new TimedOutCallException("Call via " + this.name + " timed out after " + this.timeoutMillis + "ms");
+        } catch (InterruptedException e) {
+            task.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IMException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IMException) {
+                throw (IMException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IMException(e);
+        }
+    }
+
+    /**
+     * Runs the call on a worker of this bulkhead without waiting for it.
+     * The call is aborted if it runs longer than the timeout. Failures are logged.
+     *
+     * @return false if the call couldn't be started because the workers are hanging or overloaded
+     */
+    public boolean callAsync(Call call) {
+        try {
+            submit(() -> {
+                try {
+                    call.run();
+                } catch (IMException e) {
+                    LOGGER.log(Level.FINE, "Call via " + this.name + " failed", e);
+                }
+            });
+        } catch (IMException e) {
+            LOGGER.fine(e.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    private Task submit(Call call) throws RejectedCallException {
+        if (isHanging()) {
+            throw new RejectedCallException("Connection via " + this.name + " isn't responding");
+        }
+        Task task = new Task(call);
+        try {
+            this.worker.execute(task);
+        } catch (RejectedExecutionException e) {
+            throw new RejectedCallException("Too many pending calls via " + this.name);
+        }
+        return task;
+    }
+
+    /**
+     * Returns true if all workers are stuck in calls which exceeded the timeout,
+     * e.g. in a socket write which doesn't react to being interrupted.
+     */
+    private boolean isHanging() {
+        long now = System.currentTimeMillis();
+        int hanging = 0;
+        for (Task task : this.running) {
+            if (now - task.startedAt > this.timeoutMillis) {
+                hanging++;
+            }
+        }
+        return hanging >= this.workers;
+    }
+
+    /**
+     * A call, which is cancelled once it ran for longer than the timeout.
+     */
+    private final class Task extends FutureTask<Void> {
+        private final CountDownLatch started = new CountDownLatch(1);
+        private volatile long startedAt;
+
+        Task(Call call) {
+            super(() -> {
+                call.run();
+                return null;
+            });
+        }
+
+        @Override
+        public void run() {
+            if (isDone()) {
+                // cancelled while waiting in the queue
+                return;
+            }
+            this.startedAt = System.currentTimeMillis();
+            running.add(this);
+            this.started.countDown();
+            ScheduledFuture<?> timeout = Timer.get().schedule(() -> cancel(true), timeoutMillis, TimeUnit.MILLISECONDS);
+            try {
+                super.run();
+            } finally {
+                timeout.cancel(false);
+                running.remove(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package hudson.plugins.im;
+
+import hudson.Extension;
+import hudson.model.Computer;
+import hudson.model.Executor;
+import hudson.model.ExecutorListener;
+import hudson.model.OneOffExecutor;
+import hudson.model.Queue;
+import hudson.model.TaskListener;
+import hudson.model.queue.QueueListener;
+import hudson.slaves.ComputerListener;
+import hudson.slaves.OfflineCause;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+
+/**
+ * Keeps track of the number of online and busy executors and of the queue length,
+ * so that {@link JenkinsIsBusyListener} doesn't have to look at all computers and
+ * executors for each presence update.
+ * <p>
+ * The counters are updated incrementally from computer, executor and queue events.
+ * Executor events cover everything occupying an executor, including the <code>node</code>
+ * blocks of a Pipeline. As events may be missed - e.g. for executors which were busy before
+ * the plugin was loaded - the counters are reconciled with a full scan from time to time.
+ * The interval can be configured with the system property
+ * <code>hudson.plugins.im.BusyStateTracker.reconcileMinutes</code> (default: 10).
+ */
+public final class BusyStateTracker {
+
+    private static final Logger LOGGER = Logger.getLogger(BusyStateTracker.class.getName());
+
+    private static final long RECONCILE_MILLIS = TimeUnit.MINUTES.toMillis(
+            SystemProperties.getLong(BusyStateTracker.class.getName() + ".reconcileMinutes", 10L));
+
+    private static final BusyStateTracker INSTANCE = new BusyStateTracker();
+
+    // computer name -> number of executors if online, 0 otherwise
+    private final Map<String, Integer> onlineExecutors = new ConcurrentHashMap<>();
+    private final AtomicInteger totalExecutors = new AtomicInteger();
+    private final Set<Executor> busyExecutors = ConcurrentHashMap.newKeySet();
+    // ids of the items in the queue
+    private final Set<Long> queueItems = ConcurrentHashMap.newKeySet();
+
+    private volatile long lastReconciled;
+
+    BusyStateTracker() {
+    }
+
+    public static BusyStateTracker get() {
+        return INSTANCE;
+    }
+
+    public int getTotalExecutors() {
+        reconcileIfStale();
+        return Math.max(0, this.totalExecutors.get());
+    }
+
+    public int getBusyExecutors() {
+        reconcileIfStale();
+        return Math.min(this.busyExecutors.size(), getTotalExecutors());
+    }
+
+    public int getQueueLength() {
+        reconcileIfStale();
+        return this.queueItems.size();
+    }
+
+    /**
+     * Reconciles the counters if that hasn't been done for the configured interval.
+     */
+    void reconcileIfStale() {
+        if (System.currentTimeMillis() - this.lastReconciled >= RECONCILE_MILLIS) {
+            reconcile();
+        }
+    }
+
+    /**
+     * Recomputes all counters by looking at all computers, executors and queue items.
+     */
+    void reconcile() {
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (jenkins != null) {
+            reconcile(jenkins.getComputers(), jenkins.getQueue().getItems());
+        }
+    }
+
+    synchronized void reconcile(Computer[] computers, Queue.Item[] items) {
+        reconcileComputers(computers);
+
+        Set<Executor> busy = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Computer computer : computers) {
+            for (Executor executor : computer.getExecutors()) {
+                if (executor.isBusy()) {
+                    busy.add(executor);
+                }
+            }
+        }
+        int oldBusy = this.busyExecutors.size();
+        this.busyExecutors.retainAll(busy);
+        this.busyExecutors.addAll(busy);
+
+        int oldQueueLength = this.queueItems.size();
+        this.queueItems.clear();
+        for (Queue.Item item : items) {
+            this.queueItems.add(item.getId());
+        }
+
+        if (oldBusy != busy.size() || oldQueueLength != this.queueItems.size()) {
+            LOGGER.fine("Reconciled busy executors " + oldBusy + " -> " + busy.size()
+                    + ", queue length " + oldQueueLength + " -> " + this.queueItems.size());
+        }
+        this.lastReconciled = System.currentTimeMillis();
+    }
+
+    /**
+     * Recomputes the number of online executors. Cheap, as executors aren't looked at.
+     */
+    private synchronized void reconcileComputers(Computer[] computers) {
+        this.onlineExecutors.clear();
+        int total = 0;
+        for (Computer computer : computers) {
+            int executors = computer.isOnline() ? computer.getNumExecutors() : 0;
+            this.onlineExecutors.put(computer.getName(), executors);
+            total += executors;
+        }
+        this.totalExecutors.set(total);
+    }
+
+    void setOnline(Computer computer, boolean online) {
+        int executors = online ? computer.getNumExecutors() : 0;
+        Integer old = this.onlineExecutors.put(computer.getName(), executors);
+        this.totalExecutors.addAndGet(executors - (old != null ? old : 0));
+    }
+
+    void taskStarted(Executor executor) {
+        // flyweight tasks like Pipeline or matrix parent builds don't occupy an executor
+        if (!(executor instanceof OneOffExecutor)) {
+            this.busyExecutors.add(executor);
+        }
+    }
+
+    void taskFinished(Executor executor) {
+        this.busyExecutors.remove(executor);
+    }
+
+    @Extension
+    public static final class ComputerEvents extends ComputerListener {
+
+        @Override
+        public void onOnline(Computer c, TaskListener listener) {
+            get().setOnline(c, true);
+        }
+
+        @Override
+        public void onOffline(Computer c, OfflineCause cause) {
+            get().setOnline(c, false);
+        }
+
+        @Override
+        public void onTemporarilyOnline(Computer c) {
+            get().setOnline(c, c.isOnline());
+        }
+
+        @Override
+        public void onTemporarilyOffline(Computer c, OfflineCause cause) {
+            get().setOnline(c, false);
+        }
+
+        @Override
+        public void onConfigurationChange() {
+            // nodes added or removed or numbers of executors changed
+            Jenkins jenkins = Jenkins.getInstanceOrNull();
+            if (jenkins != null) {
+                get().reconcileComputers(jenkins.getComputers());
+            }
+        }
+    }
+
+    @Extension
+    public static final class ExecutorEvents implements ExecutorListener {
+
+        @Override
+        public void taskStarted(Executor executor, Queue.Task task) {
+            get().taskStarted(executor);
+        }
+
+        @Override
+        public void taskCompleted(Executor executor, Queue.Task task, long durationMS) {
+            get().taskFinished(executor);
+        }
+
+        @Override
+        public void taskCompletedWithProblems(Executor executor, Queue.Task task, long durationMS, Throwable problems) {
+            get().taskFinished(executor);
+        }
+    }
+
+    @Extension
+    public static final class QueueEvents extends QueueListener {
+
+        @Override
+        public void onEnterWaiting(Queue.WaitingItem wi) {
+            get().queueItems.add(wi.getId());
+        }
+
+        @Override
+        public void onLeft(Queue.LeftItem li) {
+            get().queueItems.remove(li.getId());
+        }
+    }
+}
@@ -48,6 +48,17 @@ public interface IMChat {
      */
     public boolean isCommandsAccepted();
 
+    /**
+     * Returns an id which identifies this chat across restarts - e.g. the name of
+     * the IRC channel or the Jabber id of the conference room.
+     * Used to persist the aliases defined by the users of this chat.
+     *
+     * @return the id or null if the chat can't be identified. Then its aliases aren't persisted.
+     */
+    default String getChatId() {
+        return null;
+    }
+
     /**
      * Adds a new {@link IMMessageListener} to this chat.
      *
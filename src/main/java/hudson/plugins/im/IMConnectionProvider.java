@@ -2,18 +2,46 @@ package hudson.plugins.im;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import hudson.model.User;
+import hudson.plugins.im.outbound.OutboundDispatcher;
+import hudson.plugins.im.outbound.Outbox;
+import hudson.plugins.im.outbound.RateLimitedConnection;
 import hudson.plugins.im.tools.ExceptionHelper;
-import java.util.concurrent.Semaphore;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 
 /**
  * Abstract implementation of a provider of {@link IMConnection}s.
+ * <p>
+ * The current connection is published via an atomic reference, so
+ * {@link #currentConnection()} never blocks - not even while a (re)connect
+ * is in progress. (Re)connects are serialized by a separate lock.
+ * A new connection first replays the messages kept in the {@link Outbox}
+ * and is only published afterwards, so new notifications - which are kept in
+ * the outbox until then - can't overtake older ones.
+ * <p>
+ * Reconnects are run on a scheduler shared by all providers. The delays between
+ * attempts are computed by a {@link ReconnectBackoff} which can be tuned with these
+ * system properties (prefixed by the name of this class):
+ * <ul>
+ * <li><code>.reconnectInitialDelayMillis</code> - delay before the 2nd attempt (default 5000)</li>
+ * <li><code>.reconnectMultiplier</code> - growth of the delay per attempt (default 2)</li>
+ * <li><code>.reconnectMaxDelayMillis</code> - cap for the delay (default 15 minutes)</li>
+ * <li><code>.reconnectJitter</code> - fraction by which delays are randomly spread (default 0.2)</li>
+ * </ul>
+ * The first attempt after a connection was lost is made almost immediately -
+ * unless the connection was flapping, i.e. it broke again shortly after it was established.
  *
  * @author kutzi
  */
@@ -23,12 +51,55 @@ public abstract class IMConnectionProvider implements IMConnectionListener {
 
     private static final IMConnection NULL_CONNECTION = new DummyConnection();
 
-    protected IMPublisherDescriptor descriptor;
-    private IMConnection imConnection = NULL_CONNECTION;
+    private static final String PROPERTY_PREFIX = IMConnectionProvider.class.getName();
 
-    private Authentication authentication = null;
+    private static final long RECONNECT_INITIAL_DELAY_MILLIS =
+            SystemProperties.getLong(PROPERTY_PREFIX + ".reconnectInitialDelayMillis", 5000L);
+
+    private static final double RECONNECT_MULTIPLIER = getDouble(PROPERTY_PREFIX + ".reconnectMultiplier", 2.0);
+
+    private static final long RECONNECT_MAX_DELAY_MILLIS =
+            SystemProperties.getLong(PROPERTY_PREFIX + ".reconnectMaxDelayMillis", TimeUnit.MINUTES.toMillis(15));
+
+    private static final double RECONNECT_JITTER = getDouble(PROPERTY_PREFIX + ".reconnectJitter", 0.2);
+
+    /**
+     * A connection which was up at least this long is considered stable.
+     * When it breaks, the backoff starts over with an immediate attempt.
+     */
+    private static final long STABLE_CONNECTION_MILLIS = TimeUnit.MINUTES.toMillis(1);
 
-    private final ConnectorRunnable connector = new ConnectorRunnable();
+    private static final ScheduledExecutorService RECONNECT_SCHEDULER = Executors.newScheduledThreadPool(2,
+            new NamingThreadFactory(new DaemonThreadFactory(), "IM-Reconnector"));
+
+    protected volatile IMPublisherDescriptor descriptor;
+    private final AtomicReference<IMConnection> imConnection = new AtomicReference<>(NULL_CONNECTION);
+    // a new connection which replays the outbox before it is published
+    private volatile IMConnection replayingConnection;
+
+    /**
+     * Guards creating and releasing connections. Never held while reading the current connection.
+     */
+    private final Object reconnectLock = new Object();
+
+    /**
+     * Guards the scheduling state below. Never held while connecting.
+     */
+    private final Object scheduleLock = new Object();
+    private final ReconnectBackoff backoff = new ReconnectBackoff(RECONNECT_INITIAL_DELAY_MILLIS,
+            RECONNECT_MULTIPLIER, RECONNECT_MAX_DELAY_MILLIS, RECONNECT_JITTER);
+    private ScheduledFuture<?> scheduledReconnect;
+    private boolean reconnecting;
+    // a reconnect was requested (by a configuration change) while connecting
+    private boolean reconnectRequested;
+    // a connection broke while connecting - most likely the one just released
+    private boolean brokenWhileReconnecting;
+    private boolean connectedOnce;
+    private long connectedSince;
+    // when the connection was lost, 0 if it wasn't
+    private long brokenSince;
+
+    private Authentication authentication = null;
 
     protected IMConnectionProvider() {
     }
@@ -37,10 +108,7 @@ public abstract class IMConnectionProvider implements IMConnectionListener {
      * Must be called once to initialize the provider.
      */
     protected void init() {
-        Thread connectorThread = new Thread(this.connector, "IM-Reconnector-Thread");
-        connectorThread.setDaemon(true);
-        connectorThread.start();
-        tryReconnect();
+        tryReconnect(false);
     }
 
     /**
@@ -52,22 +120,43 @@ public abstract class IMConnectionProvider implements IMConnectionListener {
      */
     public abstract IMConnection createConnection() throws IMException;
 
-    private synchronized boolean create() throws IMException {
-        if (this.descriptor == null || !this.descriptor.isEnabled()) {
-            // plugin is disabled
-            this.imConnection = NULL_CONNECTION;
-            return true;
+    /**
+     * Creates a new connection, but doesn't publish it yet.
+     *
+     * @return the new connection, {@link #NULL_CONNECTION} if the plugin is disabled
+     *         or null if the connection couldn't be created
+     */
+    private IMConnection create() {
+        synchronized (this.reconnectLock) {
+            IMPublisherDescriptor desc = this.descriptor;
+            if (desc == null || !desc.isEnabled()) {
+                // plugin is disabled
+                this.imConnection.set(NULL_CONNECTION);
+                return NULL_CONNECTION;
+            }
+
+            try {
+                IMConnection connection = createConnection();
+                connection.addConnectionListener(this);
+                this.replayingConnection = connection;
+                return connection;
+            } catch (IMException e) {
+                LOGGER.log(Level.WARNING, "Could not create IM connection", e);
+                this.imConnection.set(NULL_CONNECTION);
+                return null;
+            }
         }
+    }
 
-        try {
-            this.imConnection = createConnection();
-            this.imConnection.addConnectionListener(this);
-            return true;
-        } catch (IMException e) {
-            LOGGER.log(Level.WARNING, "Could not create IM connection", e);
-            this.imConnection = NULL_CONNECTION;
-            tryReconnect();
-            return false;
+    /**
+     * Publishes the new connection - unless it was released in the meantime.
+     */
+    private void publish(IMConnection connection) {
+        synchronized (this.reconnectLock) {
+            if (this.replayingConnection == connection) {
+                this.replayingConnection = null;
+                this.imConnection.set(connection);
+            }
         }
     }
 
@@ -78,45 +167,212 @@ public abstract class IMConnectionProvider implements IMConnectionListener {
      *
      * @return the current connection. Never null.
      */
-    public synchronized IMConnection currentConnection() {
-        return this.imConnection;
+    public IMConnection currentConnection() {
+        return this.imConnection.get();
     }
 
     /**
      * Releases (and thus closes) the current connection.
      */
-    public synchronized void releaseConnection() {
-        if (this.imConnection != null) {
-            this.imConnection.removeConnectionListener(this);
-            this.imConnection.close();
-            this.imConnection = NULL_CONNECTION;
+    public void releaseConnection() {
+        synchronized (this.reconnectLock) {
+            // unpublish first, so nobody picks up the connection while it's closing
+            close(this.imConnection.getAndSet(NULL_CONNECTION));
+            close(this.replayingConnection);
+            this.replayingConnection = null;
+        }
+    }
+
+    private void close(IMConnection connection) {
+        if (connection != null && connection != NULL_CONNECTION) {
+            connection.removeConnectionListener(this);
+            connection.close();
         }
     }
 
-    protected synchronized IMPublisherDescriptor getDescriptor() {
+    protected IMPublisherDescriptor getDescriptor() {
         return this.descriptor;
     }
 
-    public synchronized void setDescriptor(IMPublisherDescriptor desc) {
+    /**
+     * Identifies the IM protocol of this provider - the same as used by {@link IMPublisher}.
+     */
+    String getChannel() {
+        IMPublisherDescriptor desc = this.descriptor;
+        return desc != null ? desc.getClass().getName() : getClass().getName();
+    }
+
+    public void setDescriptor(IMPublisherDescriptor desc) {
         this.descriptor = desc;
+        // queued messages of the protocol are sent via the current connection of this provider
+        OutboundDispatcher.registerChannel(getChannel(), this::getSendConnection);
 
         if (desc != null && desc.isEnabled()) {
-            tryReconnect();
+            // configuration changed: don't wait for a pending backoff
+            tryReconnect(true);
         }
     }
 
     @Override
     public void connectionBroken(Exception e) {
-        tryReconnect();
+        synchronized (this.scheduleLock) {
+            if (this.connectedSince != 0
+                    && System.currentTimeMillis() - this.connectedSince >= STABLE_CONNECTION_MILLIS) {
+                // most likely just a short network hiccup: retry right away
+                this.backoff.reset();
+            }
+            this.connectedSince = 0;
+            if (this.brokenSince == 0) {
+                this.brokenSince = System.currentTimeMillis();
+            }
+        }
+        tryReconnect(false);
     }
 
-    private void tryReconnect() {
-        this.connector.semaphore.release();
+    /**
+     * Schedules a reconnect unless one is already pending.
+     *
+     * @param immediately start over with the fast path of the backoff,
+     *        replacing an already scheduled attempt
+     */
+    private void tryReconnect(boolean immediately) {
+        synchronized (this.scheduleLock) {
+            if (immediately) {
+                this.backoff.reset();
+            }
+            if (this.reconnecting) {
+                // picked up when the running attempt is done
+                if (immediately) {
+                    this.reconnectRequested = true;
+                } else {
+                    this.brokenWhileReconnecting = true;
+                }
+                return;
+            }
+            if (this.scheduledReconnect != null) {
+                if (!immediately) {
+                    return;
+                }
+                this.scheduledReconnect.cancel(false);
+            }
+            scheduleReconnect();
+        }
+    }
+
+    // must hold scheduleLock
+    private void scheduleReconnect() {
+        long delay = this.backoff.nextDelayMillis();
+        if (delay >= 1000) {
+            LOGGER.info("Next connection attempt in " + TimeUnit.MILLISECONDS.toSeconds(delay) + " seconds");
+        }
+        this.scheduledReconnect = RECONNECT_SCHEDULER.schedule(this::reconnect, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void reconnect() {
+        synchronized (this.scheduleLock) {
+            this.scheduledReconnect = null;
+            this.reconnecting = true;
+            this.reconnectRequested = false;
+            this.brokenWhileReconnecting = false;
+            LOGGER.info(this.connectedOnce ? "Trying to reconnect" : "Trying to connect");
+        }
+
+        boolean success = false;
+        try {
+            IMConnection connection;
+            synchronized (this.reconnectLock) {
+                try {
+                    releaseConnection();
+                } catch (Exception e) {
+                    LOGGER.warning(ExceptionHelper.dump(e));
+                }
+                connection = create();
+            }
+            success = connection != null;
+            if (success && connection != NULL_CONNECTION) {
+                // New notifications are kept in the outbox until the connection is published.
+                // Replaying first queues the older ones ahead of them.
+                replayOutbox();
+                publish(connection);
+                // those which were kept while replaying
+                replayOutbox();
+            }
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Unexpected error while connecting", e);
+        }
+
+        IMMetrics.connectAttempted(getChannel(), success);
+        // A late report from the released connection must not tear down the new one:
+        // only reconnect again if the new connection is broken, too.
+        IMConnection connection = currentConnection();
+        boolean broken = success && connection != NULL_CONNECTION && !connection.isConnected();
+        synchronized (this.scheduleLock) {
+            this.reconnecting = false;
+            if (success) {
+                this.connectedOnce = true;
+                this.connectedSince = System.currentTimeMillis();
+                if (this.brokenSince != 0) {
+                    IMMetrics.connectionRestored(getChannel(), this.connectedSince - this.brokenSince);
+                    this.brokenSince = 0;
+                }
+            } else {
+                LOGGER.info("Connection attempt failed");
+            }
+            if (!success || this.reconnectRequested || (this.brokenWhileReconnecting && broken)) {
+                scheduleReconnect();
+            }
+        }
+    }
+
+    /**
+     * Sends the messages which couldn't be delivered while we were disconnected.
+     */
+    private void replayOutbox() {
+        IMPublisherDescriptor desc = this.descriptor;
+        if (desc == null || !Outbox.isEnabled() || getConnectionToSend() == NULL_CONNECTION) {
+            return;
+        }
+        try {
+            Outbox.get().replay(getChannel(), this::getSendConnection);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Could not replay undelivered messages", e);
+        }
+    }
+
+    /**
+     * Returns the current (or the replaying) connection - rate limited and isolated from other protocols.
+     *
+     * @throws IMException if not connected
+     */
+    private IMConnection getSendConnection() throws IMException {
+        IMConnection connection = getConnectionToSend();
+        if (connection == NULL_CONNECTION) {
+            throw new IMException("not connected");
+        }
+        String channel = getChannel();
+        return RateLimitedConnection.wrap(IsolatedConnection.wrap(connection, channel), channel, this.descriptor);
+    }
+
+    private IMConnection getConnectionToSend() {
+        IMConnection connection = this.replayingConnection;
+        return connection != null ? connection : currentConnection();
+    }
+
+    private static double getDouble(String name, double defaultValue) {
+        String value = SystemProperties.getString(name);
+        if (value != null) {
+            try {
+                return Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                LOGGER.warning("Ignoring invalid value '" + value + "' of " + name);
+            }
+        }
+        return defaultValue;
     }
 
     // we need an additional level of indirection to the Authentication entity
     // to fix HUDSON-5978 and HUDSON-5233
-    public synchronized AuthenticationHolder getAuthenticationHolder() {
+    public AuthenticationHolder getAuthenticationHolder() {
         if (descriptor == null || descriptor.getHudsonUserName() == null) {
             return null;
         }
@@ -151,71 +407,4 @@ public abstract class IMConnectionProvider implements IMConnectionListener {
             }
         };
     }
-
-    private final class ConnectorRunnable implements Runnable {
-
-        private final Semaphore semaphore = new Semaphore(0);
-
-        private boolean firstConnect = true;
-
-        public void run() {
-            try {
-                while (true) {
-                    this.semaphore.acquire();
-
-                    if (!firstConnect) {
-                        // wait a little bit in case the XMPP server/network has just a 'hickup'
-                        TimeUnit.SECONDS.sleep(30);
-                        LOGGER.info("Trying to reconnect");
-                    } else {
-                        firstConnect = false;
-                        LOGGER.info("Trying to connect");
-                    }
-
-                    boolean success = false;
-                    int timeout = 1;
-                    while (!success) {
-                        synchronized (IMConnectionProvider.this) {
-                            if (imConnection != null) {
-                                try {
-                                    releaseConnection();
-                                } catch (Exception e) {
-                                    LOGGER.warning(ExceptionHelper.dump(e));
-                                }
-                            }
-                            try {
-                                success = create();
-                            } catch (IMException e) {
-                                // ignore
-                            }
-                        }
-
-                        // make sure to leave the synchronized block before sleeping!
-                        if(!success) {
-                            LOGGER.info("Reconnect failed. Next connection attempt in " + timeout + " minutes");
-                            this.semaphore.drainPermits();
-
-                            // wait up to timeout time OR until semaphore is released again (happens e.g. if global config was changed)
-                            boolean acquired = this.semaphore.tryAcquire(timeout * 60L, TimeUnit.SECONDS);
-                            if (acquired) {
-                                this.semaphore.release();
-                            } else {
-                                LOGGER.warning("Could not acquire semaphore for " + (timeout * 60L) + "sec");
-                            }
-                            // exponentially increase timeout, but longer than 16 minutes
-                            if (timeout < 15) {
-                                timeout *= 2;
-                            }
-                        } else {
-                            // remove any permits which came in in the mean time
-                            this.semaphore.drainPermits();
-                        }
-                    }
-                }
-            } catch (InterruptedException e) {
-                LOGGER.info("Connect thread interrupted");
-                // just bail out
-            }
-        }
-    }
 }
@@ -0,0 +1,171 @@
+package hudson.plugins.im;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricSet;
+import com.codahale.metrics.Timer;
+import hudson.Extension;
+import hudson.plugins.im.outbound.RateLimiter;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import jenkins.metrics.api.MetricProvider;
+import jenkins.metrics.api.Metrics;
+
+/**
+ * Publishes the {@link IMMetrics} via the Metrics plugin, if installed.
+ * <p>
+ * All metrics are named <code>instant-messaging.*</code>:
+ * <ul>
+ * <li><code>send.&lt;protocol&gt;</code> - timer of the messages sent via a protocol, including bot replies,
+ *     <code>send.&lt;protocol&gt;.target.&lt;target&gt;</code> per target (for up to 200 targets per protocol),
+ *     <code>send.&lt;protocol&gt;.failures</code> - meter of the messages which couldn't be sent</li>
+ * <li><code>connect.&lt;protocol&gt;.attempts</code> and <code>.failures</code> - meters of (re)connect attempts,
+ *     <code>connect.&lt;protocol&gt;.downtime</code> - timer of the time until a lost connection was restored</li>
+ * <li><code>command.&lt;command&gt;</code> - timer of a bot command, <code>command.&lt;command&gt;.failures</code> - meter</li>
+ * <li><code>presence.&lt;protocol&gt;</code> - timer of presence updates</li>
+ * <li><code>queue.outbound</code>, <code>queue.outbox</code>, <code>queue.bulkheads</code>,
+ *     <code>queue.throttled</code>, <code>queue.commands</code> - gauges of the queue depths</li>
+ * <li><code>throttle.count</code> and <code>throttle.time</code> - gauges of the number of messages
+ *     which had to wait because of a rate limit and of their total waiting time in milliseconds</li>
+ * </ul>
+ */
+@Extension(optional = true)
+public final class IMMetricProvider extends MetricProvider implements IMMetrics.Recorder {
+
+    static final String PREFIX = "instant-messaging";
+
+    private static final int MAX_TARGETS = 200;
+
+    private final MetricRegistry registry;
+    private final ConcurrentMap<String, ChannelMetrics> channels = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Class<?>, CommandMetrics> commands = new ConcurrentHashMap<>();
+
+    public IMMetricProvider() {
+        this(Metrics.metricRegistry());
+        if (IMMetrics.ENABLED) {
+            IMMetrics.setRecorder(this);
+        }
+    }
+
+    IMMetricProvider(MetricRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public MetricSet getMetricSet() {
+        Map<String, Metric> gauges = new HashMap<>();
+        for (IMMetrics.Queue queue : IMMetrics.Queue.values()) {
+            gauges.put(MetricRegistry.name(PREFIX, "queue", queue.name().toLowerCase(Locale.ENGLISH)),
+                    (Gauge<Integer>) () -> IMMetrics.getQueueDepth(queue));
+        }
+        gauges.put(MetricRegistry.name(PREFIX, "throttle", "count"),
+                (Gauge<Long>) () -> RateLimiter.get().getThrottledCount());
+        gauges.put(MetricRegistry.name(PREFIX, "throttle", "time"),
+                (Gauge<Long>) () -> RateLimiter.get().getThrottleTimeMillis());
+        Map<String, Metric> metrics = Collections.unmodifiableMap(gauges);
+        return () -> metrics;
+    }
+
+    @Override
+    public void sent(String channel, IMMessageTarget target, long nanos, boolean success) {
+        ChannelMetrics metrics = channel(channel);
+        metrics.send.update(nanos, TimeUnit.NANOSECONDS);
+        if (target != null) {
+            metrics.target(String.valueOf(target)).update(nanos, TimeUnit.NANOSECONDS);
+        }
+        if (!success) {
+            metrics.sendFailures.mark();
+        }
+    }
+
+    @Override
+    public void connectAttempted(String channel, boolean success) {
+        ChannelMetrics metrics = channel(channel);
+        metrics.connectAttempts.mark();
+        if (!success) {
+            metrics.connectFailures.mark();
+        }
+    }
+
+    @Override
+    public void connectionRestored(String channel, long downtimeMillis) {
+        channel(channel).downtime.update(downtimeMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void commandCompleted(Class<?> command, long nanos, boolean success) {
+        CommandMetrics metrics = this.commands.computeIfAbsent(command, CommandMetrics::new);
+        metrics.timer.update(nanos, TimeUnit.NANOSECONDS);
+        if (!success) {
+            metrics.failures.mark();
+        }
+    }
+
+    @Override
+    public void presenceUpdated(String channel, long nanos) {
+        channel(channel).presence.update(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private ChannelMetrics channel(String channel) {
+        return this.channels.computeIfAbsent(channel, ChannelMetrics::new);
+    }
+
+    /**
+     * Returns the protocol part of the metric names, e.g. "JabberPublisherDescriptor".
+     */
+    static String protocolName(String channel) {
+        return channel.substring(channel.lastIndexOf('.') + 1);
+    }
+
+    private final class ChannelMetrics {
+        private final String name;
+        private final Timer send;
+        private final Meter sendFailures;
+        private final Meter connectAttempts;
+        private final Meter connectFailures;
+        private final Timer downtime;
+        private final Timer presence;
+        private final ConcurrentMap<String, Timer> targets = new ConcurrentHashMap<>();
+
+        ChannelMetrics(String channel) {
+            this.name = protocolName(channel);
+            this.send = registry.timer(MetricRegistry.name(PREFIX, "send", this.name));
+            this.sendFailures = registry.meter(MetricRegistry.name(PREFIX, "send", this.name, "failures"));
+            this.connectAttempts = registry.meter(MetricRegistry.name(PREFIX, "connect", this.name, "attempts"));
+            this.connectFailures = registry.meter(MetricRegistry.name(PREFIX, "connect", this.name, "failures"));
+            this.downtime = registry.timer(MetricRegistry.name(PREFIX, "connect", this.name, "downtime"));
+            this.presence = registry.timer(MetricRegistry.name(PREFIX, "presence", this.name));
+        }
+
+        Timer target(String target) {
+            Timer timer = this.targets.get(target);
+            if (timer == null) {
+                // don't let an unbounded number of targets flood the registry
+                String key = this.targets.size() < MAX_TARGETS ? target : "other";
+                timer = this.targets.computeIfAbsent(key,
+                        k -> registry.timer(MetricRegistry.name(PREFIX, "send", this.name, "target", k)));
+            }
+            return timer;
+        }
+    }
+
+    private final class CommandMetrics {
+        private final Timer timer;
+        private final Meter failures;
+
+        CommandMetrics(Class<?> command) {
+            String name = command.getSimpleName();
+            this.timer = registry.timer(MetricRegistry.name(PREFIX, "command", name));
+            this.failures = registry.meter(MetricRegistry.name(PREFIX, "command", name, "failures"));
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package hudson.plugins.im;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.IntSupplier;
+
+import jenkins.util.SystemProperties;
+
+/**
+ * Measures the messaging pipeline: sends, reconnects, bot commands, presence updates and queue depths.
+ * <p>
+ * The measurements are published via the Metrics plugin, see {@link IMMetricProvider}.
+ * Without it - or if the system property <code>hudson.plugins.im.IMMetrics.enabled</code> is false -
+ * nothing is recorded: {@link #start()} returns 0 without reading the clock and the other methods
+ * return right away, so the instrumented code doesn't allocate anything.
+ * <p>
+ * Usage:
+ * <pre>
+ * long start = IMMetrics.start();
+ * ... send ...
+ * IMMetrics.sent(channel, target, start, success);
+ * </pre>
+ */
+public final class IMMetrics {
+
+    static final boolean ENABLED = SystemProperties.getBoolean(IMMetrics.class.getName() + ".enabled", true);
+
+    /**
+     * The queues whose depth is published.
+     */
+    public enum Queue {
+        /** messages waiting in the outbound dispatcher */
+        OUTBOUND,
+        /** messages kept in the outbox until the next reconnect */
+        OUTBOX,
+        /** sends and presence updates waiting for the bulkhead of their protocol */
+        BULKHEADS,
+        /** messages waiting because of a rate limit */
+        THROTTLED,
+        /** bot commands waiting to be run */
+        COMMANDS
+    }
+
+    /**
+     * Receives the measurements.
+     */
+    interface Recorder {
+        void sent(String channel, IMMessageTarget target, long nanos, boolean success);
+
+        void connectAttempted(String channel, boolean success);
+
+        void connectionRestored(String channel, long downtimeMillis);
+
+        void commandCompleted(Class<?> command, long nanos, boolean success);
+
+        void presenceUpdated(String channel, long nanos);
+    }
+
+    // null if nothing is recorded
+    private static volatile Recorder recorder;
+
+    private static final Map<Queue, IntSupplier> QUEUE_DEPTHS = new EnumMap<>(Queue.class);
+
+    private IMMetrics() {
+    }
+
+    static void setRecorder(Recorder r) {
+        recorder = r;
+    }
+
+    /**
+     * Returns the start time of a measurement - or 0 if nothing is recorded.
+     */
+    public static long start() {
+        return recorder != null ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Records a message sent - or not - via a protocol.
+     *
+     * @param channel identifies the IM protocol, see {@link IMConnectionProvider#getChannel()}
+     * @param target the target of the message; null for a reply of the bot
+     * @param start the result of {@link #start()} before sending
+     */
+    public static void sent(String channel, IMMessageTarget target, long start, boolean success) {
+        Recorder r = recorder;
+        if (r != null && start != 0) {
+            r.sent(channel, target, System.nanoTime() - start, success);
+        }
+    }
+
+    /**
+     * Records a (re)connect attempt.
+     */
+    public static void connectAttempted(String channel, boolean success) {
+        Recorder r = recorder;
+        if (r != null) {
+            r.connectAttempted(channel, success);
+        }
+    }
+
+    /**
+     * Records that a lost connection was established again.
+     *
+     * @param downtimeMillis for how long the connection was lost
+     */
+    public static void connectionRestored(String channel, long downtimeMillis) {
+        Recorder r = recorder;
+        if (r != null) {
+            r.connectionRestored(channel, downtimeMillis);
+        }
+    }
+
+    /**
+     * Records the execution of a bot command.
+     *
+     * @param command the class of the command
+     * @param start the result of {@link #start()} before executing it
+     */
+    public static void commandCompleted(Class<?> command, long start, boolean success) {
+        Recorder r = recorder;
+        if (r != null && start != 0) {
+            r.commandCompleted(command, System.nanoTime() - start, success);
+        }
+    }
+
+    /**
+     * Records a presence update.
+     *
+     * @param start the result of {@link #start()} before updating it
+     */
+    public static void presenceUpdated(String channel, long start) {
+        Recorder r = recorder;
+        if (r != null && start != 0) {
+            r.presenceUpdated(channel, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Sets where the depth of a queue is read from.
+     *
+     * @param depth null if the queue doesn't exist (anymore)
+     */
+    public static void setQueueDepth(Queue queue, IntSupplier depth) {
+        synchronized (QUEUE_DEPTHS) {
+            if (depth != null) {
+                QUEUE_DEPTHS.put(queue, depth);
+            } else {
+                QUEUE_DEPTHS.remove(queue);
+            }
+        }
+    }
+
+    /**
+     * Returns the current depth of a queue; 0 if it doesn't exist.
+     */
+    static int getQueueDepth(Queue queue) {
+        IntSupplier depth;
+        synchronized (QUEUE_DEPTHS) {
+            depth = QUEUE_DEPTHS.get(queue);
+        }
+        return depth != null ? depth.getAsInt() : 0;
+    }
+}
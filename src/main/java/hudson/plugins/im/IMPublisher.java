@@ -21,6 +21,9 @@ import hudson.model.User;
 import hudson.model.UserProperty;
 import hudson.plugins.im.build_notify.BuildToChatNotifier;
 import hudson.plugins.im.build_notify.DefaultBuildToChatNotifier;
+import hudson.plugins.im.outbound.OutboundDispatcher;
+import hudson.plugins.im.outbound.Outbox;
+import hudson.plugins.im.outbound.RateLimitedConnection;
 import hudson.plugins.im.tools.BuildHelper;
 import hudson.plugins.im.tools.ExceptionHelper;
 import hudson.tasks.BuildStep;
@@ -483,10 +486,45 @@ public abstract class IMPublisher extends Notifier implements /* BuildStep, */ M
         IMConnection imConnection = getIMConnection();
         if (imConnection instanceof DummyConnection) {
             // quite hacky
-            log(listener, "[ERROR] not connected. Cannot send message to '" + target + "'");
+            if (Outbox.isEnabled() && Outbox.get().append(getOutboundChannel(), target, message)) {
+                log(listener, "not connected. Message to '" + target + "' will be sent on reconnect");
+            } else {
+                log(listener, "[ERROR] not connected. Cannot send message to '" + target + "'");
+            }
+        } else if (OutboundDispatcher.isEnabled()) {
+            // don't let a slow IM server hold up the build
+            try {
+                if (!OutboundDispatcher.get().submit(getOutboundChannel(), this::getRateLimitedConnection, target, message)) {
+                    log(listener, "[ERROR] outbound queue is full. Dropped message to '" + target + "'");
+                }
+            } catch (InterruptedException e) {
+                log(listener, "[ERROR] interrupted while queueing message to '" + target + "'");
+                Thread.currentThread().interrupt();
+            }
         } else {
-            getIMConnection().send(target, message);
+            getRateLimitedConnection().send(target, message);
+        }
+    }
+
+    private IMConnection getRateLimitedConnection() throws IMException {
+        IMConnection connection = getIMConnection();
+        if (connection instanceof DummyConnection) {
+            // lets the dispatcher keep the message in the outbox
+            throw new IMException("not connected");
         }
+        Object descriptor = getDescriptor();
+        String channel = getOutboundChannel();
+        return RateLimitedConnection.wrap(IsolatedConnection.wrap(connection, channel), channel,
+                descriptor instanceof IMPublisherDescriptor ? (IMPublisherDescriptor) descriptor : null);
+    }
+
+    /**
+     * Identifies the IM protocol of this publisher in the {@link OutboundDispatcher}.
+     * All publishers and connection providers of a protocol share the same descriptor.
+     */
+    private String getOutboundChannel() {
+        Object descriptor = getDescriptor();
+        return descriptor != null ? descriptor.getClass().getName() : getClass().getName();
     }
 
     /**
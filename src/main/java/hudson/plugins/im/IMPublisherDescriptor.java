@@ -1,6 +1,7 @@
 package hudson.plugins.im;
 
 import hudson.plugins.im.config.ParameterNames;
+import hudson.plugins.im.outbound.RateLimit;
 
 import hudson.util.Secret;
 import java.util.List;
@@ -87,4 +88,25 @@ public interface IMPublisherDescriptor {
     List<IMMessageTarget> getDefaultTargets();
 
     IMMessageTargetConverter getIMMessageTargetConverter();
+
+    /**
+     * Returns the maximum rate at which messages may be sent over the connection
+     * before the IM server starts throttling or kicking the bot.
+     *
+     * @return the limit or null to use the default configured via system properties
+     * @see hudson.plugins.im.outbound.RateLimiter
+     */
+    default RateLimit getConnectionRateLimit() {
+        return null;
+    }
+
+    /**
+     * Returns the maximum rate at which messages may be sent to a single user or chat.
+     *
+     * @return the limit or null to use the default configured via system properties
+     * @see hudson.plugins.im.outbound.RateLimiter
+     */
+    default RateLimit getTargetRateLimit() {
+        return null;
+    }
 }
@@ -0,0 +1,75 @@
+package hudson.plugins.im;
+
+/**
+ * {@link IMChat} which runs {@link #sendMessage(String)} via the {@link Bulkhead} of its channel,
+ * so a hanging IM server only blocks the bot for a limited time.
+ */
+public final class IsolatedChat implements IMChat {
+
+    private final IMChat delegate;
+    private final String channel;
+    private final Bulkhead bulkhead;
+
+    private IsolatedChat(IMChat delegate, String channel, Bulkhead bulkhead) {
+        this.delegate = delegate;
+        this.channel = channel;
+        this.bulkhead = bulkhead;
+    }
+
+    /**
+     * @param channel identifies the IM protocol, see {@link IMConnectionProvider#getChannel()}
+     */
+    public static IMChat wrap(IMChat chat, String channel) {
+        if (chat instanceof IsolatedChat) {
+            return chat;
+        }
+        return new IsolatedChat(chat, channel, Bulkhead.forChannel(channel));
+    }
+
+    @Override
+    public void sendMessage(String message) throws IMException {
+        long start = IMMetrics.start();
+        boolean sent = false;
+        try {
+            this.bulkhead.call(() -> this.delegate.sendMessage(message));
+            sent = true;
+        } finally {
+            IMMetrics.sent(this.channel, null, start, sent);
+        }
+    }
+
+    @Override
+    public String getNickName(String senderId) {
+        return this.delegate.getNickName(senderId);
+    }
+
+    @Override
+    public String getIMId(String senderId) {
+        return this.delegate.getIMId(senderId);
+    }
+
+    @Override
+    public boolean isMultiUserChat() {
+        return this.delegate.isMultiUserChat();
+    }
+
+    @Override
+    public boolean isCommandsAccepted() {
+        return this.delegate.isCommandsAccepted();
+    }
+
+    @Override
+    public String getChatId() {
+        return this.delegate.getChatId();
+    }
+
+    @Override
+    public void addMessageListener(IMMessageListener listener) {
+        this.delegate.addMessageListener(listener);
+    }
+
+    @Override
+    public void removeMessageListener(IMMessageListener listener) {
+        this.delegate.removeMessageListener(listener);
+    }
+}
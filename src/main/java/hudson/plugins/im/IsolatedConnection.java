@@ -0,0 +1,76 @@
+package hudson.plugins.im;
+
+/**
+ * {@link IMConnection} which runs {@link #send(IMMessageTarget, String)} and
+ * {@link #setPresence(IMPresence, String)} via the {@link Bulkhead} of its channel,
+ * so a hanging IM server only blocks the callers for a limited time.
+ */
+final class IsolatedConnection implements IMConnection {
+
+    private final IMConnection delegate;
+    private final String channel;
+    private final Bulkhead bulkhead;
+
+    private IsolatedConnection(IMConnection delegate, String channel, Bulkhead bulkhead) {
+        this.delegate = delegate;
+        this.channel = channel;
+        this.bulkhead = bulkhead;
+    }
+
+    /**
+     * @param channel identifies the IM protocol, see {@link IMConnectionProvider#getChannel()}
+     */
+    static IMConnection wrap(IMConnection connection, String channel) {
+        if (connection instanceof IsolatedConnection) {
+            return connection;
+        }
+        return new IsolatedConnection(connection, channel, Bulkhead.forChannel(channel));
+    }
+
+    @Override
+    public void send(IMMessageTarget target, String text) throws IMException {
+        long start = IMMetrics.start();
+        boolean sent = false;
+        try {
+            this.bulkhead.call(() -> this.delegate.send(target, text));
+            sent = true;
+        } finally {
+            IMMetrics.sent(this.channel, target, start, sent);
+        }
+    }
+
+    @Override
+    public void setPresence(IMPresence presence, String statusMessage) throws IMException {
+        long start = IMMetrics.start();
+        try {
+            this.bulkhead.call(() -> this.delegate.setPresence(presence, statusMessage));
+        } finally {
+            IMMetrics.presenceUpdated(this.channel, start);
+        }
+    }
+
+    @Override
+    public boolean connect() {
+        return this.delegate.connect();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return this.delegate.isConnected();
+    }
+
+    @Override
+    public void close() {
+        this.delegate.close();
+    }
+
+    @Override
+    public void addConnectionListener(IMConnectionListener listener) {
+        this.delegate.addConnectionListener(listener);
+    }
+
+    @Override
+    public void removeConnectionListener(IMConnectionListener listener) {
+        this.delegate.removeConnectionListener(listener);
+    }
+}
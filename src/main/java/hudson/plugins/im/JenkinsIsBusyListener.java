@@ -2,8 +2,6 @@ package hudson.plugins.im;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
-import hudson.model.Computer;
-import hudson.model.Executor;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.model.listeners.RunListener;
@@ -15,15 +13,35 @@ import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
 
-import jenkins.model.Jenkins;
-
+import jenkins.util.SystemProperties;
+
+/**
+ * Updates the presence of all connections according to how busy Jenkins is.
+ * <p>
+ * Updates triggered by run events are coalesced: there's at most one pending update,
+ * which is run once no further events came in for the debounce time, but not earlier
+ * than the minimum interval after the previous update and - if events keep coming in -
+ * not later than the maximum staleness after the first event.
+ * These can be configured via system properties (prefixed by the name of this class):
+ * <ul>
+ * <li><code>.debounceMillis</code> (default: 1000)</li>
+ * <li><code>.minIntervalMillis</code> (default: 5000)</li>
+ * <li><code>.maxStalenessMillis</code> (default: 15000)</li>
+ * </ul>
+ */
 @SuppressWarnings({ "unchecked", "rawtypes" })
 public class JenkinsIsBusyListener extends RunListener {
 
     private static final Logger LOGGER = Logger.getLogger(JenkinsIsBusyListener.class.getName());
 
+    private static final String PROPERTY_PREFIX = JenkinsIsBusyListener.class.getName();
+    private static final long DEBOUNCE_MILLIS = SystemProperties.getLong(PROPERTY_PREFIX + ".debounceMillis", 1000L);
+    private static final long MIN_INTERVAL_MILLIS = SystemProperties.getLong(PROPERTY_PREFIX + ".minIntervalMillis", 5000L);
+    private static final long MAX_STALENESS_MILLIS = SystemProperties.getLong(PROPERTY_PREFIX + ".maxStalenessMillis", 15000L);
+
     private static JenkinsIsBusyListener INSTANCE;
 
     private transient final List<IMConnectionProvider> connectionProviders = new ArrayList<IMConnectionProvider>();
@@ -32,6 +50,11 @@ public class JenkinsIsBusyListener extends RunListener {
     private transient int lastBusyExecutors = -1;
     private transient int lastTotalExecutors = -1;
 
+    private transient final AtomicBoolean updatePending = new AtomicBoolean();
+    private transient volatile long firstRequest;
+    private transient volatile long lastRequest;
+    private transient volatile long lastUpdate;
+
     public static synchronized JenkinsIsBusyListener getInstance() {
         if (INSTANCE == null) {
             INSTANCE = new JenkinsIsBusyListener();
@@ -87,75 +110,86 @@ public class JenkinsIsBusyListener extends RunListener {
     }
 
     private void updateLater() {
-        // schedule update 1 second into the future
-        // otherwise calculation is often incorrect
-        this.executor.schedule(new Runnable() {
-            @Override
-            public void run() {
-                updateIMStatus();
-            }
-        }, 1L, TimeUnit.SECONDS);
+        long now = System.currentTimeMillis();
+        this.lastRequest = now;
+        if (this.updatePending.compareAndSet(false, true)) {
+            this.firstRequest = now;
+            // wait a little bit - otherwise calculation is often incorrect
+            this.executor.schedule(this::runPendingUpdate, DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void runPendingUpdate() {
+        long now = System.currentTimeMillis();
+        long due = dueTime(this.firstRequest, this.lastRequest, this.lastUpdate,
+                DEBOUNCE_MILLIS, MIN_INTERVAL_MILLIS, MAX_STALENESS_MILLIS);
+        if (now < due) {
+            this.executor.schedule(this::runPendingUpdate, due - now, TimeUnit.MILLISECONDS);
+            return;
+        }
+        // events coming in from now on need another update
+        this.updatePending.set(false);
+        updateIMStatus();
+    }
+
+    /**
+     * Returns when a pending update is due: once no events came in for the debounce time
+     * or the maximum staleness after the first event has passed, whichever is earlier -
+     * but never before the minimum interval after the previous update.
+     */
+    static long dueTime(long firstRequest, long lastRequest, long lastUpdate,
+            long debounceMillis, long minIntervalMillis, long maxStalenessMillis) {
+        long quiet = lastRequest + debounceMillis;
+        long stale = firstRequest + maxStalenessMillis;
+        return Math.max(lastUpdate + minIntervalMillis, Math.min(quiet, stale));
     }
 
     private synchronized void updateIMStatus() {
-        int totalExecutors = getTotalExecutors();
-        int busyExecutors = getBusyExecutors();
+        BusyStateTracker tracker = BusyStateTracker.get();
+        int totalExecutors = tracker.getTotalExecutors();
+        int busyExecutors = tracker.getBusyExecutors();
 
         if (totalExecutors != this.lastTotalExecutors || busyExecutors != this.lastBusyExecutors) {
             for (IMConnectionProvider provider : connectionProviders) {
-                setStatus(provider, busyExecutors, totalExecutors);
+                setStatus(provider, busyExecutors, totalExecutors, tracker.getQueueLength());
             }
         }
         this.lastTotalExecutors = totalExecutors;
         this.lastBusyExecutors = busyExecutors;
+        this.lastUpdate = System.currentTimeMillis();
     }
 
-    private void setStatus(IMConnectionProvider provider, int busyExecutors, int totalExecutors) {
-        try {
-            IMConnection conn = provider.currentConnection();
-            if (busyExecutors == 0) {
-                conn.setPresence(IMPresence.AVAILABLE, "Yawn, I'm so bored. Don't you have some work for me?");
-            } else if (busyExecutors == totalExecutors) {
-                conn.setPresence(IMPresence.DND,
-                        "Please give me some rest! All " + totalExecutors + " executors are busy, "
-                        + Jenkins.getInstance().getQueue().getItems().length + " job(s) in queue.");
-            } else {
-                String msg = "Working: " + busyExecutors + " out of " + totalExecutors +
-                    " executors are busy.";
-                int queueItems = Jenkins.getInstance().getQueue().getItems().length;
-                if (queueItems > 0) {
-                    msg += " " + queueItems + " job(s) in queue.";
-                }
-                conn.setPresence(IMPresence.OCCUPIED, msg);
-            }
-        } catch (IMException e) {
-            // ignore
-        }
-    }
-
-    private int getBusyExecutors() {
-        int busyExecutors = 0;
-        Computer[] computers = Jenkins.getInstance().getComputers();
-        for (Computer compi : computers) {
-
-            for (Executor executor : compi.getExecutors()) {
-                if (executor.isBusy()) {
-                    busyExecutors++;
-                }
+    private void setStatus(IMConnectionProvider provider, int busyExecutors, int totalExecutors, int queueItems) {
+        IMPresence presence;
+        String msg;
+        if (busyExecutors == 0) {
+            presence = IMPresence.AVAILABLE;
+            msg = "Yawn, I'm so bored. Don't you have some work for me?";
+        } else if (busyExecutors == totalExecutors) {
+            presence = IMPresence.DND;
+            msg = "Please give me some rest! All " + totalExecutors + " executors are busy, "
+                    + queueItems + " job(s) in queue.";
+        } else {
+            presence = IMPresence.OCCUPIED;
+            msg = "Working: " + busyExecutors + " out of " + totalExecutors +
+                " executors are busy.";
+            if (queueItems > 0) {
+                msg += " " + queueItems + " job(s) in queue.";
             }
         }
-
-        return busyExecutors;
-    }
-
-    private int getTotalExecutors() {
-        int totalExecutors = 0;
-        Computer[] computers = Jenkins.getInstance().getComputers();
-        for (Computer compi : computers) {
-            if (compi.isOnline()) {
-                totalExecutors += compi.getNumExecutors();
+        IMConnection conn = provider.currentConnection();
+        String statusMessage = msg;
+        String channel = provider.getChannel();
+        // don't wait for it - a hanging connection mustn't delay the other providers
+        if (!Bulkhead.forChannel(channel).callAsync(() -> {
+            long start = IMMetrics.start();
+            try {
+                conn.setPresence(presence, statusMessage);
+            } finally {
+                IMMetrics.presenceUpdated(channel, start);
             }
+        })) {
+            LOGGER.fine("Skipped presence update of " + provider);
         }
-        return totalExecutors;
     }
 }
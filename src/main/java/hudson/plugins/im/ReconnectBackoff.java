@@ -0,0 +1,73 @@
+package hudson.plugins.im;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Computes the delays between reconnect attempts: exponential backoff with jitter.
+ * <p>
+ * The first attempt after a (re)set is made almost immediately, as most
+ * connection drops are just short network hiccups. Following attempts wait
+ * the initial delay, which is multiplied for every further attempt up to the cap.
+ * All delays are randomly spread by the jitter, so that many Jenkins instances which
+ * lost their connection to the same server at the same time don't reconnect in lockstep.
+ * <p>
+ * Not thread-safe.
+ */
+final class ReconnectBackoff {
+
+    private final long initialDelayMillis;
+    private final double multiplier;
+    private final long maxDelayMillis;
+    private final double jitter;
+    private final DoubleSupplier random;
+
+    private int attempt;
+
+    /**
+     * @param initialDelayMillis delay before the 2nd attempt
+     * @param multiplier factor by which the delay grows with each attempt. At least 1.
+     * @param maxDelayMillis cap for the delay
+     * @param jitter fraction by which each delay is randomly shortened or prolonged. Between 0 and 1.
+     */
+    ReconnectBackoff(long initialDelayMillis, double multiplier, long maxDelayMillis, double jitter) {
+        this(initialDelayMillis, multiplier, maxDelayMillis, jitter, () -> ThreadLocalRandom.current().nextDouble());
+    }
+
+    ReconnectBackoff(long initialDelayMillis, double multiplier, long maxDelayMillis, double jitter,
+            DoubleSupplier random) {
+        this.initialDelayMillis = Math.max(0, initialDelayMillis);
+        this.multiplier = Math.max(1.0, multiplier);
+        this.maxDelayMillis = Math.max(this.initialDelayMillis, maxDelayMillis);
+        this.jitter = Math.min(1.0, Math.max(0.0, jitter));
+        this.random = random;
+    }
+
+    /**
+     * Returns the delay before the next attempt and counts the attempt.
+     */
+    long nextDelayMillis() {
+        int n = this.attempt++;
+        if (n == 0) {
+            // fast path: spread only over the jitter fraction of the initial delay
+            return (long) (this.initialDelayMillis * this.jitter * this.random.getAsDouble());
+        }
+        double delay = Math.min(this.maxDelayMillis, this.initialDelayMillis * Math.pow(this.multiplier, n - 1));
+        delay *= 1.0 + this.jitter * (2 * this.random.getAsDouble() - 1);
+        return Math.round(delay);
+    }
+
+    /**
+     * Returns the number of attempts since the last reset.
+     */
+    int getAttempts() {
+        return this.attempt;
+    }
+
+    /**
+     * Starts over with the fast path, e.g. after a successful connect.
+     */
+    void reset() {
+        this.attempt = 0;
+    }
+}
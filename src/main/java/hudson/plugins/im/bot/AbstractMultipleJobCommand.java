@@ -3,6 +3,8 @@ package hudson.plugins.im.bot;
 import hudson.model.AbstractProject;
 import hudson.model.TopLevelItem;
 import hudson.model.View;
+import hudson.plugins.im.IMChat;
+import hudson.plugins.im.IMException;
 import hudson.plugins.im.Sender;
 import hudson.plugins.im.tools.MessageHelper;
 import hudson.plugins.im.tools.Pair;
@@ -20,8 +22,14 @@ abstract class AbstractMultipleJobCommand extends AbstractTextSendingCommand {
     static final String UNKNOWN_JOB_STR = "unknown job";
     static final String UNKNOWN_VIEW_STR = "unknown view";
 
+    /**
+     * Maximum number of jobs shown for a <code>prefix*</code> query.
+     */
+    static final int MAX_PREFIX_MATCHES = 50;
+
     /**
      * Returns the message to return for this job.
+     * The message may be cached by the {@link ReplyCache}, so it must not depend on the sender.
      * Note that {@link AbstractMultipleJobCommand} already inserts one newline after each job's
      * message so you don't have to do it yourself.
      *
@@ -39,62 +47,85 @@ abstract class AbstractMultipleJobCommand extends AbstractTextSendingCommand {
     protected abstract String getCommandShortName();
 
     enum Mode {
-        SINGLE, VIEW, ALL;
+        SINGLE, VIEW, ALL, PREFIX;
     }
 
     @Override
     protected String getReply(Bot bot, Sender sender, String[] args) {
+        PagedReply<AbstractProject<?, ?>> reply;
+        try {
+            reply = createReply(sender, args);
+        } catch (CommandException e) {
+            return getErrorReply(sender, e);
+        }
+        if (reply == null) {
+            return sender + ": no job found";
+        }
+        StringBuilder msg = new StringBuilder(reply.nextPage(Integer.MAX_VALUE));
+        while (reply.hasMore()) {
+            msg.append("\n").append(reply.nextPage(Integer.MAX_VALUE));
+        }
+        return msg.toString();
+    }
+
+    /**
+     * Sends the reply in pages, so the messages don't get too long on instances with many jobs.
+     */
+    @Override
+    protected void sendReply(Bot bot, IMChat chat, Sender sender, String[] args) throws IMException {
+        PagedReply<AbstractProject<?, ?>> reply;
+        try {
+            reply = createReply(sender, args);
+        } catch (CommandException e) {
+            chat.sendMessage(getErrorReply(sender, e));
+            return;
+        }
+        if (reply == null) {
+            chat.sendMessage(sender + ": no job found");
+            return;
+        }
+        bot.sendFirstPage(chat, reply);
+    }
+
+    /**
+     * Returns the reply for the given arguments - or null if no job was found.
+     */
+    private PagedReply<AbstractProject<?, ?>> createReply(Sender sender, String[] args) throws CommandException {
 
 //        if (!authorizationCheck()) {
 //            return "Sorry, can't do that!";
 //        }
 
         Collection<AbstractProject<?, ?>> projects = new ArrayList<AbstractProject<?, ?>>();
-
-        final Pair<Mode, String> pair;
-        try {
-            pair = getProjects(sender, args, projects);
-        } catch (CommandException e) {
-            return getErrorReply(sender, e);
+        final Pair<Mode, String> pair = getProjects(sender, args, projects);
+        if (projects.isEmpty()) {
+            return null;
         }
 
-        if (!projects.isEmpty()) {
-            StringBuilder msg = new StringBuilder();
-
-            switch(pair.getHead()) {
-                case SINGLE : break;
-                case ALL:
-                    msg.append(getCommandShortName())
-                        .append(" of all projects:\n");
-                    break;
-                case VIEW:
-                    msg.append(getCommandShortName())
-                        .append(" of projects in view " + pair.getTail() + ":\n");
-                    break;
-            }
-
-            boolean first = true;
-            for (AbstractProject<?, ?> project : projects) {
-                if (!first) {
-                    msg.append("\n");
-                } else {
-                    first = false;
-                }
-
-                msg.append(getMessageForJob(project));
-            }
-            return msg.toString();
-        } else {
-            return sender + ": no job found";
+        String header = "";
+        switch(pair.getHead()) {
+            case SINGLE : break;
+            case ALL:
+                header = getCommandShortName() + " of all projects:\n";
+                break;
+            case VIEW:
+                header = getCommandShortName() + " of projects in view " + pair.getTail() + ":\n";
+                break;
+            case PREFIX:
+                header = getCommandShortName() + " of projects matching " + pair.getTail() + ":\n";
+                break;
         }
+        // the jobs are selected per user, but the message of a job is the same for all
+        return new PagedReply<AbstractProject<?, ?>>(header, projects, job -> ReplyCache.get().getMessage(this, job),
+                job -> job.getFullDisplayName() + ": pending", ParallelRenderer.get(), ParallelRenderer.DEADLINE_NANOS);
     }
 
     /**
      * Returns a list of projects for the given arguments.
      *
      * @param projects the list to which the projects are added
-     * @return a pair of Mode (single job, jobs from view or all) and view name -
-     * where view name will be null if mode != VIEW
+     * @return a pair of Mode (single job, jobs from view, jobs matching a prefix or all) and view name
+     * or prefix pattern - which will be null if mode is neither VIEW nor PREFIX
      */
     Pair<Mode, String> getProjects(Sender sender, String[] args, Collection<AbstractProject<?, ?>> projects)
         throws CommandException {
@@ -106,14 +137,25 @@ abstract class AbstractMultipleJobCommand extends AbstractTextSendingCommand {
                 view = MessageHelper.getJoinedName(args, 2);
                 getProjectsForView(projects, view);
             } else {
-                mode = Mode.SINGLE;
                 String jobName = MessageHelper.getJoinedName(args, 1);
-
-                AbstractProject<?, ?> project = getJobProvider().getJobByNameOrDisplayName(jobName);
-                if (project != null) {
-                    projects.add(project);
+                if (jobName.length() > 1 && jobName.endsWith("*")) {
+                    // '*' isn't allowed in job names
+                    mode = Mode.PREFIX;
+                    view = jobName;
+                    projects.addAll(getJobProvider().getJobsByPrefix(
+                            jobName.substring(0, jobName.length() - 1), MAX_PREFIX_MATCHES));
+                    if (projects.isEmpty()) {
+                        throw new CommandException(sender.getNickname() + ": no job matches " + jobName);
+                    }
                 } else {
-                    throw new CommandException(sender.getNickname() + ": " + UNKNOWN_JOB_STR + " " + jobName);
+                    mode = Mode.SINGLE;
+                    AbstractProject<?, ?> project = getJobProvider().getJobByNameOrDisplayName(jobName);
+                    if (project != null) {
+                        projects.add(project);
+                    } else {
+                        throw new CommandException(sender.getNickname() + ": " + UNKNOWN_JOB_STR + " " + jobName
+                                + getDidYouMean(jobName));
+                    }
                 }
             }
         } else if (args.length == 1) {
@@ -127,9 +169,9 @@ abstract class AbstractMultipleJobCommand extends AbstractTextSendingCommand {
     }
 
     public String getHelp() {
-        return " [<job>|-v <view>] - show the "
+        return " [<job>|<prefix>*|-v <view>] - show the "
                 + getCommandShortName()
-                + " of a specific job, jobs in a view or all jobs";
+                + " of a specific job, jobs starting with a prefix, jobs in a view or all jobs";
     }
 
     private void getProjectsForView(Collection<AbstractProject<?, ?>> toAddTo, String viewName) {
@@ -67,7 +67,7 @@ abstract class AbstractSingleJobCommand extends AbstractTextSendingCommand {
                     return getErrorReply(sender, e);
                 }
             } else {
-                return sender + ": unknown job '" + jobName + "'";
+                return sender + ": unknown job '" + jobName + "'" + getDidYouMean(jobName);
             }
         } else {
             if (this.numberOfArguments == 0) {
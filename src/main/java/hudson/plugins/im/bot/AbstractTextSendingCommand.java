@@ -6,6 +6,7 @@ import hudson.plugins.im.IMMessage;
 import hudson.plugins.im.Sender;
 import hudson.plugins.im.tools.ExceptionHelper;
 
+import java.util.List;
 import java.util.logging.Logger;
 
 /**
@@ -17,6 +18,8 @@ public abstract class AbstractTextSendingCommand extends BotCommand {
 
     private static final Logger LOGGER = Logger.getLogger(AbstractTextSendingCommand.class.getName());
 
+    private static final int MAX_SUGGESTIONS = 3;
+
     private JobProvider jobProvider = new DefaultJobProvider();
 
     protected JobProvider getJobProvider() {
@@ -34,14 +37,22 @@ public abstract class AbstractTextSendingCommand extends BotCommand {
      */
     public final void executeCommand(Bot bot, IMChat chat, IMMessage message,
                                      Sender sender, String[] args) throws IMException {
-        String reply;
         try {
-            reply = getReply(bot, sender, args);
+            sendReply(bot, chat, sender, args);
         } catch (RuntimeException e) {
             LOGGER.warning(ExceptionHelper.dump(e));
-            reply = sender.getNickname() + ": Error " + e.toString();
+            chat.sendMessage(sender.getNickname() + ": Error " + e.toString());
         }
-        chat.sendMessage(reply);
+    }
+
+    /**
+     * Sends the reply to the chat. By default, the reply from {@link #getReply(Bot, Sender, String[])}
+     * is sent as a single message. Override to send long replies in pages.
+     *
+     * @throws RuntimeException in case of invalid args. This is automatically caught and reported to the sender
+     */
+    protected void sendReply(Bot bot, IMChat chat, Sender sender, String[] args) throws IMException {
+        chat.sendMessage(getReply(bot, sender, args));
     }
 
     /**
@@ -54,6 +65,18 @@ public abstract class AbstractTextSendingCommand extends BotCommand {
      */
     protected abstract String getReply(Bot bot, Sender sender, String args[]);
 
+    /**
+     * Returns a hint which lists jobs with names similar to an unknown job name
+     * - or an empty string if there are none.
+     */
+    protected String getDidYouMean(String jobName) {
+        List<String> names = getJobProvider().getSimilarJobNames(jobName, MAX_SUGGESTIONS);
+        if (names.isEmpty()) {
+            return "";
+        }
+        return "\nDid you mean: " + String.join(", ", names) + "?";
+    }
+
     protected String getErrorReply(Sender sender, CommandException e) {
         final StringBuilder reply;
         if(e.getReplyMessage() != null) {
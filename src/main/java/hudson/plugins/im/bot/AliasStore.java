@@ -0,0 +1,262 @@
+package hudson.plugins.im.bot;
+
+import hudson.XmlFile;
+import hudson.init.Terminator;
+import hudson.plugins.im.bot.SetAliasCommand.AliasCommand;
+import hudson.util.XStream2;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+
+/**
+ * Keeps the aliases defined via {@link SetAliasCommand} and persists them in
+ * <code>JENKINS_HOME/instant-messaging/aliases.xml</code>.
+ * <p>
+ * Aliases are kept per chat, identified by the IM id of the bot and {@link hudson.plugins.im.IMChat#getChatId()}.
+ * If the protocol can't identify its chats, all chats of a bot share its aliases.
+ * If the system property <code>hudson.plugins.im.bot.AliasStore.shared</code> is true,
+ * all chats share the same aliases instead.
+ * <p>
+ * The aliases of a chat are replaced as a whole on every change, so they can be read without locking.
+ * They are stored as the name of the aliased command plus its arguments and resolved on first use.
+ * Aliases whose command doesn't exist (anymore) are kept, but not offered - they can only be removed.
+ */
+final class AliasStore {
+
+    private static final Logger LOGGER = Logger.getLogger(AliasStore.class.getName());
+
+    private static final boolean SHARED = SystemProperties.getBoolean(AliasStore.class.getName() + ".shared", false);
+
+    private static final String SHARED_SCOPE = "*";
+
+    private static final XStream2 XSTREAM = new XStream2();
+
+    private static AliasStore INSTANCE;
+
+    // null if not persisted
+    private final File file;
+    private final boolean shared;
+    private final Supplier<CommandRegistry> registry;
+    private final ConcurrentMap<String, Aliases> scopes = new ConcurrentHashMap<>();
+
+    // scope -> alias name -> command name and arguments; loaded on first use; guarded by this
+    private TreeMap<String, TreeMap<String, String[]>> stored;
+
+    AliasStore(File file, boolean shared, Supplier<CommandRegistry> registry) {
+        this.file = file;
+        this.shared = shared;
+        this.registry = registry;
+    }
+
+    static synchronized AliasStore get() {
+        if (INSTANCE == null) {
+            Jenkins jenkins = Jenkins.getInstanceOrNull();
+            File file = jenkins != null ? new File(jenkins.getRootDir(), "instant-messaging/aliases.xml") : null;
+            INSTANCE = new AliasStore(file, SHARED, CommandRegistry::get);
+        }
+        return INSTANCE;
+    }
+
+    @Terminator
+    public static synchronized void shutdown() {
+        INSTANCE = null;
+    }
+
+    /**
+     * Returns the aliases of a chat.
+     *
+     * @param imId the IM id of the bot
+     * @param chatId the id of the chat. If null, the aliases of all chats of the bot are returned.
+     */
+    Aliases forChat(String imId, String chatId) {
+        if (this.shared) {
+            return this.scopes.computeIfAbsent(SHARED_SCOPE, k -> new Aliases(k));
+        }
+        return this.scopes.computeIfAbsent(chatId != null ? imId + " " + chatId : imId, k -> new Aliases(k));
+    }
+
+    private synchronized Map<String, String[]> load(String scope) {
+        if (this.stored == null) {
+            this.stored = read();
+        }
+        Map<String, String[]> definitions = this.stored.get(scope);
+        return definitions != null ? new TreeMap<>(definitions) : Collections.emptyMap();
+    }
+
+    private synchronized void update(String scope, TreeMap<String, String[]> definitions) {
+        if (this.stored == null) {
+            this.stored = read();
+        }
+        if (definitions.isEmpty()) {
+            this.stored.remove(scope);
+        } else {
+            this.stored.put(scope, definitions);
+        }
+        if (this.file != null) {
+            try {
+                new XmlFile(XSTREAM, this.file).write(this.stored);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not save aliases to " + this.file, e);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private TreeMap<String, TreeMap<String, String[]>> read() {
+        if (this.file != null && this.file.exists()) {
+            try {
+                Object data = new XmlFile(XSTREAM, this.file).read();
+                if (data instanceof TreeMap) {
+                    return (TreeMap<String, TreeMap<String, String[]>>) data;
+                }
+                LOGGER.warning("Ignoring unexpected content of " + this.file);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Could not load aliases from " + this.file, e);
+            }
+        }
+        return new TreeMap<>();
+    }
+
+    /**
+     * The aliases of a chat - or of all chats, if shared.
+     */
+    final class Aliases {
+
+        // null if not persisted
+        private final String scope;
+        // null until resolved
+        private volatile NavigableMap<String, AliasCommand> resolved;
+        // stored aliases whose command doesn't exist; guarded by this
+        private Map<String, String[]> unresolved = Collections.emptyMap();
+
+        private Aliases(String scope) {
+            this.scope = scope;
+        }
+
+        /**
+         * Returns the alias with the given name or <code>null</code>.
+         */
+        AliasCommand get(String name) {
+            return getAll().get(name);
+        }
+
+        /**
+         * Returns all aliases, sorted by name. The map can't be modified.
+         */
+        NavigableMap<String, AliasCommand> getAll() {
+            NavigableMap<String, AliasCommand> aliases = this.resolved;
+            return aliases != null ? aliases : resolve();
+        }
+
+        /**
+         * Adds or replaces an alias.
+         *
+         * @return the alias previously registered under this name or <code>null</code>
+         */
+        synchronized AliasCommand put(String name, AliasCommand alias) {
+            NavigableMap<String, AliasCommand> copy = new TreeMap<>(getAll());
+            AliasCommand old = copy.put(name, alias);
+            this.resolved = Collections.unmodifiableNavigableMap(copy);
+            save();
+            return old;
+        }
+
+        /**
+         * Removes an alias - also one whose command couldn't be resolved.
+         *
+         * @return the removed alias or <code>null</code> if there is no alias by that name.
+         *         If its command couldn't be resolved, the returned alias has no command to execute.
+         */
+        synchronized AliasCommand remove(String name) {
+            if (!getAll().containsKey(name)) {
+                String[] definition = this.unresolved.get(name);
+                if (definition == null) {
+                    return null;
+                }
+                Map<String, String[]> rest = new TreeMap<>(this.unresolved);
+                rest.remove(name);
+                this.unresolved = rest;
+                save();
+                return new AliasCommand(null, definition[0], Arrays.copyOfRange(definition, 1, definition.length));
+            }
+            NavigableMap<String, AliasCommand> copy = new TreeMap<>(getAll());
+            AliasCommand old = copy.remove(name);
+            this.resolved = Collections.unmodifiableNavigableMap(copy);
+            save();
+            return old;
+        }
+
+        // must hold lock
+        private void save() {
+            if (this.scope == null) {
+                return;
+            }
+            TreeMap<String, String[]> definitions = new TreeMap<>(this.unresolved);
+            for (Map.Entry<String, AliasCommand> entry : this.resolved.entrySet()) {
+                AliasCommand alias = entry.getValue();
+                String[] definition = new String[alias.getArguments().length + 1];
+                definition[0] = alias.getCommandName();
+                System.arraycopy(alias.getArguments(), 0, definition, 1, alias.getArguments().length);
+                definitions.put(entry.getKey(), definition);
+            }
+            update(this.scope, definitions);
+        }
+
+        private synchronized NavigableMap<String, AliasCommand> resolve() {
+            if (this.resolved != null) {
+                return this.resolved;
+            }
+            Map<String, String[]> definitions = this.scope != null ? load(this.scope) : Collections.emptyMap();
+            CommandRegistry commands = AliasStore.this.registry.get();
+            NavigableMap<String, AliasCommand> aliases = new TreeMap<>();
+            for (String name : definitions.keySet()) {
+                resolve(name, definitions, commands, aliases, new HashSet<>());
+            }
+            if (aliases.size() < definitions.size()) {
+                Map<String, String[]> rest = new TreeMap<>(definitions);
+                rest.keySet().removeAll(aliases.keySet());
+                LOGGER.fine("Could not resolve aliases " + rest.keySet());
+                this.unresolved = rest;
+            }
+            this.resolved = aliases.isEmpty() ? Collections.emptyNavigableMap() : Collections.unmodifiableNavigableMap(aliases);
+            return this.resolved;
+        }
+
+        private AliasCommand resolve(String name, Map<String, String[]> definitions, CommandRegistry commands,
+                Map<String, AliasCommand> aliases, Set<String> visiting) {
+            AliasCommand alias = aliases.get(name);
+            String[] definition = definitions.get(name);
+            if (alias != null || definition == null || definition.length == 0
+                    || commands.getCommand(name) != null || !visiting.add(name)) {
+                // already resolved, unknown, hidden by a built-in command or a cycle
+                return alias;
+            }
+            String commandName = definition[0];
+            BotCommand command = commands.getCommand(commandName);
+            if (command == null) {
+                command = resolve(commandName, definitions, commands, aliases, visiting);
+            }
+            if (command == null) {
+                return null;
+            }
+            alias = new AliasCommand(command, commandName, Arrays.copyOfRange(definition, 1, definition.length));
+            aliases.put(name, alias);
+            return alias;
+        }
+    }
+}
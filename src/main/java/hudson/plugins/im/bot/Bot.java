@@ -9,18 +9,20 @@ import hudson.plugins.im.IMChat;
 import hudson.plugins.im.IMException;
 import hudson.plugins.im.IMMessage;
 import hudson.plugins.im.IMMessageListener;
+import hudson.plugins.im.IMMetrics;
+import hudson.plugins.im.IMPublisherDescriptor;
+import hudson.plugins.im.IsolatedChat;
 import hudson.plugins.im.Sender;
 import hudson.plugins.im.bot.SetAliasCommand.AliasCommand;
+import hudson.plugins.im.outbound.RateLimitedChat;
+import hudson.plugins.im.tools.CommandTokenizer;
 import hudson.plugins.im.tools.ExceptionHelper;
-import hudson.plugins.im.tools.MessageHelper;
 import hudson.security.ACL;
 
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Map;
-import java.util.Map.Entry;
 import java.util.SortedMap;
-import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Logger;
 
 import jenkins.model.Jenkins;
@@ -46,21 +48,7 @@ public class Bot implements IMMessageListener {
 
         public void executeCommand(Bot bot, IMChat groupChat, IMMessage message,
                                    Sender sender, String[] args) throws IMException {
-            if (bot.helpCache == null) {
-                final StringBuilder msg = new StringBuilder("Available commands:");
-                for (final Entry<String, BotCommand> item : bot.cmdsAndAliases.entrySet()) {
-                    // skip myself
-                    if ((item.getValue() != this)
-                        && (item.getValue().getHelp() != null)
-                    ) {
-                        msg.append("\n");
-                        msg.append(item.getKey());
-                        msg.append(item.getValue().getHelp());
-                    }
-                }
-                bot.helpCache = msg.toString();
-            }
-            groupChat.sendMessage(bot.helpCache);
+            groupChat.sendMessage(bot.getHelp());
         }
 
         public String getHelp() {
@@ -68,7 +56,15 @@ public class Bot implements IMMessageListener {
         }
     }
 
-    private final SortedMap<String, BotCommand> cmdsAndAliases = new TreeMap<String, BotCommand>();
+    /**
+     * The aliases of this chat - or of all chats, if shared.
+     */
+    private final AliasStore.Aliases aliases;
+
+    /**
+     * The reply whose next page is sent by the 'more' command - or null.
+     */
+    private final AtomicReference<PagedReply<?>> pendingReply = new AtomicReference<PagedReply<?>>();
 
     private final IMChat chat;
     private final String nick;
@@ -76,30 +72,48 @@ public class Bot implements IMMessageListener {
     private final String commandPrefix;
     private final boolean commandPrefixRequired;
     private boolean commandsAccepted;
-    private String helpCache = null;
 
     private final AuthenticationHolder authentication;
 
+    /**
+     * Runs the commands of this chat. Null if they are run on the thread delivering the message.
+     */
+    private final BotCommandExecutor.Lane commandLane;
+
+    /**
+     * @param descriptor the descriptor of the IM protocol. Its rate limits apply to the
+     *        replies of the bot, shared with the notifications sent via the same protocol.
+     *        If null, it is looked up in the plugin which implements the chat.
+     */
     public Bot(IMChat chat, String nick, String imServer,
                String commandPrefix, AuthenticationHolder authentication,
-               boolean commandPrefixRequired
+               boolean commandPrefixRequired, IMPublisherDescriptor descriptor
     ) {
-        this.chat = chat;
         this.nick = nick;
         this.imServer = imServer;
         this.commandPrefix = commandPrefix;
         this.commandPrefixRequired = commandPrefixRequired;
         this.authentication = authentication;
-        this.commandsAccepted = chat.isCommandsAccepted();
-
-        for (BotCommand cmd : BotCommand.all()) {
-            for (String name : cmd.getCommandNames())
-                this.cmdsAndAliases.put(name, cmd);
+        if (descriptor == null) {
+            descriptor = DescriptorLookup.find(chat);
         }
+        // the same key as the notifications, so both share the limits and the bulkhead of the connection
+        String channel = descriptor != null ? descriptor.getClass().getName() : getImId();
+        this.chat = RateLimitedChat.wrap(IsolatedChat.wrap(chat, channel), channel, descriptor);
+        this.commandsAccepted = chat.isCommandsAccepted();
+        this.commandLane = BotCommandExecutor.isEnabled() ? BotCommandExecutor.get().newLane(this.chat) : null;
+        this.aliases = AliasStore.get().forChat(getImId(), chat.getChatId());
 
         chat.addMessageListener(this);
     }
 
+    public Bot(IMChat chat, String nick, String imServer,
+               String commandPrefix, AuthenticationHolder authentication,
+               boolean commandPrefixRequired
+    ) {
+        this(chat, nick, imServer, commandPrefix, authentication, commandPrefixRequired, null);
+    }
+
     /**
      * Long-time default constructor (and class) behavior, which requires
      * the {@code commandPrefix} to be present. A different constructor is
@@ -126,9 +140,10 @@ public class Bot implements IMMessageListener {
     }
 
     public void onMessage(final IMMessage msg) {
-        // is it a command for me ? (returns null if not, the payload if so)
-        String payload = retrieveMessagePayLoad(msg.getBody());
-        if (payload != null) {
+        // is it a command for me ? (returns -1 if not, the start of the payload if so)
+        final String body = msg.getBody();
+        int payloadStart = findPayloadStart(body);
+        if (payloadStart >= 0) {
             final Sender s = getSender(msg);
 
             try {
@@ -145,31 +160,19 @@ public class Bot implements IMMessageListener {
             }
 
             // split words
-            final String[] args = MessageHelper.extractCommandLine(payload);
+            final String[] args = CommandTokenizer.tokenize(body, payloadStart, body.length());
             if (args.length > 0) {
                 // first word is the command name
                 String cmd = args[0];
 
                 try {
-                    final BotCommand command = this.cmdsAndAliases.get(cmd);
+                    final BotCommand command = getCommand(cmd);
                     if (command != null) {
-                        if (isAuthenticationNeeded()) {
-                            try {
-                                ACL.impersonate2(this.authentication.getAuthentication(), new NotReallyRoleSensitiveCallable<Void, IMException>() {
-                                    private static final long serialVersionUID = 1L;
-
-                                    @Override
-                                    public Void call() throws IMException {
-                                        command.executeCommand(Bot.this, chat, msg, s, args);
-                                        return null;
-                                    }
-                                });
-                            } catch (UsernameNotFoundException ue) {
-                                this.chat.sendMessage(s.getNickname() + " This bot is not authorized to execute commands at this time, sorry!");
-                                throw ue;
-                            }
-                        } else {
-                            command.executeCommand(Bot.this, chat, msg, s, args);
+                        if (this.commandLane == null) {
+                            executeCommand(command, this.chat, msg, s, args);
+                        } else if (!this.commandLane.submit(getSenderKey(s), cmd, command.getTimeoutSeconds(),
+                                target -> executeCommand(command, target, msg, s, args))) {
+                            this.chat.sendMessage(s.getNickname() + " you have too many pending commands. Please wait for them to finish!");
                         }
                     } else {
                         this.chat.sendMessage(s.getNickname() + " did you mean me? Unknown command '" + cmd
@@ -182,6 +185,49 @@ public class Bot implements IMMessageListener {
         }
     }
 
+    /**
+     * Executes the command - as the configured Jenkins user, if needed.
+     *
+     * @param target the chat to which the command replies
+     */
+    private void executeCommand(final BotCommand command, final IMChat target, final IMMessage msg,
+            final Sender s, final String[] args) throws IMException {
+        long start = IMMetrics.start();
+        boolean success = false;
+        try {
+            executeCommandAs(command, target, msg, s, args);
+            success = true;
+        } finally {
+            IMMetrics.commandCompleted(command.getClass(), start, success);
+        }
+    }
+
+    private void executeCommandAs(final BotCommand command, final IMChat target, final IMMessage msg,
+            final Sender s, final String[] args) throws IMException {
+        if (isAuthenticationNeeded()) {
+            try {
+                ACL.impersonate2(this.authentication.getAuthentication(), new NotReallyRoleSensitiveCallable<Void, IMException>() {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    public Void call() throws IMException {
+                        command.executeCommand(Bot.this, target, msg, s, args);
+                        return null;
+                    }
+                });
+            } catch (UsernameNotFoundException ue) {
+                target.sendMessage(s.getNickname() + " This bot is not authorized to execute commands at this time, sorry!");
+                throw ue;
+            }
+        } else {
+            command.executeCommand(Bot.this, target, msg, s, args);
+        }
+    }
+
+    private static String getSenderKey(Sender s) {
+        return s.getId() != null ? s.getId() : s.getNickname();
+    }
+
     private boolean isAuthenticationNeeded() {
         return this.authentication != null && Jenkins.getInstance().isUseSecurity();
     }
@@ -199,23 +245,28 @@ public class Bot implements IMMessageListener {
         return s;
     }
 
-    private static boolean isNickSeparator(final String candidate) {
-        return ":".equals(candidate) || ",".equals(candidate);
+    private static boolean isNickSeparator(final char candidate) {
+        return candidate == ':' || candidate == ',';
     }
 
-    private String retrieveMessagePayLoad(final String body) {
+    /**
+     * Returns the index at which the command starts in the message - or -1 if
+     * the message isn't a command for this bot. Doesn't allocate, as most
+     * messages in a busy chat aren't commands.
+     */
+    private int findPayloadStart(final String body) {
         if (body == null) {
-            return null;
+            return -1;
         }
 
         if (body.startsWith(this.commandPrefix)) {
-            return body.substring(this.commandPrefix.length()).trim();
+            return this.commandPrefix.length();
         }
 
-        if (body.startsWith(this.nick)
-                && isNickSeparator(body.substring(this.nick.length(), this.nick
-                        .length() + 1))) {
-            return body.substring(this.nick.length() + 1).trim();
+        int nickLength = this.nick.length();
+        if (body.length() > nickLength && body.startsWith(this.nick)
+                && isNickSeparator(body.charAt(nickLength))) {
+            return nickLength + 1;
         }
 
         // By default, bots require the commandPrefix or nick prefix at least,
@@ -227,10 +278,10 @@ public class Bot implements IMMessageListener {
         // empty commandPrefix (e.g. legacy automation config vs. interactive
         // chats, or a single setting for all chats in some consumer plugins).
         if (!this.commandPrefixRequired)
-            return body.trim();
+            return 0;
 
         // By default, this message was not destined to be seen by the bot.
-        return null;
+        return -1;
     }
 
     /**
@@ -238,7 +289,15 @@ public class Bot implements IMMessageListener {
      * or <code>null</code>.
      */
     BotCommand getCommand(String name) {
-        return this.cmdsAndAliases.get(name);
+        BotCommand command = CommandRegistry.get().getCommand(name);
+        return command != null ? command : this.aliases.get(name);
+    }
+
+    /**
+     * Returns the help text listing all commands and aliases.
+     */
+    String getHelp() {
+        return CommandRegistry.get().getHelp(this.aliases.getAll());
     }
 
     /**
@@ -248,15 +307,11 @@ public class Bot implements IMMessageListener {
      * if no alias was registered by that name previously
      * @throws IllegalArgumentException when trying to override a built-in command
      */
-    BotCommand addAlias(String name, BotCommand alias) {
-        BotCommand old = this.cmdsAndAliases.get(name);
-        if (old != null && ! (old instanceof AliasCommand)) {
+    BotCommand addAlias(String name, AliasCommand alias) {
+        if (CommandRegistry.get().getCommand(name) != null) {
             throw new IllegalArgumentException("Won't override built-in command: '" + name + "'!");
         }
-
-        this.cmdsAndAliases.put(name, alias);
-        this.helpCache = null;
-        return old;
+        return this.aliases.put(name, alias);
     }
 
     /**
@@ -266,28 +321,57 @@ public class Bot implements IMMessageListener {
      * @return the removed alias or <code>null</code> if no alias by that name is registered
      */
     AliasCommand removeAlias(String name) {
-        BotCommand alias = this.cmdsAndAliases.get(name);
-        if (alias instanceof AliasCommand) {
-            this.cmdsAndAliases.remove(name);
-            return (AliasCommand) alias;
-        } else if (alias != null) {
+        if (CommandRegistry.get().getCommand(name) != null) {
             throw new IllegalArgumentException("Won't remove built-in command: '" + name + "'!");
         }
-        return null;
+        return this.aliases.remove(name);
     }
 
     /**
      * Returns a map of all currently defined aliases.
-     * The map is sorted by the alias name.
+     * The map is sorted by the alias name and can't be modified.
      */
     SortedMap<String, AliasCommand> getAliases() {
-        SortedMap<String, AliasCommand> result = new TreeMap<String, AliasCommand>();
-        for (Map.Entry<String, BotCommand> entry : this.cmdsAndAliases.entrySet()) {
-            if (entry.getValue() instanceof AliasCommand) {
-                result.put(entry.getKey(), (AliasCommand) entry.getValue());
-            }
+        return this.aliases.getAll();
+    }
+
+    /**
+     * Sends the first page of a reply. The following pages can be requested with the {@link MoreCommand}.
+     *
+     * @param target the chat to send the page to
+     */
+    void sendFirstPage(IMChat target, PagedReply<?> reply) throws IMException {
+        // a new reply replaces the remaining pages of the previous one
+        this.pendingReply.set(null);
+        sendPage(target, reply);
+    }
+
+    /**
+     * Sends the next page of the last paged reply in this chat.
+     *
+     * @param target the chat to send the page to
+     * @return false if there are no more pages
+     */
+    boolean sendNextPage(IMChat target) throws IMException {
+        PagedReply<?> reply = this.pendingReply.get();
+        if (reply == null || reply.isExpired()) {
+            this.pendingReply.compareAndSet(reply, null);
+            return false;
+        }
+        sendPage(target, reply);
+        return true;
+    }
+
+    private void sendPage(IMChat target, PagedReply<?> reply) throws IMException {
+        String page = reply.nextPage(PagedReply.PAGE_SIZE);
+        int remaining = reply.getRemaining();
+        if (remaining > 0) {
+            this.pendingReply.set(reply);
+            page += "\n... and " + remaining + " more. Send '" + this.commandPrefix + " more' to see them.";
+        } else {
+            this.pendingReply.compareAndSet(reply, null);
         }
-        return result;
+        target.sendMessage(page);
     }
 
     /**
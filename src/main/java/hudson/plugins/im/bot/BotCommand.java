@@ -26,6 +26,12 @@ import java.util.Collection;
  * @see Bot
  */
 public abstract class BotCommand implements ExtensionPoint {
+
+    /**
+     * Returned by {@link #getTimeoutSeconds()} if the command uses the timeout configured for all commands.
+     */
+    public static final long DEFAULT_TIMEOUT = -1;
+
     /**
      * Obtains the name of the command. Single commands can register multiple aliases,
      * so this method returns a collection.
@@ -55,6 +61,18 @@ public abstract class BotCommand implements ExtensionPoint {
      */
     public abstract String getHelp();
 
+    /**
+     * Returns the maximum run time of the command in seconds; 0 for no limit.
+     * A command which exceeds it is interrupted and its further replies are dropped.
+     * The next command of the chat is started right away, so a command which doesn't
+     * respond to the interrupt keeps running alongside it.
+     *
+     * @return {@link #DEFAULT_TIMEOUT} unless overridden
+     */
+    public long getTimeoutSeconds() {
+        return DEFAULT_TIMEOUT;
+    }
+
     /**
      * Returns all the registered {@link BotCommand}s.
      */
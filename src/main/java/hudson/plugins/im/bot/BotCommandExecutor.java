@@ -0,0 +1,355 @@
+package hudson.plugins.im.bot;
+
+import hudson.init.Terminator;
+import hudson.plugins.im.IMChat;
+import hudson.plugins.im.IMException;
+import hudson.plugins.im.IMMessageListener;
+import hudson.plugins.im.IMMetrics;
+import hudson.plugins.im.tools.ExceptionHelper;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+
+/**
+ * Executes bot commands on a bounded pool of threads instead of the thread
+ * on which the protocol plugin delivers the messages.
+ * <p>
+ * Each chat has its own {@link Lane}: the commands of a chat are run one after the other,
+ * so their replies never interleave. Different chats run in parallel.
+ * Within a chat, senders take turns, so a single user can't starve the others,
+ * and the number of pending commands per sender is limited.
+ * A command which runs longer than its timeout - see {@link BotCommand#getTimeoutSeconds()} -
+ * is interrupted; any output it produces afterwards is dropped. The lane doesn't wait for it
+ * to stop: the next command of the chat is started right away, so a command which
+ * ignores the interrupt keeps running (and occupies a thread) until it returns.
+ * <p>
+ * Can be configured with the following system properties (prefixed by the name of this class):
+ * <ul>
+ * <li><code>.enabled</code> - if false, commands are run on the thread delivering the message (default: true)</li>
+ * <li><code>.threads</code> - maximum number of commands running at the same time (default: 4)</li>
+ * <li><code>.virtualThreads</code> - run the commands on virtual threads, if the Java runtime supports them (default: false)</li>
+ * <li><code>.timeoutSeconds</code> - maximum run time of commands which don't define their own; 0 for no limit (default: 60)</li>
+ * <li><code>.maxPendingPerSender</code> - maximum number of queued commands per sender and chat (default: 5)</li>
+ * </ul>
+ */
+final class BotCommandExecutor {
+
+    private static final Logger LOGGER = Logger.getLogger(BotCommandExecutor.class.getName());
+
+    private static final String PROPERTY_PREFIX = BotCommandExecutor.class.getName();
+
+    private static final boolean ENABLED = SystemProperties.getBoolean(PROPERTY_PREFIX + ".enabled", true);
+    private static final int THREADS = Math.max(1, SystemProperties.getInteger(PROPERTY_PREFIX + ".threads", 4));
+    private static final boolean VIRTUAL_THREADS = SystemProperties.getBoolean(PROPERTY_PREFIX + ".virtualThreads", false);
+    private static final long TIMEOUT_SECONDS = SystemProperties.getLong(PROPERTY_PREFIX + ".timeoutSeconds", 60L);
+    private static final int MAX_PENDING_PER_SENDER =
+            Math.max(1, SystemProperties.getInteger(PROPERTY_PREFIX + ".maxPendingPerSender", 5));
+
+    private static BotCommandExecutor INSTANCE;
+
+    /**
+     * A bot command bound to its arguments.
+     */
+    @FunctionalInterface
+    interface Command {
+        /**
+         * @param chat the chat to reply to
+         */
+        void run(IMChat chat) throws Exception;
+    }
+
+    private final ThreadPoolExecutor executor;
+    // commands queued in all lanes
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private BotCommandExecutor(int threads, ThreadFactory threadFactory) {
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), threadFactory);
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Returns if commands should be run by the executor at all.
+     */
+    static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    static synchronized BotCommandExecutor get() {
+        if (INSTANCE == null) {
+            ThreadFactory factory = VIRTUAL_THREADS ? virtualThreadFactory() : null;
+            if (factory == null) {
+                factory = new NamingThreadFactory(new DaemonThreadFactory(), "IM-Bot-Command");
+            }
+            INSTANCE = new BotCommandExecutor(THREADS, factory);
+            IMMetrics.setQueueDepth(IMMetrics.Queue.COMMANDS, INSTANCE.pending::get);
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Creates the lane for a chat.
+     */
+    Lane newLane(IMChat chat) {
+        return new Lane(chat);
+    }
+
+    @Terminator
+    public static void shutdown() {
+        ExecutorService executor;
+        synchronized (BotCommandExecutor.class) {
+            executor = INSTANCE != null ? INSTANCE.executor : null;
+            INSTANCE = null;
+        }
+        IMMetrics.setQueueDepth(IMMetrics.Queue.COMMANDS, null);
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns a factory for virtual threads - or null if the Java runtime doesn't support them.
+     */
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            // Java 21+. Via reflection, as we still support older runtimes.
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "IM-Bot-Command-", 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOGGER.log(Level.INFO, "Virtual threads are not supported by this Java runtime. Using platform threads.", e);
+            return null;
+        }
+    }
+
+    /**
+     * Runs the commands of a single chat.
+     */
+    final class Lane {
+
+        private final IMChat chat;
+
+        // guarded by this
+        private final Map<String, Deque<Task>> queues = new LinkedHashMap<>();
+        private boolean running;
+
+        private Lane(IMChat chat) {
+            this.chat = chat;
+        }
+
+        /**
+         * Queues a command with the default timeout.
+         *
+         * @see #submit(String, String, long, Command)
+         */
+        boolean submit(String sender, String name, Command command) {
+            return submit(sender, name, BotCommand.DEFAULT_TIMEOUT, command);
+        }
+
+        /**
+         * Queues a command.
+         *
+         * @param sender identifies the sender for fairness
+         * @param name the name of the command, for logging
+         * @param timeoutSeconds the maximum run time of the command, 0 for no limit
+         *        or {@link BotCommand#DEFAULT_TIMEOUT}
+         * @return false if the sender has too many pending commands already
+         */
+        synchronized boolean submit(String sender, String name, long timeoutSeconds, Command command) {
+            Deque<Task> queue = this.queues.computeIfAbsent(sender, k -> new ArrayDeque<>());
+            if (queue.size() >= MAX_PENDING_PER_SENDER) {
+                return false;
+            }
+            queue.addLast(new Task(name, timeoutSeconds < 0 ? TIMEOUT_SECONDS : timeoutSeconds, command));
+            pending.incrementAndGet();
+            if (!this.running) {
+                this.running = true;
+                runNext();
+            }
+            return true;
+        }
+
+        // must hold lock
+        private void runNext() {
+            Task task = pollNext();
+            if (task == null) {
+                this.running = false;
+                return;
+            }
+            try {
+                task.future = executor.submit(() -> run(task));
+                if (task.timeoutSeconds > 0) {
+                    task.timeout = Timer.get().schedule(() -> timedOut(task), task.timeoutSeconds, TimeUnit.SECONDS);
+                }
+            } catch (RejectedExecutionException e) {
+                // shutting down
+                for (Deque<Task> queue : this.queues.values()) {
+                    pending.addAndGet(-queue.size());
+                }
+                this.queues.clear();
+                this.running = false;
+            }
+        }
+
+        /**
+         * Takes the next task of the sender whose turn it is and moves the sender to the end of the line.
+         */
+        private Task pollNext() {
+            Iterator<Map.Entry<String, Deque<Task>>> it = this.queues.entrySet().iterator();
+            if (!it.hasNext()) {
+                return null;
+            }
+            Map.Entry<String, Deque<Task>> first = it.next();
+            Task task = first.getValue().pollFirst();
+            pending.decrementAndGet();
+            it.remove();
+            if (!first.getValue().isEmpty()) {
+                this.queues.put(first.getKey(), first.getValue());
+            }
+            return task;
+        }
+
+        private void run(Task task) {
+            try {
+                task.command.run(task.chat);
+            } catch (Exception e) {
+                LOGGER.warning(ExceptionHelper.dump(e));
+            } finally {
+                finished(task);
+            }
+        }
+
+        private void finished(Task task) {
+            if (task.done.compareAndSet(false, true)) {
+                if (task.timeout != null) {
+                    task.timeout.cancel(false);
+                }
+                synchronized (this) {
+                    runNext();
+                }
+            }
+        }
+
+        private void timedOut(Task task) {
+            if (task.done.compareAndSet(false, true)) {
+                LOGGER.warning("Bot command '" + task.name + "' didn't finish within " + task.timeoutSeconds + " seconds");
+                task.chat.close();
+                task.future.cancel(true);
+                try {
+                    executor.execute(() -> {
+                        try {
+                            this.chat.sendMessage("Command '" + task.name + "' took too long and was aborted.");
+                        } catch (IMException e) {
+                            LOGGER.warning(ExceptionHelper.dump(e));
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // shutting down
+                }
+                // don't wait for the command to stop - it may ignore the interrupt
+                synchronized (this) {
+                    runNext();
+                }
+            }
+        }
+
+        private final class Task {
+            private final String name;
+            private final long timeoutSeconds;
+            private final Command command;
+            private final GuardedChat chat;
+            private final AtomicBoolean done = new AtomicBoolean();
+            // set while holding the lane's lock, before the task can finish
+            private volatile Future<?> future;
+            private volatile Future<?> timeout;
+
+            Task(String name, long timeoutSeconds, Command command) {
+                this.name = name;
+                this.timeoutSeconds = timeoutSeconds;
+                this.command = command;
+                this.chat = new GuardedChat(Lane.this.chat);
+            }
+        }
+    }
+
+    /**
+     * Chat which drops the output of a command after it has timed out.
+     */
+    private static final class GuardedChat implements IMChat {
+
+        private final IMChat delegate;
+        private volatile boolean closed;
+
+        GuardedChat(IMChat delegate) {
+            this.delegate = delegate;
+        }
+
+        void close() {
+            this.closed = true;
+        }
+
+        @Override
+        public void sendMessage(String message) throws IMException {
+            if (this.closed) {
+                LOGGER.fine("Dropping output of aborted command");
+                return;
+            }
+            this.delegate.sendMessage(message);
+        }
+
+        @Override
+        public String getNickName(String senderId) {
+            return this.delegate.getNickName(senderId);
+        }
+
+        @Override
+        public String getIMId(String senderId) {
+            return this.delegate.getIMId(senderId);
+        }
+
+        @Override
+        public boolean isMultiUserChat() {
+            return this.delegate.isMultiUserChat();
+        }
+
+        @Override
+        public boolean isCommandsAccepted() {
+            return this.delegate.isCommandsAccepted();
+        }
+
+        @Override
+        public String getChatId() {
+            return this.delegate.getChatId();
+        }
+
+        @Override
+        public void addMessageListener(IMMessageListener listener) {
+            this.delegate.addMessageListener(listener);
+        }
+
+        @Override
+        public void removeMessageListener(IMMessageListener listener) {
+            this.delegate.removeMessageListener(listener);
+        }
+    }
+}
@@ -149,7 +149,7 @@ public class BuildCommand extends AbstractTextSendingCommand {
                 }
             } else {
                 return giveSyntax(sender.getNickname(), args[0]) +
-                        " (or, did you type the project name correctly?)";
+                        " (or, did you type the project name correctly?)" + getDidYouMean(jobName);
             }
         } else {
             return sender.getNickname() + ": Error, syntax is: '" + args[0] +  SYNTAX + "'";
@@ -0,0 +1,138 @@
+package hudson.plugins.im.bot;
+
+import hudson.ExtensionList;
+import hudson.ExtensionListListener;
+import hudson.plugins.im.bot.Bot.HelpCommand;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+/**
+ * The built-in {@link BotCommand}s by name, shared by all {@link Bot}s.
+ * <p>
+ * The registry is immutable. A new one is built when the list of
+ * {@link BotCommand} extensions changes, e.g. when a plugin is installed dynamically.
+ * Aliases are defined per chat and kept by the {@link Bot}s themselves.
+ */
+final class CommandRegistry {
+
+    private static final Logger LOGGER = Logger.getLogger(CommandRegistry.class.getName());
+
+    private static volatile CommandRegistry current;
+    // the extension list we've registered an Invalidator with; guarded by the class
+    private static ExtensionList<BotCommand> observed;
+
+    // the extension list this registry was built from, null in tests
+    private final ExtensionList<BotCommand> source;
+    private final NavigableMap<String, BotCommand> commands;
+    // help text without aliases, built on first use
+    private volatile String help;
+
+    CommandRegistry(ExtensionList<BotCommand> source, Iterable<? extends BotCommand> commands) {
+        this.source = source;
+        NavigableMap<String, BotCommand> map = new TreeMap<>();
+        for (BotCommand cmd : commands) {
+            for (String name : cmd.getCommandNames()) {
+                map.put(name, cmd);
+            }
+        }
+        this.commands = Collections.unmodifiableNavigableMap(map);
+    }
+
+    /**
+     * Returns the registry for the current set of {@link BotCommand} extensions.
+     */
+    static CommandRegistry get() {
+        ExtensionList<BotCommand> all = BotCommand.all();
+        CommandRegistry registry = current;
+        if (registry != null && registry.source == all) {
+            return registry;
+        }
+        synchronized (CommandRegistry.class) {
+            registry = current;
+            if (registry == null || registry.source != all) {
+                if (observed != all) {
+                    // first use or a different Jenkins instance, e.g. in tests
+                    all.addListener(new Invalidator(all));
+                    observed = all;
+                }
+                registry = new CommandRegistry(all, all);
+                current = registry;
+                LOGGER.fine("Registered " + registry.commands.size() + " bot commands");
+            }
+            return registry;
+        }
+    }
+
+    /**
+     * Returns the command with the given name or <code>null</code>.
+     */
+    BotCommand getCommand(String name) {
+        return this.commands.get(name);
+    }
+
+    /**
+     * Returns all commands by name, sorted.
+     */
+    NavigableMap<String, BotCommand> getCommands() {
+        return this.commands;
+    }
+
+    /**
+     * Returns the help text listing all commands and the given aliases.
+     * The help text without aliases is computed only once.
+     */
+    String getHelp(SortedMap<String, ? extends BotCommand> aliases) {
+        if (aliases.isEmpty()) {
+            String text = this.help;
+            if (text == null) {
+                text = buildHelp(this.commands);
+                this.help = text;
+            }
+            return text;
+        }
+        SortedMap<String, BotCommand> all = new TreeMap<>(aliases);
+        // built-in commands win over aliases of the same name
+        all.putAll(this.commands);
+        return buildHelp(all);
+    }
+
+    private static String buildHelp(Map<String, BotCommand> commands) {
+        final StringBuilder msg = new StringBuilder("Available commands:");
+        for (Map.Entry<String, BotCommand> item : commands.entrySet()) {
+            BotCommand cmd = item.getValue();
+            if (!(cmd instanceof HelpCommand) && cmd.getHelp() != null) {
+                msg.append("\n");
+                msg.append(item.getKey());
+                msg.append(cmd.getHelp());
+            }
+        }
+        return msg.toString();
+    }
+
+    /**
+     * Discards the registry when commands are added or removed.
+     */
+    private static final class Invalidator extends ExtensionListListener {
+
+        private final ExtensionList<BotCommand> list;
+
+        Invalidator(ExtensionList<BotCommand> list) {
+            this.list = list;
+        }
+
+        @Override
+        public void onChange() {
+            synchronized (CommandRegistry.class) {
+                CommandRegistry registry = current;
+                if (registry != null && registry.source == this.list) {
+                    current = null;
+                }
+            }
+        }
+    }
+}
@@ -2,13 +2,8 @@ package hudson.plugins.im.bot;
 
 import hudson.Extension;
 import hudson.Util;
-import hudson.model.Build;
-import hudson.model.Computer;
 import hudson.model.Executor;
-import hudson.model.Item;
 import hudson.model.Queue.Executable;
-import hudson.model.Queue.Task;
-import hudson.model.Run;
 import hudson.model.queue.SubTask;
 import hudson.plugins.im.IMChat;
 import hudson.plugins.im.IMException;
@@ -17,18 +12,16 @@ import hudson.plugins.im.Sender;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import jenkins.model.Jenkins;
 import jenkins.model.JenkinsLocationConfiguration;
 
-import org.jenkinsci.plugins.workflow.support.steps.ExecutorStepExecution.PlaceholderTask;
-
 /**
  * CurrentlyBuilding command for instant messaging plugin.
  *
- * Generates a list of jobs in progress.
+ * Generates a list of jobs in progress, as tracked by the {@link RunningBuildsRegistry}.
  *
  * @author Bjoern Kasteleiner
  */
@@ -118,130 +111,65 @@ public class CurrentlyBuildingCommand extends BotCommand {
             }
         }
 
-        int countJobsInProgess = 0;
+        List<RunningBuildsRegistry.Entry> running = RunningBuildsRegistry.get().getRunning();
+        int countJobsInProgess = running.size();
         int countJobsInPattern = 0;
-        for (Computer computer : Jenkins.getInstance().getComputers()) {
-            for (Executor executor : computer.getExecutors()) {
-                Executable currentExecutable = executor.getCurrentExecutable();
-                if (currentExecutable != null) {
-                    countJobsInProgess++;
-
-                    Build currentExecutableBuild = null;
-                    if (currentExecutable instanceof Build) {
-                        currentExecutableBuild = (Build) currentExecutable;
-                    }
-
-                    SubTask task = currentExecutable.getParent();
-                    Item item = null;
-                    if (task instanceof Item) {
-                        item = (Item) task;
-                    }
-
-                    PlaceholderTask placeholderTask = null;
-                    if (task instanceof PlaceholderTask) {
-                        // e.g. a part of pipeline
-                        placeholderTask = (PlaceholderTask) task;
-                    }
+        StringBuilder msgLine = new StringBuilder();
+        for (RunningBuildsRegistry.Entry entry : running) {
+            Executor executor = entry.executor;
+            Executable currentExecutable = entry.executable;
+            if (cbDebug) {
+                entry = RunningBuildsRegistry.describe(executor, currentExecutable, true);
+            }
 
-                    StringBuffer msgLine = new StringBuffer();
+            msgLine.setLength(0);
+            msgLine.append(entry.getName());
 
-                    msgLine.append(computer.getDisplayName());
-                    msgLine.append("#");
-                    msgLine.append(executor.getNumber());
-                    msgLine.append(": ");
-                    if (item == null) {
-                        // Display name of a running subtask (one or more per build,
-                        // depending on parallelism) includes its build number
-                        // e.g. in pipeline originated items.
-                        if (cbDebug) { msgLine.append("task.getDisplayName()= "); }
-                        msgLine.append(task.getDisplayName());
-                    } else {
-                        if (currentExecutableBuild != null) {
-                            // A legacy freestyle job build is running.
-                            // Its higher-level Executable has the number.
-                            if (cbDebug) { msgLine.append("currentExecutableBuild.getFullDisplayName()= "); }
-                            msgLine.append(currentExecutableBuild.getFullDisplayName());
-                        } else
-                        if (task instanceof Run) {
-                            if (cbDebug) { msgLine.append(" RunTask_data_of_Item= "); }
-                            Run r = (Run) task;
-                            msgLine.append(item.getFullDisplayName());
-                            msgLine.append("#");
-                            msgLine.append(r.getNumber());
-                        }
-                    }
-
-                    if (reportUrls && !reportCountOnly) {
-                        String relativeUrl = null;
-                        if (currentExecutableBuild != null) {
-                            if (cbDebug) { msgLine.append(" URL:currExec= "); }
-                            relativeUrl = currentExecutableBuild.getUrl();
-                        }
-                        if ((relativeUrl == null || relativeUrl.equals("")) && placeholderTask != null) {
-                            if (cbDebug) { msgLine.append(" URL:phTask= "); }
-                            relativeUrl = placeholderTask.getUrl();
-                        }
-                        if ((relativeUrl == null || relativeUrl.equals("")) && item != null) {
-                            if (cbDebug) { msgLine.append(" URL:item= "); }
-                            relativeUrl = item.getUrl();
-                        }
-                        if (relativeUrl == null || relativeUrl.equals("")) {
-                            // a SubTask has no getUrl() of its own
-                            if (cbDebug) { msgLine.append(" URL:ownerTask= "); }
-                            Task t = (Task) task.getOwnerTask();
-                            relativeUrl = t.getUrl();
-                        }
-                        if (relativeUrl != null && !relativeUrl.equals("")) {
-                            Pattern p = Pattern.compile("/[0-9]+/*$"); // BuildID component in URL
-                            Matcher m = p.matcher(relativeUrl);
-                            if (m.find()) {
-                                relativeUrl = relativeUrl.replaceFirst("/*$", "") + "/console";
-                            }
-                            msgLine.append(" @ ");
-                            msgLine.append(rootUrl + relativeUrl);
-                        }
-                    }
+            if (reportUrls && !reportCountOnly && entry.getUrl() != null) {
+                msgLine.append(" @ ");
+                msgLine.append(rootUrl + entry.getUrl());
+            }
 
-                    if (filterPattern != null) {
-                        Matcher matcher = filterPattern.matcher(msgLine);
-                        if (!matcher.find()) {
-                            continue;
-                        }
-                        // We have a regex hit, report it
-                        countJobsInPattern++;
-                    }
+            if (filterPattern != null) {
+                Matcher matcher = filterPattern.matcher(msgLine);
+                if (!matcher.find()) {
+                    continue;
+                }
+                // We have a regex hit, report it
+                countJobsInPattern++;
+            }
 
-                    if (!reportCountOnly) {
-                        msg.append("\n- ");
-                        msg.append(msgLine);
-                        msg.append(" (Elapsed time: ");
-                        msg.append(Util.getTimeSpanString(executor.getElapsedTime()));
-                        msg.append(", Estimated remaining time: ");
-                        msg.append(executor.getEstimatedRemainingTime());
-                        msg.append(")");
+            if (!reportCountOnly) {
+                msg.append("\n- ");
+                msg.append(msgLine);
+                msg.append(" (Elapsed time: ");
+                msg.append(Util.getTimeSpanString(executor.getElapsedTime()));
+                msg.append(", Estimated remaining time: ");
+                msg.append(executor.getEstimatedRemainingTime());
+                msg.append(")");
+
+                if (cbDebug) {
+                    SubTask task = currentExecutable.getParent();
 
-                        if (cbDebug) {
-                            msg.append("\n=== currExec class: ");
-                            msg.append(Arrays.asList(currentExecutable.getClass().getName()));
+                    msg.append("\n=== currExec class: ");
+                    msg.append(Arrays.asList(currentExecutable.getClass().getName()));
 
-                            msg.append("\n=== currExec interfaces: ");
-                            msg.append(Arrays.asList(currentExecutable.getClass().getInterfaces()));
+                    msg.append("\n=== currExec interfaces: ");
+                    msg.append(Arrays.asList(currentExecutable.getClass().getInterfaces()));
 
-                            msg.append("\n=== currExec classes: ");
-                            msg.append(Arrays.asList(currentExecutable.getClass().getClasses()));
+                    msg.append("\n=== currExec classes: ");
+                    msg.append(Arrays.asList(currentExecutable.getClass().getClasses()));
 
-                            msg.append("\n=== currTask class: ");
-                            msg.append(Arrays.asList(task.getClass().getName()));
+                    msg.append("\n=== currTask class: ");
+                    msg.append(Arrays.asList(task.getClass().getName()));
 
-                            msg.append("\n=== currTask interfaces: ");
-                            msg.append(Arrays.asList(task.getClass().getInterfaces()));
+                    msg.append("\n=== currTask interfaces: ");
+                    msg.append(Arrays.asList(task.getClass().getInterfaces()));
 
-                            msg.append("\n=== currTask classes: ");
-                            msg.append(Arrays.asList(task.getClass().getClasses()));
+                    msg.append("\n=== currTask classes: ");
+                    msg.append(Arrays.asList(task.getClass().getClasses()));
 
-                            msg.append("\n");
-                        }
-                    }
+                    msg.append("\n");
                 }
             }
         }
@@ -9,6 +9,7 @@ import jenkins.model.Jenkins;
 
 /**
  * Default {@link JobProvider} which directly accesses {@link Jenkins#getInstance()}.
+ * Lookups by display name use the {@link JobIndex}.
  *
  * @author kutzi
  */
@@ -20,12 +21,11 @@ public class DefaultJobProvider implements JobProvider {
     }
 
 
-    @SuppressWarnings("rawtypes")
     @Override
     public AbstractProject<?, ?> getJobByDisplayName(String displayName) {
-        List<AbstractProject> allItems = Jenkins.getInstance().getAllItems(AbstractProject.class);
-        for (AbstractProject job : allItems) {
-            if (displayName.equals(job.getDisplayName())) {
+        for (String fullName : JobIndex.get().getByDisplayName(displayName)) {
+            AbstractProject<?, ?> job = getJobByName(fullName);
+            if (job != null && displayName.equals(job.getDisplayName())) {
                 return job;
             }
         }
@@ -34,8 +34,42 @@ public class DefaultJobProvider implements JobProvider {
 
     @Override
     public AbstractProject<?, ?> getJobByNameOrDisplayName(String name) {
-        AbstractProject<?,?> jobByName = getJobByName(name);
-        return jobByName != null ? jobByName : getJobByDisplayName(name);
+        AbstractProject<?,?> job = getJobByName(name);
+        if (job == null) {
+            job = getJobByDisplayName(name);
+        }
+        return job != null ? job : getJobByNameIgnoreCase(name);
+    }
+
+    /**
+     * Returns the job whose name or display name equals the given name ignoring case
+     * - if there's exactly one such job which the current user can see.
+     */
+    private AbstractProject<?, ?> getJobByNameIgnoreCase(String name) {
+        AbstractProject<?, ?> match = null;
+        for (String fullName : JobIndex.get().getByNameIgnoreCase(name)) {
+            AbstractProject<?, ?> job = getJobByName(fullName);
+            if (job != null) {
+                if (match != null) {
+                    // ambiguous
+                    return null;
+                }
+                match = job;
+            }
+        }
+        return match;
+    }
+
+    @Override
+    public List<AbstractProject<?, ?>> getJobsByPrefix(String prefix, int limit) {
+        // jobs the user may not see don't count against the limit
+        return JobIndex.get().getByPrefix(prefix, limit, this::getJobByName);
+    }
+
+    @Override
+    public List<String> getSimilarJobNames(String name, int limit) {
+        // only suggest jobs the user may see
+        return JobIndex.get().getSimilar(name, limit, fullName -> getJobByName(fullName) != null ? fullName : null);
     }
 
     @SuppressWarnings("unchecked")
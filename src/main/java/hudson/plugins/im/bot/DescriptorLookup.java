@@ -0,0 +1,116 @@
+package hudson.plugins.im.bot;
+
+import hudson.ExtensionList;
+import hudson.ExtensionListListener;
+import hudson.PluginWrapper;
+import hudson.model.Descriptor;
+import hudson.plugins.im.IMChat;
+import hudson.plugins.im.IMPublisherDescriptor;
+
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import jenkins.model.Jenkins;
+
+/**
+ * The {@link IMPublisherDescriptor}s of the plugins which implement {@link IMChat}s,
+ * by chat class.
+ * <p>
+ * Finding a descriptor scans all {@link Descriptor} extensions, so the result is
+ * cached. Like the {@link CommandRegistry}, the cache is discarded when the list of
+ * descriptors changes, e.g. when a plugin is installed dynamically.
+ */
+@SuppressWarnings("rawtypes")
+final class DescriptorLookup {
+
+    private static volatile DescriptorLookup current;
+    // the extension list we've registered an Invalidator with; guarded by the class
+    private static ExtensionList<Descriptor> observed;
+
+    private final ExtensionList<Descriptor> source;
+    // empty if there is no descriptor or more than one
+    private final ConcurrentMap<Class<?>, Optional<IMPublisherDescriptor>> descriptors = new ConcurrentHashMap<>();
+
+    private DescriptorLookup(ExtensionList<Descriptor> source) {
+        this.source = source;
+    }
+
+    /**
+     * Returns the {@link IMPublisherDescriptor} of the plugin which implements the chat - or null,
+     * if there is none or more than one.
+     */
+    static IMPublisherDescriptor find(IMChat chat) {
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (jenkins == null) {
+            return null;
+        }
+        DescriptorLookup lookup = get(jenkins.getExtensionList(Descriptor.class));
+        Class<?> type = chat.getClass();
+        Optional<IMPublisherDescriptor> found = lookup.descriptors.get(type);
+        if (found == null) {
+            found = Optional.ofNullable(scan(jenkins, lookup.source, type));
+            lookup.descriptors.putIfAbsent(type, found);
+        }
+        return found.orElse(null);
+    }
+
+    private static DescriptorLookup get(ExtensionList<Descriptor> all) {
+        DescriptorLookup lookup = current;
+        if (lookup != null && lookup.source == all) {
+            return lookup;
+        }
+        synchronized (DescriptorLookup.class) {
+            lookup = current;
+            if (lookup == null || lookup.source != all) {
+                if (observed != all) {
+                    // first use or a different Jenkins instance, e.g. in tests
+                    all.addListener(new Invalidator(all));
+                    observed = all;
+                }
+                lookup = new DescriptorLookup(all);
+                current = lookup;
+            }
+            return lookup;
+        }
+    }
+
+    private static IMPublisherDescriptor scan(Jenkins jenkins, ExtensionList<Descriptor> all, Class<?> chatType) {
+        PluginWrapper plugin = jenkins.getPluginManager().whichPlugin(chatType);
+        if (plugin == null) {
+            return null;
+        }
+        IMPublisherDescriptor found = null;
+        for (Descriptor<?> d : all) {
+            if (d instanceof IMPublisherDescriptor && plugin == jenkins.getPluginManager().whichPlugin(d.getClass())) {
+                if (found != null) {
+                    return null;
+                }
+                found = (IMPublisherDescriptor) d;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Discards the cached descriptors when descriptors are added or removed.
+     */
+    private static final class Invalidator extends ExtensionListListener {
+
+        private final ExtensionList<Descriptor> list;
+
+        Invalidator(ExtensionList<Descriptor> list) {
+            this.list = list;
+        }
+
+        @Override
+        public void onChange() {
+            synchronized (DescriptorLookup.class) {
+                DescriptorLookup lookup = current;
+                if (lookup != null && lookup.source == this.list) {
+                    current = null;
+                }
+            }
+        }
+    }
+}
@@ -3,13 +3,9 @@ package hudson.plugins.im.bot;
 import hudson.Extension;
 import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
-import hudson.model.HealthReport;
-import hudson.plugins.im.tools.MessageHelper;
 
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.List;
 
 /**
  * Displays the health for one or several jobs.
@@ -26,37 +22,21 @@ public class HealthCommand extends AbstractMultipleJobCommand {
     @Override
     protected CharSequence getMessageForJob(AbstractProject<?, ?> project) {
         StringBuilder msg = new StringBuilder(32);
-        AbstractBuild<?, ?> lastBuild = project.getLastBuild();
         msg.append(project.getFullDisplayName());
         if (project.isDisabled()) {
             msg.append("(disabled)");
         } else if (project.isBuilding()) {
+            AbstractBuild<?, ?> lastBuild = project.getLastBuild();
             msg.append("(BUILDING: ").append(lastBuild != null ? lastBuild.getDurationString() : "duration N/A").append(")");
         } else if (project.isInQueue()) {
             msg.append("(in queue)");
         }
         msg.append(": ");
 
-        while ((lastBuild != null) && lastBuild.isBuilding()) {
-            lastBuild = lastBuild.getPreviousBuild();
-        }
-        if (lastBuild != null) {
-            msg.append("Health [");
-            List<HealthReport> reports = project.getBuildHealthReports();
-            if (reports.isEmpty() ) {
-                reports = Collections.singletonList(project.getBuildHealth());
-            }
-
-            int i = 1;
-            for (HealthReport health : reports) {
-                msg.append(health.getDescription())
-                    .append("(").append(health.getScore()).append("%)");
-                if (i<reports.size()) {
-                    msg.append(", ");
-                }
-                i++;
-            }
-            msg.append(": ").append(MessageHelper.getBuildURL(lastBuild));
+        HealthSnapshot snapshot = HealthSnapshot.of(project);
+        if (snapshot.hasBuild()) {
+            msg.append("Health [").append(snapshot.getHealth())
+                .append(": ").append(snapshot.getBuildUrl());
         } else {
             msg.append("no finished build yet");
         }
@@ -0,0 +1,185 @@
+package hudson.plugins.im.bot;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.HealthReport;
+import hudson.model.Item;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.RunListener;
+import hudson.plugins.im.tools.MessageHelper;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The health of a job and its last finished build, as shown by {@link HealthCommand}
+ * and {@link StatusCommand}.
+ * <p>
+ * Computing the health runs all health reporting publishers and may load several builds
+ * from disk. So the snapshot is computed once when a build is finalized - or on first use
+ * after a restart - and then kept until the next build is finalized.
+ */
+final class HealthSnapshot {
+
+    private static final Logger LOGGER = Logger.getLogger(HealthSnapshot.class.getName());
+
+    private static final HealthSnapshot NO_BUILD = new HealthSnapshot(null, 0, null, null, 0);
+
+    // job full name -> snapshot
+    private static final Map<String, HealthSnapshot> SNAPSHOTS = new ConcurrentHashMap<>();
+
+    // e.g. "Build stability: No recent builds failed.(100%)", null if there is no finished build
+    private final String health;
+    private final int buildNumber;
+    private final String buildUrl;
+    private final Result result;
+    private final long timestamp;
+
+    private HealthSnapshot(String health, int buildNumber, String buildUrl, Result result, long timestamp) {
+        this.health = health;
+        this.buildNumber = buildNumber;
+        this.buildUrl = buildUrl;
+        this.result = result;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Returns the snapshot of the job - computing it, if there is none yet.
+     */
+    static HealthSnapshot of(AbstractProject<?, ?> project) {
+        String name = project.getFullName();
+        if (name == null) {
+            return compute(project);
+        }
+        HealthSnapshot snapshot = SNAPSHOTS.get(name);
+        if (snapshot == null) {
+            snapshot = compute(project);
+            SNAPSHOTS.putIfAbsent(name, snapshot);
+        }
+        return snapshot;
+    }
+
+    static HealthSnapshot compute(AbstractProject<?, ?> project) {
+        AbstractBuild<?, ?> lastBuild = project.getLastBuild();
+        while ((lastBuild != null) && lastBuild.isBuilding()) {
+            lastBuild = lastBuild.getPreviousBuild();
+        }
+        if (lastBuild == null) {
+            return NO_BUILD;
+        }
+
+        List<HealthReport> reports = project.getBuildHealthReports();
+        if (reports.isEmpty()) {
+            reports = Collections.singletonList(project.getBuildHealth());
+        }
+        StringBuilder health = new StringBuilder();
+        int i = 1;
+        for (HealthReport report : reports) {
+            health.append(report.getDescription())
+                .append("(").append(report.getScore()).append("%)");
+            if (i < reports.size()) {
+                health.append(", ");
+            }
+            i++;
+        }
+        return new HealthSnapshot(health.toString(), lastBuild.getNumber(), MessageHelper.getBuildURL(lastBuild),
+                lastBuild.getResult(), lastBuild.getTimeInMillis());
+    }
+
+    static void remove(String fullName) {
+        SNAPSHOTS.remove(fullName);
+    }
+
+    /**
+     * Returns if there is a finished build.
+     */
+    boolean hasBuild() {
+        return this.health != null;
+    }
+
+    /**
+     * Returns the health reports of the job, joined.
+     */
+    String getHealth() {
+        return this.health;
+    }
+
+    int getBuildNumber() {
+        return this.buildNumber;
+    }
+
+    /**
+     * Returns the full URL of the last finished build.
+     */
+    String getBuildUrl() {
+        return this.buildUrl;
+    }
+
+    Result getResult() {
+        return this.result;
+    }
+
+    /**
+     * Returns how long ago the last finished build was started, e.g. "5 min 3 sec".
+     */
+    String getTimestampString() {
+        return Util.getTimeSpanString(System.currentTimeMillis() - this.timestamp);
+    }
+
+    /**
+     * Recomputes the snapshot when a build is finalized. Not when it completes: then it is
+     * still in post production, i.e. building, and would be skipped by {@link #compute}.
+     */
+    @Extension
+    @SuppressWarnings("rawtypes")
+    public static final class RunEvents extends RunListener<Run> {
+
+        @Override
+        public void onFinalized(Run r) {
+            if (r.getParent() instanceof AbstractProject) {
+                AbstractProject<?, ?> project = (AbstractProject<?, ?>) r.getParent();
+                try {
+                    SNAPSHOTS.put(project.getFullName(), compute(project));
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Could not compute the health of " + project.getFullName(), e);
+                    remove(project.getFullName());
+                }
+            }
+        }
+
+        @Override
+        public void onDeleted(Run r) {
+            remove(r.getParent().getFullName());
+        }
+    }
+
+    /**
+     * Discards the snapshot when a job is changed, e.g. its health reporting publishers.
+     */
+    @Extension
+    public static final class ItemEvents extends ItemListener {
+
+        @Override
+        public void onUpdated(Item item) {
+            remove(item.getFullName());
+        }
+
+        @Override
+        public void onDeleted(Item item) {
+            remove(item.getFullName());
+        }
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            remove(oldFullName);
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package hudson.plugins.im.bot;
+
+import hudson.Extension;
+import hudson.model.AbstractProject;
+import hudson.model.Item;
+import hudson.model.listeners.ItemListener;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+import jenkins.model.Jenkins;
+
+/**
+ * Index of the full names of all jobs by display name and by case-folded name,
+ * so that looking up a job by those doesn't require walking all items.
+ * <p>
+ * The case-folded names are kept sorted to answer prefix queries, and in a
+ * {@link TrigramIndex} to find similar names for 'did you mean' suggestions.
+ * <p>
+ * The index is built on first use and then kept current by an {@link ItemListener}.
+ * It contains all jobs regardless of permissions. Callers must resolve the full names
+ * via {@link Jenkins#getItemByFullName(String, Class)}, which checks permissions.
+ */
+final class JobIndex {
+
+    private static final Logger LOGGER = Logger.getLogger(JobIndex.class.getName());
+
+    private static final JobIndex INSTANCE = new JobIndex(false);
+
+    private static final double MIN_SIMILARITY = 0.4;
+
+    // full name -> display name
+    private final Map<String, String> displayNames = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> byDisplayName = new ConcurrentHashMap<>();
+    private final NavigableMap<String, Set<String>> byFoldedName = new ConcurrentSkipListMap<>();
+    // guarded by this
+    private final TrigramIndex trigrams = new TrigramIndex();
+
+    private volatile boolean initialized;
+
+    JobIndex(boolean initialized) {
+        this.initialized = initialized;
+    }
+
+    static JobIndex get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the full names of the jobs with the given display name, sorted.
+     */
+    Set<String> getByDisplayName(String displayName) {
+        ensureInitialized();
+        Set<String> fullNames = this.byDisplayName.get(displayName);
+        return fullNames != null ? Collections.unmodifiableSet(fullNames) : Collections.emptySet();
+    }
+
+    /**
+     * Returns the full names of the jobs whose full name or display name equals
+     * the given name, ignoring case. Sorted.
+     */
+    Set<String> getByNameIgnoreCase(String name) {
+        ensureInitialized();
+        Set<String> fullNames = this.byFoldedName.get(fold(name));
+        return fullNames != null ? Collections.unmodifiableSet(fullNames) : Collections.emptySet();
+    }
+
+    /**
+     * Returns the jobs whose full name or display name starts with the given prefix,
+     * ignoring case. Sorted by the matching name.
+     *
+     * @param limit maximum number of results
+     * @param resolver resolves a full name to the result - or to null if the job must be skipped,
+     *        e.g. as the current user may not see it. Skipped jobs don't count against the limit.
+     */
+    <T> List<T> getByPrefix(String prefix, int limit, Function<String, T> resolver) {
+        ensureInitialized();
+        String folded = fold(prefix);
+        List<T> result = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (Map.Entry<String, Set<String>> entry : this.byFoldedName.tailMap(folded, true).entrySet()) {
+            if (result.size() >= limit || !entry.getKey().startsWith(folded)) {
+                break;
+            }
+            resolveAll(entry.getValue(), seen, resolver, result, limit);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the jobs whose full name or display name is similar to the given name,
+     * ignoring case. Best match first.
+     *
+     * @param limit maximum number of results
+     * @param resolver resolves a full name to the result - or to null if the job must be skipped,
+     *        e.g. as the current user may not see it. Skipped jobs don't count against the limit.
+     */
+    <T> List<T> getSimilar(String name, int limit, Function<String, T> resolver) {
+        ensureInitialized();
+        List<String> similar;
+        synchronized (this) {
+            similar = this.trigrams.findSimilar(fold(name), Integer.MAX_VALUE, MIN_SIMILARITY);
+        }
+        List<T> result = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (String folded : similar) {
+            if (result.size() >= limit) {
+                break;
+            }
+            Set<String> fullNames = this.byFoldedName.get(folded);
+            if (fullNames != null) {
+                resolveAll(fullNames, seen, resolver, result, limit);
+            }
+        }
+        return result;
+    }
+
+    private static <T> void resolveAll(Set<String> fullNames, Set<String> seen, Function<String, T> resolver,
+            List<T> result, int limit) {
+        for (String fullName : fullNames) {
+            if (result.size() >= limit) {
+                return;
+            }
+            if (seen.add(fullName)) {
+                T resolved = resolver.apply(fullName);
+                if (resolved != null) {
+                    result.add(resolved);
+                }
+            }
+        }
+    }
+
+    synchronized void put(String fullName, String displayName) {
+        remove(fullName);
+        this.displayNames.put(fullName, displayName);
+        add(this.byDisplayName, displayName, fullName);
+        addFolded(fold(fullName), fullName);
+        addFolded(fold(displayName), fullName);
+    }
+
+    synchronized void remove(String fullName) {
+        String displayName = this.displayNames.remove(fullName);
+        if (displayName != null) {
+            remove(this.byDisplayName, displayName, fullName);
+            removeFolded(fold(fullName), fullName);
+            removeFolded(fold(displayName), fullName);
+        }
+    }
+
+    // must hold lock
+    private void addFolded(String folded, String fullName) {
+        if (!this.byFoldedName.containsKey(folded)) {
+            this.trigrams.add(folded);
+        }
+        add(this.byFoldedName, folded, fullName);
+    }
+
+    // must hold lock
+    private void removeFolded(String folded, String fullName) {
+        remove(this.byFoldedName, folded, fullName);
+        if (!this.byFoldedName.containsKey(folded)) {
+            this.trigrams.remove(folded);
+        }
+    }
+
+    /**
+     * Discards the index. It is rebuilt on next use.
+     */
+    synchronized void invalidate() {
+        this.initialized = false;
+        clear();
+    }
+
+    private void ensureInitialized() {
+        if (this.initialized) {
+            return;
+        }
+        synchronized (this) {
+            if (this.initialized) {
+                return;
+            }
+            clear();
+            int count = 0;
+            try (ACLContext ctx = ACL.as2(ACL.SYSTEM2)) {
+                for (AbstractProject<?, ?> job : Jenkins.get().allItems(AbstractProject.class)) {
+                    put(job.getFullName(), job.getDisplayName());
+                    count++;
+                }
+            }
+            LOGGER.fine("Indexed " + count + " jobs");
+            this.initialized = true;
+        }
+    }
+
+    private void clear() {
+        this.displayNames.clear();
+        this.byDisplayName.clear();
+        this.byFoldedName.clear();
+        this.trigrams.clear();
+    }
+
+    private static String fold(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    private static void add(Map<String, Set<String>> index, String key, String fullName) {
+        index.computeIfAbsent(key, k -> new ConcurrentSkipListSet<>()).add(fullName);
+    }
+
+    private static void remove(Map<String, Set<String>> index, String key, String fullName) {
+        index.computeIfPresent(key, (k, fullNames) -> {
+            fullNames.remove(fullName);
+            return fullNames.isEmpty() ? null : fullNames;
+        });
+    }
+
+    /**
+     * Keeps the index current.
+     */
+    @Extension
+    public static final class Listener extends ItemListener {
+
+        @Override
+        public void onLoaded() {
+            get().invalidate();
+        }
+
+        @Override
+        public void onCreated(Item item) {
+            if (item instanceof AbstractProject) {
+                get().put(item.getFullName(), item.getDisplayName());
+            }
+        }
+
+        @Override
+        public void onCopied(Item src, Item item) {
+            onCreated(item);
+        }
+
+        @Override
+        public void onUpdated(Item item) {
+            // the display name may have changed
+            onCreated(item);
+        }
+
+        @Override
+        public void onDeleted(Item item) {
+            if (item instanceof AbstractProject) {
+                get().remove(item.getFullName());
+            }
+        }
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            // called for every job within a renamed or moved folder, too
+            if (item instanceof AbstractProject) {
+                JobIndex index = get();
+                index.remove(oldFullName);
+                index.put(newFullName, item.getDisplayName());
+            }
+        }
+    }
+}
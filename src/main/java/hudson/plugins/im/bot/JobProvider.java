@@ -3,6 +3,7 @@ package hudson.plugins.im.bot;
 import hudson.model.AbstractProject;
 import hudson.model.View;
 
+import java.util.Collections;
 import java.util.List;
 
 import edu.umd.cs.findbugs.annotations.CheckForNull;
@@ -19,18 +20,40 @@ public interface JobProvider {
     /**
      * Returns the Jenkins job with the given display name or null
      * if no job with that display name exists.
-     * <p>
-     * Attention: this might be relativley expensive, if you've a lot of Jenkins jobs!
      */
     @CheckForNull
     AbstractProject<?, ?> getJobByDisplayName(String displayName);
 
     /**
      * Convenience method to 1st try to get by name and then by display name.
+     * Implementations may finally fall back to a case-insensitive match.
      */
     @CheckForNull
     AbstractProject<?, ?> getJobByNameOrDisplayName(String displayName);
 
+    /**
+     * Returns the jobs whose name or display name starts with the given prefix, ignoring case.
+     *
+     * @param limit maximum number of jobs to return
+     * @return the jobs. Never null.
+     */
+    @NonNull
+    default List<AbstractProject<?, ?>> getJobsByPrefix(String prefix, int limit) {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Returns the names of jobs whose name or display name is similar to the given name
+     * - e.g. to suggest them if no job by that name exists. Best match first.
+     *
+     * @param limit maximum number of names to return
+     * @return the job names. Never null.
+     */
+    @NonNull
+    default List<String> getSimilarJobNames(String name, int limit) {
+        return Collections.emptyList();
+    }
+
     /**
      * Returns all Jenkins jobs.
      *
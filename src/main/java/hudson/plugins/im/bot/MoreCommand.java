@@ -0,0 +1,37 @@
+package hudson.plugins.im.bot;
+
+import hudson.Extension;
+import hudson.plugins.im.IMChat;
+import hudson.plugins.im.IMException;
+import hudson.plugins.im.IMMessage;
+import hudson.plugins.im.Sender;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Sends the next page of a long reply - e.g. the health of all jobs.
+ *
+ * @see PagedReply
+ */
+@Extension
+public class MoreCommand extends BotCommand {
+
+    @Override
+    public Collection<String> getCommandNames() {
+        return Collections.singleton("more");
+    }
+
+    @Override
+    public void executeCommand(Bot bot, IMChat chat, IMMessage message,
+                               Sender sender, String[] args) throws IMException {
+        if (!bot.sendNextPage(chat)) {
+            chat.sendMessage(sender.getNickname() + ": nothing more to show");
+        }
+    }
+
+    @Override
+    public String getHelp() {
+        return " - show the next page of the last long reply";
+    }
+}
@@ -0,0 +1,114 @@
+package hudson.plugins.im.bot;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import jenkins.util.SystemProperties;
+
+/**
+ * A reply which lists many items and is therefore sent in pages.
+ * <p>
+ * The items are rendered page by page, when the page is requested, so only one page
+ * is held in memory. The first page is sent right away, the following ones on request
+ * via the {@link MoreCommand}.
+ * <p>
+ * The maximum length of a page can be configured with the system property
+ * <code>hudson.plugins.im.bot.PagedReply.pageSize</code> (default: 4000 characters).
+ * A page always contains at least one item, even if that's longer.
+ *
+ * @param <T> the type of the items
+ */
+final class PagedReply<T> {
+
+    static final int PAGE_SIZE = Math.max(1, SystemProperties.getInteger(PagedReply.class.getName() + ".pageSize", 4000));
+
+    /**
+     * The remaining pages of a reply are discarded after this time.
+     */
+    private static final long TTL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private final Iterator<? extends T> items;
+    private final Function<? super T, ? extends CharSequence> renderer;
+    private final Function<? super T, ? extends CharSequence> pending;
+    private final ParallelRenderer parallelRenderer;
+    private final long deadlineNanos;
+    private final long created = System.currentTimeMillis();
+    private String header;
+    private int remaining;
+
+    /**
+     * @param header text to put in front of the first page - e.g. "health of all projects:\n". May be empty.
+     * @param items the items to list
+     * @param renderer renders a single item
+     */
+    PagedReply(String header, Collection<? extends T> items, Function<? super T, ? extends CharSequence> renderer) {
+        this(header, items, renderer, renderer, new ParallelRenderer(null), TimeUnit.DAYS.toNanos(1));
+    }
+
+    /**
+     * @param header text to put in front of the first page - e.g. "health of all projects:\n". May be empty.
+     * @param items the items to list
+     * @param renderer renders a single item
+     * @param pending renders an item which couldn't be rendered in time
+     * @param parallelRenderer renders several items at once
+     * @param deadlineNanos maximum time to render a page. Items not rendered in time are shown as pending;
+     *        the items after them are left for the next page.
+     */
+    PagedReply(String header, Collection<? extends T> items, Function<? super T, ? extends CharSequence> renderer,
+            Function<? super T, ? extends CharSequence> pending, ParallelRenderer parallelRenderer, long deadlineNanos) {
+        this.header = header;
+        this.items = items.iterator();
+        this.remaining = items.size();
+        this.renderer = renderer;
+        this.pending = pending;
+        this.parallelRenderer = parallelRenderer;
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    synchronized boolean hasMore() {
+        return this.remaining > 0;
+    }
+
+    /**
+     * Returns the number of items not yet rendered.
+     */
+    synchronized int getRemaining() {
+        return this.remaining;
+    }
+
+    boolean isExpired() {
+        return System.currentTimeMillis() - this.created > TTL_MILLIS;
+    }
+
+    /**
+     * Renders the next page. Items are separated by newlines.
+     *
+     * @param maxLength the page ends with the first batch of items which reaches this length
+     */
+    synchronized String nextPage(int maxLength) {
+        StringBuilder page = new StringBuilder(this.header);
+        this.header = "";
+        long deadline = System.nanoTime() + this.deadlineNanos;
+        int batchSize = this.parallelRenderer.getBatchSize();
+        boolean first = true;
+        while (this.items.hasNext() && (first || (page.length() < maxLength && System.nanoTime() - deadline < 0))) {
+            List<T> batch = new ArrayList<>(batchSize);
+            while (this.items.hasNext() && batch.size() < batchSize) {
+                batch.add(this.items.next());
+            }
+            for (CharSequence message : this.parallelRenderer.render(batch, this.renderer, this.pending, deadline)) {
+                if (!first) {
+                    page.append("\n");
+                }
+                first = false;
+                page.append(message);
+            }
+            this.remaining -= batch.size();
+        }
+        return page.toString();
+    }
+}
@@ -0,0 +1,154 @@
+package hudson.plugins.im.bot;
+
+import hudson.init.Terminator;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+import org.springframework.security.core.Authentication;
+
+/**
+ * Renders the messages for several items - e.g. the health of jobs - in parallel,
+ * as rendering may load builds and test reports from disk.
+ * <p>
+ * The messages are rendered as the current user and returned in the order of the items.
+ * Items which aren't rendered until the deadline are reported as pending.
+ * They are still rendered in the background, which fills the {@link ReplyCache}.
+ * <p>
+ * Can be configured with the following system properties (prefixed by the name of this class):
+ * <ul>
+ * <li><code>.threads</code> - maximum number of messages rendered at the same time; 1 renders on the calling thread (default: 4)</li>
+ * <li><code>.deadlineSeconds</code> - maximum time to render the messages for one reply (default: 10)</li>
+ * </ul>
+ */
+final class ParallelRenderer {
+
+    private static final Logger LOGGER = Logger.getLogger(ParallelRenderer.class.getName());
+
+    private static final String PROPERTY_PREFIX = ParallelRenderer.class.getName();
+
+    static final int THREADS = Math.max(1, SystemProperties.getInteger(PROPERTY_PREFIX + ".threads", 4));
+    static final long DEADLINE_NANOS = TimeUnit.SECONDS.toNanos(
+            SystemProperties.getLong(PROPERTY_PREFIX + ".deadlineSeconds", 10L));
+
+    private static ExecutorService EXECUTOR;
+
+    private final ExecutorService executor;
+
+    /**
+     * @param executor runs the rendering. If null, the items are rendered on the calling thread.
+     */
+    ParallelRenderer(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Returns how many items should be passed to {@link #render} at once.
+     */
+    int getBatchSize() {
+        return this.executor != null ? 2 * THREADS : 1;
+    }
+
+    static ParallelRenderer get() {
+        return new ParallelRenderer(THREADS > 1 ? executor() : null);
+    }
+
+    private static synchronized ExecutorService executor() {
+        if (EXECUTOR == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(THREADS, THREADS, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), new NamingThreadFactory(new DaemonThreadFactory(), "IM-Bot-Render"));
+            executor.allowCoreThreadTimeOut(true);
+            EXECUTOR = executor;
+        }
+        return EXECUTOR;
+    }
+
+    @Terminator
+    public static void shutdown() {
+        ExecutorService executor;
+        synchronized (ParallelRenderer.class) {
+            executor = EXECUTOR;
+            EXECUTOR = null;
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Renders the messages for the items.
+     *
+     * @param renderer renders the message of an item
+     * @param pending renders the message of an item which wasn't rendered in time
+     * @param deadline the value of {@link System#nanoTime()} until which the messages must be rendered
+     * @return the messages in the order of the items
+     */
+    <T> List<CharSequence> render(List<? extends T> items, Function<? super T, ? extends CharSequence> renderer,
+            Function<? super T, ? extends CharSequence> pending, long deadline) {
+        List<CharSequence> messages = new ArrayList<>(items.size());
+        if (this.executor == null || items.size() == 1) {
+            for (T item : items) {
+                messages.add(System.nanoTime() - deadline < 0 ? renderer.apply(item) : pending.apply(item));
+            }
+            return messages;
+        }
+
+        Authentication auth = Jenkins.getAuthentication2();
+        List<Future<? extends CharSequence>> futures = new ArrayList<>(items.size());
+        for (T item : items) {
+            try {
+                futures.add(this.executor.submit(() -> {
+                    try (ACLContext ctx = ACL.as2(auth)) {
+                        return renderer.apply(item);
+                    }
+                }));
+            } catch (RejectedExecutionException e) {
+                // shutting down
+                futures.add(null);
+            }
+        }
+        for (int i = 0; i < items.size(); i++) {
+            T item = items.get(i);
+            Future<? extends CharSequence> future = futures.get(i);
+            if (future == null) {
+                messages.add(pending.apply(item));
+                continue;
+            }
+            try {
+                messages.add(future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            } catch (TimeoutException e) {
+                messages.add(pending.apply(item));
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IllegalStateException(cause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                LOGGER.log(Level.FINE, "Interrupted while rendering", e);
+                messages.add(pending.apply(item));
+            }
+        }
+        return messages;
+    }
+}
@@ -11,9 +11,15 @@ import hudson.plugins.im.IMChat;
 import hudson.plugins.im.IMException;
 import hudson.plugins.im.IMMessage;
 import hudson.plugins.im.Sender;
+import hudson.plugins.im.tools.TopK;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -21,13 +27,24 @@ import java.util.regex.Pattern;
  * Queue command for the instant messaging plugin bot.
  *
  * Generates a list of jobs waiting in the queue.
+ * Items are filtered by name before anything else is looked at, and the - costly -
+ * reason why an item is waiting is only looked up for the items which are shown
+ * or matched against the regex filter.
  *
  * @author Pascal Bleser
  */
 @Extension
 public class QueueCommand extends BotCommand {
-    private static final String SYNTAX = " [#] [~ regex pattern]";
-    private static final String HELP = SYNTAX + " - show the state of the build queue, with optional '~ regex' filter on reported lines; '#' returns just the match count";
+    private static final String SYNTAX = " [#] [name=text] [limit=n] [sort=age|name] [~ regex pattern]";
+    private static final String HELP = SYNTAX + " - show the state of the build queue, with optional '~ regex' filter on reported lines; '#' returns just the match count; 'name=' only lists jobs whose name contains the text; 'limit=' lists at most n items; 'sort=' lists the longest waiting items or the items by name first";
+
+    private static final String NAME_OPTION = "name=";
+    private static final String LIMIT_OPTION = "limit=";
+    private static final String SORT_OPTION = "sort=";
+
+    private static final Map<String, Comparator<QueuedItem>> SORT_ORDERS = Map.of(
+            "age", Comparator.comparingLong((QueuedItem q) -> q.item.getInQueueSince()).thenComparing(q -> q.name),
+            "name", Comparator.comparing((QueuedItem q) -> q.name).thenComparingLong(q -> q.item.getInQueueSince()));
 
     @Override
     public Collection<String> getCommandNames() {
@@ -38,10 +55,16 @@ public class QueueCommand extends BotCommand {
     public void executeCommand(Bot bot, IMChat chat, IMMessage message,
                                Sender sender, String[] args) throws IMException {
         Queue queue = Hudson.getInstance().getQueue();
-        Item[] items = queue.getItems();
+        chat.sendMessage(getReply(queue.getItems(), sender.getNickname(), args));
+    }
+
+    String getReply(Item[] items, String nickname, String[] args) {
         StringBuffer msg = new StringBuffer();
         String filterRegex = null;
         Pattern filterPattern = null;
+        String nameFilter = null;
+        int limit = Integer.MAX_VALUE;
+        Comparator<QueuedItem> order = null;
         boolean reportCountOnly = false;
 
         // We are interested in args to the command, if any,
@@ -82,45 +105,73 @@ public class QueueCommand extends BotCommand {
                     }
                     break argsloop;
                 default:
+                    if (args[a].startsWith(NAME_OPTION) && args[a].length() > NAME_OPTION.length()) {
+                        nameFilter = args[a].substring(NAME_OPTION.length()).toLowerCase(Locale.ENGLISH);
+                        break;
+                    } else if (args[a].startsWith(LIMIT_OPTION)) {
+                        try {
+                            limit = Integer.parseInt(args[a].substring(LIMIT_OPTION.length()));
+                        } catch (NumberFormatException e) {
+                            limit = -1;
+                        }
+                        if (limit >= 0) {
+                            break;
+                        }
+                        limit = Integer.MAX_VALUE;
+                    } else if (args[a].startsWith(SORT_OPTION) && SORT_ORDERS.containsKey(args[a].substring(SORT_OPTION.length()))) {
+                        order = SORT_ORDERS.get(args[a].substring(SORT_OPTION.length()));
+                        break;
+                    }
                     msg.append("\n- WARNING: got unsupported argument '" + args[a] + "' for queue, ignored; no filter was applied\n");
-                    msg.append(giveSyntax(sender.getNickname(), args[0]));
+                    msg.append(giveSyntax(nickname, args[0]));
                     break;
             }
         }
 
         if (items.length > 0) {
-            int countJobsInQueue = 0;
+            int countJobsInQueue = items.length;
             int countJobsInPattern = 0;
+            boolean filtered = filterPattern != null || nameFilter != null;
+            // the items to show; kept in queue order unless sorted
+            List<QueuedItem> shown = new ArrayList<>();
+            TopK<QueuedItem> sorted = order != null && !reportCountOnly ? new TopK<>(limit, order) : null;
             for (Item item : items) {
-                StringBuffer msgLine = new StringBuffer();
-                msgLine.append(item.task.getFullDisplayName())
-                    .append(": ").append(item.getWhy());
-                countJobsInQueue++;
-
+                // the cheap name filter first, the reason why the item is waiting only if needed
+                String name = item.task.getFullDisplayName();
+                if (nameFilter != null && !name.toLowerCase(Locale.ENGLISH).contains(nameFilter)) {
+                    continue;
+                }
+                QueuedItem queued = null;
                 if (filterPattern != null) {
-                    Matcher matcher = filterPattern.matcher(msgLine);
+                    queued = new QueuedItem(item, name);
+                    Matcher matcher = filterPattern.matcher(queued.getLine());
                     if (!matcher.find()) {
                         continue;
                     }
-                    // We have a regex hit, report it
-                    countJobsInPattern++;
                 }
+                // We have a hit, report it
+                countJobsInPattern++;
 
-                if (!reportCountOnly) {
-                    msg.append("\n- ").append(msgLine);
+                if (sorted != null) {
+                    sorted.offer(queued != null ? queued : new QueuedItem(item, name));
+                } else if (!reportCountOnly && shown.size() < limit) {
+                    shown.add(queued != null ? queued : new QueuedItem(item, name));
                 }
             }
-            if (items.length != countJobsInQueue) {
-                msg.append("\n- WARNING: Internal queue array length was ")
-                    .append(items.length)
-                    .append(" while we counted ")
-                    .append(countJobsInQueue)
-                    .append(" items during listing! (maybe a bug in instant-messaging-plugin)");
+            if (sorted != null) {
+                shown = sorted.toList();
             }
-            if (countJobsInPattern == 0 && filterPattern != null) {
+
+            for (QueuedItem queued : shown) {
+                msg.append("\n- ").append(queued.getLine());
+            }
+            if (!reportCountOnly && countJobsInPattern > shown.size()) {
+                msg.append("\n- (").append(countJobsInPattern - shown.size()).append(" more)");
+            }
+            if (countJobsInPattern == 0 && filtered) {
                 msg.append("\n- None of the queued jobs matched the filter.");
             }
-            if (filterPattern != null) {
+            if (filtered) {
                 msg.insert(0, "Build queue (" + countJobsInQueue +
                     " items total, of which " + countJobsInPattern +
                     " items matched the filter):");
@@ -135,7 +186,28 @@ public class QueueCommand extends BotCommand {
             msg.append("Build queue is empty");
         }
 
-        chat.sendMessage(msg.toString());
+        return msg.toString();
+    }
+
+    /**
+     * A queue item which may be shown. The reason why it is waiting is only looked up when needed.
+     */
+    private static final class QueuedItem {
+        private final Item item;
+        private final String name;
+        private String line;
+
+        QueuedItem(Item item, String name) {
+            this.item = item;
+            this.name = name;
+        }
+
+        String getLine() {
+            if (this.line == null) {
+                this.line = this.name + ": " + this.item.getWhy();
+            }
+            return this.line;
+        }
     }
 
     private String giveSyntax(String sender, String cmd) {
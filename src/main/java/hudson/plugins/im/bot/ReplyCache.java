@@ -0,0 +1,223 @@
+package hudson.plugins.im.bot;
+
+import hudson.Extension;
+import hudson.model.AbstractProject;
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.model.Queue;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.RunListener;
+import hudson.model.queue.QueueListener;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import jenkins.util.SystemProperties;
+
+/**
+ * Caches the messages rendered for a job by the read-only {@link AbstractMultipleJobCommand}s,
+ * so the same <code>status</code> or <code>health</code> queries coming in from many users
+ * don't compute them again and again.
+ * <p>
+ * Only the message of a single job is cached, not which jobs a query selects:
+ * that still depends on the permissions of the user. The messages are removed
+ * when a build of the job starts, finishes or is deleted, when the job is updated
+ * or when it enters or leaves the queue. As the messages contain relative times
+ * (e.g. "5 min 3 sec ago"), they also expire after a short time.
+ * <p>
+ * Can be configured with the following system properties (prefixed by the name of this class):
+ * <ul>
+ * <li><code>.maxJobs</code> - maximum number of jobs for which messages are cached; 0 disables the cache (default: 1000)</li>
+ * <li><code>.ttlSeconds</code> - maximum age of a cached message (default: 30)</li>
+ * </ul>
+ */
+final class ReplyCache {
+
+    private static final String PROPERTY_PREFIX = ReplyCache.class.getName();
+
+    private static final ReplyCache INSTANCE = new ReplyCache(
+            SystemProperties.getInteger(PROPERTY_PREFIX + ".maxJobs", 1000),
+            TimeUnit.SECONDS.toNanos(SystemProperties.getLong(PROPERTY_PREFIX + ".ttlSeconds", 30L)));
+
+    private final int maxJobs;
+    private final long ttlNanos;
+
+    // job full name -> command class -> message; least recently used first; guarded by itself
+    private final LinkedHashMap<String, Map<String, Entry>> entries;
+
+    // job full name -> number of invalidations, so a message rendered concurrently with an
+    // invalidation of its job isn't stored; guarded by entries
+    private final Map<String, Long> versions = new HashMap<>();
+    // incremented when all messages are removed or a job is removed - which is rare -
+    // as that forgets versions; guarded by entries
+    private long generation;
+
+    ReplyCache(int maxJobs, long ttlNanos) {
+        this.maxJobs = maxJobs;
+        this.ttlNanos = ttlNanos;
+        this.entries = new LinkedHashMap<String, Map<String, Entry>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Map<String, Entry>> eldest) {
+                return size() > ReplyCache.this.maxJobs;
+            }
+        };
+    }
+
+    static ReplyCache get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the message of the command for the job - from the cache, if possible.
+     */
+    CharSequence getMessage(AbstractMultipleJobCommand command, AbstractProject<?, ?> job) {
+        String jobName = job.getFullName();
+        if (this.maxJobs <= 0 || jobName == null) {
+            return command.getMessageForJob(job);
+        }
+        String commandName = command.getClass().getName();
+        long now = System.nanoTime();
+        long version;
+        long generation;
+        synchronized (this.entries) {
+            Map<String, Entry> messages = this.entries.get(jobName);
+            Entry entry = messages != null ? messages.get(commandName) : null;
+            if (entry != null && now - entry.created < this.ttlNanos) {
+                return entry.message;
+            }
+            version = this.versions.getOrDefault(jobName, 0L);
+            generation = this.generation;
+        }
+
+        String message = command.getMessageForJob(job).toString();
+        synchronized (this.entries) {
+            if (this.versions.getOrDefault(jobName, 0L) == version && this.generation == generation) {
+                this.entries.computeIfAbsent(jobName, k -> new HashMap<>(4)).put(commandName, new Entry(message, now));
+            }
+        }
+        return message;
+    }
+
+    /**
+     * Removes the messages of the item and of the items containing it - e.g. the matrix project of a configuration.
+     */
+    void invalidate(Item item) {
+        synchronized (this.entries) {
+            for (Item i = item; i != null; ) {
+                invalidate(i.getFullName());
+                ItemGroup<?> parent = i.getParent();
+                i = parent instanceof Item ? (Item) parent : null;
+            }
+        }
+    }
+
+    void invalidate(String fullName) {
+        synchronized (this.entries) {
+            this.entries.remove(fullName);
+            this.versions.merge(fullName, 1L, Long::sum);
+        }
+    }
+
+    /**
+     * Removes the messages of a job which no longer exists under that name.
+     */
+    void remove(String fullName) {
+        synchronized (this.entries) {
+            this.entries.remove(fullName);
+            this.versions.remove(fullName);
+            this.generation++;
+        }
+    }
+
+    void clear() {
+        synchronized (this.entries) {
+            this.entries.clear();
+            this.versions.clear();
+            this.generation++;
+        }
+    }
+
+    private static final class Entry {
+        private final String message;
+        private final long created;
+
+        Entry(String message, long created) {
+            this.message = message;
+            this.created = created;
+        }
+    }
+
+    @Extension
+    @SuppressWarnings("rawtypes")
+    public static final class RunEvents extends RunListener<Run> {
+
+        @Override
+        public void onStarted(Run r, TaskListener listener) {
+            get().invalidate(r.getParent());
+        }
+
+        @Override
+        public void onCompleted(Run r, TaskListener listener) {
+            get().invalidate(r.getParent());
+        }
+
+        @Override
+        public void onFinalized(Run r) {
+            get().invalidate(r.getParent());
+        }
+
+        @Override
+        public void onDeleted(Run r) {
+            get().invalidate(r.getParent());
+        }
+    }
+
+    @Extension
+    public static final class ItemEvents extends ItemListener {
+
+        @Override
+        public void onUpdated(Item item) {
+            get().invalidate(item);
+        }
+
+        @Override
+        public void onDeleted(Item item) {
+            get().invalidate(item);
+            get().remove(item.getFullName());
+        }
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            get().remove(oldFullName);
+        }
+
+        @Override
+        public void onLoaded() {
+            get().clear();
+        }
+    }
+
+    @Extension
+    public static final class QueueEvents extends QueueListener {
+
+        @Override
+        public void onEnterWaiting(Queue.WaitingItem wi) {
+            if (wi.task instanceof Item) {
+                get().invalidate((Item) wi.task);
+            }
+        }
+
+        @Override
+        public void onLeft(Queue.LeftItem li) {
+            if (li.task instanceof Item) {
+                get().invalidate((Item) li.task);
+            }
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package hudson.plugins.im.bot;
+
+import hudson.Extension;
+import hudson.model.Build;
+import hudson.model.Computer;
+import hudson.model.Executor;
+import hudson.model.ExecutorListener;
+import hudson.model.Item;
+import hudson.model.OneOffExecutor;
+import hudson.model.Queue;
+import hudson.model.Queue.Executable;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import hudson.model.queue.SubTask;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+
+import org.jenkinsci.plugins.workflow.support.steps.ExecutorStepExecution.PlaceholderTask;
+
+/**
+ * Keeps track of what the executors are currently running, for {@link CurrentlyBuildingCommand},
+ * so the command doesn't have to look at all computers and executors.
+ * <p>
+ * Busy executors are registered when a task starts or a build starts on them and removed
+ * when it completes. The display name and console URL of what they run are computed once.
+ * As events may be missed - e.g. for executors which were busy before the plugin was loaded -
+ * the registry is reconciled with a full scan from time to time. The interval can be configured
+ * with the system property <code>hudson.plugins.im.bot.RunningBuildsRegistry.reconcileSeconds</code>
+ * (default: 60).
+ */
+final class RunningBuildsRegistry {
+
+    private static final long RECONCILE_MILLIS = TimeUnit.SECONDS.toMillis(
+            SystemProperties.getLong(RunningBuildsRegistry.class.getName() + ".reconcileSeconds", 60L));
+
+    // BuildID component in URL
+    private static final Pattern BUILD_NUMBER = Pattern.compile("/[0-9]+/*$");
+
+    private static final Comparator<Entry> BY_EXECUTOR = Comparator
+            .comparing((Entry e) -> e.computerName)
+            .thenComparingInt(e -> e.executor.getNumber());
+
+    private static final RunningBuildsRegistry INSTANCE = new RunningBuildsRegistry();
+
+    // busy executor -> what it runs; null values aren't allowed, so not yet described executors map to themselves
+    private final Map<Executor, Object> running = new ConcurrentHashMap<>();
+
+    private volatile long lastReconciled;
+
+    RunningBuildsRegistry() {
+    }
+
+    static RunningBuildsRegistry get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns what the executors are running, ordered by computer and executor number.
+     */
+    List<Entry> getRunning() {
+        if (System.currentTimeMillis() - this.lastReconciled >= RECONCILE_MILLIS) {
+            reconcile();
+        }
+        List<Entry> entries = new ArrayList<>(this.running.size());
+        for (Map.Entry<Executor, Object> e : this.running.entrySet()) {
+            Executor executor = e.getKey();
+            Executable executable = executor.getCurrentExecutable();
+            if (executable == null) {
+                // not yet started or already finished
+                continue;
+            }
+            Entry entry = e.getValue() instanceof Entry ? (Entry) e.getValue() : null;
+            if (entry == null || entry.executable != executable) {
+                entry = describe(executor, executable, false);
+                this.running.replace(executor, e.getValue(), entry);
+            }
+            entries.add(entry);
+        }
+        entries.sort(BY_EXECUTOR);
+        return entries;
+    }
+
+    void started(Executor executor) {
+        if (!(executor instanceof OneOffExecutor)) {
+            this.running.putIfAbsent(executor, executor);
+        }
+    }
+
+    void finished(Executor executor) {
+        this.running.remove(executor);
+    }
+
+    /**
+     * Registers all busy executors and removes all others.
+     */
+    synchronized void reconcile() {
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (jenkins == null) {
+            return;
+        }
+        Set<Executor> busy = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Computer computer : jenkins.getComputers()) {
+            for (Executor executor : computer.getExecutors()) {
+                if (executor.getCurrentExecutable() != null) {
+                    busy.add(executor);
+                    started(executor);
+                }
+            }
+        }
+        this.running.keySet().removeIf(executor -> !busy.contains(executor));
+        this.lastReconciled = System.currentTimeMillis();
+    }
+
+    /**
+     * Describes what an executor runs.
+     *
+     * @param debug if true, the description tells where each part comes from
+     */
+    @SuppressWarnings("rawtypes")
+    static Entry describe(Executor executor, Executable executable, boolean debug) {
+        Build build = null;
+        if (executable instanceof Build) {
+            build = (Build) executable;
+        }
+
+        SubTask task = executable.getParent();
+        Item item = null;
+        if (task instanceof Item) {
+            item = (Item) task;
+        }
+
+        PlaceholderTask placeholderTask = null;
+        if (task instanceof PlaceholderTask) {
+            // e.g. a part of pipeline
+            placeholderTask = (PlaceholderTask) task;
+        }
+
+        Computer computer = executor.getOwner();
+        StringBuilder name = new StringBuilder();
+        name.append(computer.getDisplayName());
+        name.append("#");
+        name.append(executor.getNumber());
+        name.append(": ");
+        if (item == null) {
+            // Display name of a running subtask (one or more per build,
+            // depending on parallelism) includes its build number
+            // e.g. in pipeline originated items.
+            if (debug) { name.append("task.getDisplayName()= "); }
+            name.append(task.getDisplayName());
+        } else {
+            if (build != null) {
+                // A legacy freestyle job build is running.
+                // Its higher-level Executable has the number.
+                if (debug) { name.append("currentExecutableBuild.getFullDisplayName()= "); }
+                name.append(build.getFullDisplayName());
+            } else
+            if (task instanceof Run) {
+                if (debug) { name.append(" RunTask_data_of_Item= "); }
+                Run r = (Run) task;
+                name.append(item.getFullDisplayName());
+                name.append("#");
+                name.append(r.getNumber());
+            }
+        }
+
+        String relativeUrl = null;
+        if (build != null) {
+            if (debug) { name.append(" URL:currExec= "); }
+            relativeUrl = build.getUrl();
+        }
+        if ((relativeUrl == null || relativeUrl.equals("")) && placeholderTask != null) {
+            if (debug) { name.append(" URL:phTask= "); }
+            relativeUrl = placeholderTask.getUrl();
+        }
+        if ((relativeUrl == null || relativeUrl.equals("")) && item != null) {
+            if (debug) { name.append(" URL:item= "); }
+            relativeUrl = item.getUrl();
+        }
+        if (relativeUrl == null || relativeUrl.equals("")) {
+            // a SubTask has no getUrl() of its own
+            if (debug) { name.append(" URL:ownerTask= "); }
+            Queue.Task t = (Queue.Task) task.getOwnerTask();
+            relativeUrl = t.getUrl();
+        }
+        if (relativeUrl != null && !relativeUrl.equals("")) {
+            if (BUILD_NUMBER.matcher(relativeUrl).find()) {
+                relativeUrl = relativeUrl.replaceFirst("/*$", "") + "/console";
+            }
+        } else {
+            relativeUrl = null;
+        }
+        return new Entry(executor, executable, computer.getName(), name.toString(), relativeUrl);
+    }
+
+    /**
+     * What an executor runs.
+     */
+    static final class Entry {
+        final Executor executor;
+        final Executable executable;
+        private final String computerName;
+        private final String name;
+        private final String url;
+
+        Entry(Executor executor, Executable executable, String computerName, String name, String url) {
+            this.executor = executor;
+            this.executable = executable;
+            this.computerName = computerName;
+            this.name = name;
+            this.url = url;
+        }
+
+        /**
+         * Returns the executor and what it runs, e.g. "agent#1: job #3".
+         */
+        String getName() {
+            return this.name;
+        }
+
+        /**
+         * Returns the URL of the console of the build - or of the task, if not a build -
+         * relative to the Jenkins root URL. May be null.
+         */
+        String getUrl() {
+            return this.url;
+        }
+    }
+
+    @Extension
+    public static final class ExecutorEvents implements ExecutorListener {
+
+        @Override
+        public void taskStarted(Executor executor, Queue.Task task) {
+            get().started(executor);
+        }
+
+        @Override
+        public void taskCompleted(Executor executor, Queue.Task task, long durationMS) {
+            get().finished(executor);
+        }
+
+        @Override
+        public void taskCompletedWithProblems(Executor executor, Queue.Task task, long durationMS, Throwable problems) {
+            get().finished(executor);
+        }
+    }
+
+    @Extension
+    @SuppressWarnings("rawtypes")
+    public static final class RunEvents extends RunListener<Run> {
+
+        @Override
+        public void onStarted(Run r, TaskListener listener) {
+            Executor executor = r.getExecutor();
+            if (executor != null) {
+                get().started(executor);
+            }
+        }
+    }
+}
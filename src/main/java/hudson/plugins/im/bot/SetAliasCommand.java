@@ -97,6 +97,14 @@ public class SetAliasCommand extends AbstractTextSendingCommand {
             return Collections.singleton(commandName);
         }
 
+        String getCommandName() {
+            return this.commandName;
+        }
+
+        String[] getArguments() {
+            return this.arguments.clone();
+        }
+
         public void executeCommand(Bot bot, IMChat chat, IMMessage message,
                                    Sender sender, String[] args) throws IMException {
             String[] dynamicArgs = MessageHelper.copyOfRange(args, 1, args.length);
@@ -107,6 +115,11 @@ public class SetAliasCommand extends AbstractTextSendingCommand {
             this.command.executeCommand(bot, chat, message, sender, allArgs);
         }
 
+        @Override
+        public long getTimeoutSeconds() {
+            return this.command.getTimeoutSeconds();
+        }
+
         public String getHelp() {
             String help = " - alias for: '" + this.commandName;
             if (this.arguments.length > 0) {
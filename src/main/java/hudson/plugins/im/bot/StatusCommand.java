@@ -6,7 +6,6 @@ package hudson.plugins.im.bot;
 import hudson.Extension;
 import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
-import hudson.plugins.im.tools.MessageHelper;
 
 import java.util.Arrays;
 import java.util.Collection;
@@ -26,25 +25,23 @@ public class StatusCommand extends AbstractMultipleJobCommand {
     @Override
     protected CharSequence getMessageForJob(AbstractProject<?, ?> project) {
         StringBuilder msg = new StringBuilder(32);
-        AbstractBuild<?, ?> lastBuild = project.getLastBuild();
         msg.append(project.getFullDisplayName());
         if (project.isDisabled()) {
             msg.append("(disabled) ");
         // a project which is building and additionally in queue should be reported as building
         } else if (project.isBuilding()) {
+            AbstractBuild<?, ?> lastBuild = project.getLastBuild();
             msg.append("(BUILDING: ").append(lastBuild != null ? lastBuild.getDurationString() : "duration N/A").append(")");
         } else if (project.isInQueue()) {
             msg.append("(in queue) ");
         }
         msg.append(": ");
 
-        while ((lastBuild != null) && lastBuild.isBuilding()) {
-            lastBuild = lastBuild.getPreviousBuild();
-        }
-        if (lastBuild != null) {
-            msg.append("last build: ").append(lastBuild.getNumber()).append(" (")
-                .append(lastBuild.getTimestampString()).append(" ago): ").append(lastBuild.getResult()).append(": ")
-                .append(MessageHelper.getBuildURL(lastBuild));
+        HealthSnapshot snapshot = HealthSnapshot.of(project);
+        if (snapshot.hasBuild()) {
+            msg.append("last build: ").append(snapshot.getBuildNumber()).append(" (")
+                .append(snapshot.getTimestampString()).append(" ago): ").append(snapshot.getResult()).append(": ")
+                .append(snapshot.getBuildUrl());
         } else {
             msg.append("no finished build yet");
         }
@@ -4,13 +4,11 @@ import hudson.Extension;
 import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
 
-//import hudson.tasks.junit.CaseResult;
-import hudson.tasks.test.AbstractTestResultAction;
-import hudson.tasks.test.TestResult;
+import hudson.plugins.im.tools.FailedTestsSummary;
+import hudson.plugins.im.tools.FailedTestsSummary.FailedTest;
 
 import java.util.Collection;
 import java.util.Collections;
-import java.util.List;
 
 /**
  * Print out the latest test results for a build
@@ -35,7 +33,7 @@ public class TestResultCommand extends AbstractMultipleJobCommand {
             // No builds
             return job.getFullDisplayName() + " has never been built";
         }
-        AbstractTestResultAction<?> tests = build.getAction(AbstractTestResultAction.class);
+        FailedTestsSummary tests = FailedTestsSummary.of(build);
         if (tests == null) {
             // no test results associated with this job
             return job.getFullDisplayName() + ": latest build contains no test results";
@@ -43,10 +41,13 @@ public class TestResultCommand extends AbstractMultipleJobCommand {
         StringBuilder listing = new StringBuilder(String.format("%s build #%s had %s of %s tests fail%n", job.getFullDisplayName(), build.getNumber(), tests.getFailCount(), tests.getTotalCount()));
 
         listing.append("\n");
-        List<? extends TestResult> failedTests = tests.getFailedTests();
-        for (TestResult result : failedTests) {
+        for (FailedTest result : tests.getTests()) {
             listing.append(String.format("%s failed in %ss%n", result.getFullName(), result.getDuration()));
         }
+        int more = tests.getFailCount() - tests.getTests().size();
+        if (more > 0) {
+            listing.append("(").append(more).append(" more)");
+        }
         return listing;
     }
 
@@ -0,0 +1,105 @@
+package hudson.plugins.im.bot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds strings similar to a query by the trigrams (substrings of length 3) they share.
+ * <p>
+ * Similarity is the Dice coefficient of the trigram sets: <code>2 * common / (|a| + |b|)</code>.
+ * Only strings sharing at least one trigram with the query are looked at.
+ * Not thread-safe.
+ */
+final class TrigramIndex {
+
+    // trigram -> strings containing it
+    private final Map<String, Set<String>> postings = new HashMap<>();
+    // string -> number of its distinct trigrams
+    private final Map<String, Integer> sizes = new HashMap<>();
+
+    void add(String s) {
+        if (this.sizes.containsKey(s)) {
+            return;
+        }
+        Set<String> trigrams = trigrams(s);
+        this.sizes.put(s, trigrams.size());
+        for (String trigram : trigrams) {
+            this.postings.computeIfAbsent(trigram, k -> new HashSet<>()).add(s);
+        }
+    }
+
+    void remove(String s) {
+        if (this.sizes.remove(s) == null) {
+            return;
+        }
+        for (String trigram : trigrams(s)) {
+            Set<String> strings = this.postings.get(trigram);
+            if (strings != null) {
+                strings.remove(s);
+                if (strings.isEmpty()) {
+                    this.postings.remove(trigram);
+                }
+            }
+        }
+    }
+
+    void clear() {
+        this.postings.clear();
+        this.sizes.clear();
+    }
+
+    /**
+     * Returns the strings most similar to the query, best match first.
+     *
+     * @param limit maximum number of results
+     * @param minScore minimum similarity between 0 and 1
+     */
+    List<String> findSimilar(String query, int limit, double minScore) {
+        Set<String> queryTrigrams = trigrams(query);
+        Map<String, Integer> common = new HashMap<>();
+        for (String trigram : queryTrigrams) {
+            Set<String> strings = this.postings.get(trigram);
+            if (strings != null) {
+                for (String s : strings) {
+                    common.merge(s, 1, Integer::sum);
+                }
+            }
+        }
+        if (common.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<Map.Entry<String, Double>> scored = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : common.entrySet()) {
+            double score = 2.0 * entry.getValue() / (queryTrigrams.size() + this.sizes.get(entry.getKey()));
+            if (score >= minScore) {
+                scored.add(Map.entry(entry.getKey(), score));
+            }
+        }
+        scored.sort(Map.Entry.<String, Double>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+
+        List<String> result = new ArrayList<>(Math.min(limit, scored.size()));
+        for (int i = 0; i < scored.size() && i < limit; i++) {
+            result.add(scored.get(i).getKey());
+        }
+        return result;
+    }
+
+    /**
+     * Returns the trigrams of the string. It's padded, so that its beginning and end get extra weight.
+     */
+    static Set<String> trigrams(String s) {
+        String padded = "  " + s + " ";
+        Set<String> trigrams = new LinkedHashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            trigrams.add(padded.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+}
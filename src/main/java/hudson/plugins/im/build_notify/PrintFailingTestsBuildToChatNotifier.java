@@ -1,31 +1,34 @@
 package hudson.plugins.im.build_notify;
 
-import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import hudson.Extension;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.plugins.im.IMPublisher;
-import hudson.plugins.im.tools.MessageHelper;
-import hudson.tasks.junit.CaseResult;
-import hudson.tasks.test.AbstractTestResultAction;
+import hudson.plugins.im.tools.FailedTestsSummary;
+import hudson.plugins.im.tools.FailedTestsSummary.FailedTest;
 
 import java.io.IOException;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 
+import jenkins.util.SystemProperties;
 import org.kohsuke.stapler.DataBoundConstructor;
 
 /**
  * Extends {@link DefaultBuildToChatNotifier} and also prints
  * failed tests if any.
- * Up to 5 failing tests are printed. Youngest failing tests are displayed first.
+ * Up to 5 failing tests are printed. The number can be changed with the system property
+ * <code>hudson.plugins.im.build_notify.PrintFailingTestsBuildToChatNotifier.maxTests</code>;
+ * it is limited by {@link FailedTestsSummary}, which also defines which tests are
+ * printed first - by default the youngest failing tests.
  *
  * @author kutzi
  */
 public class PrintFailingTestsBuildToChatNotifier extends
         DefaultBuildToChatNotifier {
 
+    private static final int MAX_TESTS = Math.max(0, SystemProperties.getInteger(
+            PrintFailingTestsBuildToChatNotifier.class.getName() + ".maxTests", 5));
+
     @DataBoundConstructor
     public PrintFailingTestsBuildToChatNotifier() {
     }
@@ -62,46 +65,27 @@ public class PrintFailingTestsBuildToChatNotifier extends
         return msg + getFailedTestsReport(build);
     }
 
-    @SuppressFBWarnings(value = "SIC_INNER_SHOULD_BE_STATIC_ANON",
-        justification = "Commented below, no idea how to solve")
     private CharSequence getFailedTestsReport(Run<?, ?> build) {
-        AbstractTestResultAction testResultAction = build.getAction(AbstractTestResultAction.class);
-        if (testResultAction == null || testResultAction.getFailCount() == 0) {
+        FailedTestsSummary summary = FailedTestsSummary.of(build);
+        if (summary == null || summary.getFailCount() == 0) {
             return "";
         }
 
         StringBuilder buf = new StringBuilder();
-        // IDEA says: Unchecked assignment: 'java.util.List' to 'java.util.List<hudson.tasks.junit.CaseResult>'.
-        //   Reason: 'testResultAction' has raw type, so result of getFailedTests is erased.
-        // and suggests to change to "raw" List, then complains it is raw :\
-        List<CaseResult> failedTests = testResultAction.getFailedTests();
-
-        // SIC_INNER_SHOULD_BE_STATIC_ANON.... whatever that means:
-        // The class hudson.plugins.im.build_notify.PrintFailingTestsBuildToChatNotifier$1
-        // could be refactored into a named _static_ inner class.
-        Collections.sort(failedTests, new Comparator<CaseResult>() {
-            @Override
-            public int compare(CaseResult o1, CaseResult o2) {
-                if (o1.getAge() < o2.getAge()) {
-                    return -1;
-                } else if (o2.getAge() < o1.getAge()) {
-                    return 1;
-                }
-                return o1.getFullName().compareTo(o2.getFullName());
-            }
-        });
-
-        final int maxNumberOfTestsToPrint = 5;
+        // in the configured order; selected once per build and shared by all messages
+        List<FailedTest> failedTests = summary.getTests();
+
+        final int maxNumberOfTestsToPrint = MAX_TESTS;
         buf.append("\nFailed tests:\n");
         for (int i=0; i < Math.min(maxNumberOfTestsToPrint, failedTests.size()); i++) {
-            CaseResult test = failedTests.get(i);
+            FailedTest test = failedTests.get(i);
             buf.append(test.getFullName())
                 .append(": ")
-                .append(MessageHelper.getTestUrl(test))
+                .append(test.getUrl(build))
                 .append("\n");
         }
 
-        int more = failedTests.size() - maxNumberOfTestsToPrint;
+        int more = summary.getFailCount() - Math.min(maxNumberOfTestsToPrint, failedTests.size());
         if (more > 0) {
             buf.append("(").append(more).append(" more)");
         }
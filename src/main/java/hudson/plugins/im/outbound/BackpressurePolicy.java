@@ -0,0 +1,44 @@
+package hudson.plugins.im.outbound;
+
+/**
+ * What the {@link OutboundDispatcher} does when the queue of a lane is full.
+ *
+ * @see OutboundDispatcher
+ */
+public enum BackpressurePolicy {
+
+    /**
+     * Block the submitting (build) thread until there is room in the queue
+     * or the configured block timeout has elapsed. In the latter case the
+     * message is dropped.
+     */
+    BLOCK,
+
+    /**
+     * Drop the oldest queued message of the lane to make room for the new one.
+     * Never blocks the submitting thread.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Append the message to an overflow file below <code>JENKINS_HOME</code>
+     * and deliver it once the queue has drained.
+     * Never blocks the submitting thread.
+     */
+    SPILL_TO_DISK;
+
+    /**
+     * Returns the policy with the given name (case insensitive)
+     * or the given default if there is no such policy.
+     */
+    public static BackpressurePolicy forName(String name, BackpressurePolicy defaultPolicy) {
+        if (name != null) {
+            for (BackpressurePolicy policy : values()) {
+                if (policy.name().equalsIgnoreCase(name.trim())) {
+                    return policy;
+                }
+            }
+        }
+        return defaultPolicy;
+    }
+}
@@ -0,0 +1,143 @@
+package hudson.plugins.im.outbound;
+
+import hudson.plugins.im.IMMessageTarget;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Coalesces consecutive messages to the same channel and target into
+ * a single multi-line message.
+ * <p>
+ * Messages to the same target are kept in the order in which they were added.
+ * Not thread-safe - each lane of the {@link OutboundDispatcher} uses its own instance.
+ */
+final class MessageBatcher {
+
+    private final int maxMessages;
+    private final int maxChars;
+    private final Map<Key, Batch> batches = new LinkedHashMap<>();
+
+    /**
+     * @param maxMessages maximum number of messages coalesced into one
+     * @param maxChars maximum length of a coalesced message.
+     *        A single message which is longer than that is sent as it is.
+     */
+    MessageBatcher(int maxMessages, int maxChars) {
+        this.maxMessages = maxMessages;
+        this.maxChars = maxChars;
+    }
+
+    /**
+     * Adds a message.
+     *
+     * @return a previous batch for the same target which couldn't take this
+     *         message anymore and must be sent now - or null.
+     */
+    OutboundMessage add(OutboundMessage msg) {
+        Key key = new Key(msg.getChannel(), msg.getTarget());
+        Batch batch = this.batches.get(key);
+        if (batch != null && batch.fits(msg)) {
+            batch.add(msg);
+            return null;
+        }
+
+        OutboundMessage full = null;
+        if (batch != null) {
+            // remove first, so the new batch is added at the end
+            this.batches.remove(key);
+            full = batch.toMessage();
+        }
+        this.batches.put(key, new Batch(msg));
+        return full;
+    }
+
+    boolean isEmpty() {
+        return this.batches.isEmpty();
+    }
+
+    /**
+     * Returns all pending batches in the order in which they were started
+     * and resets this batcher.
+     */
+    List<OutboundMessage> drain() {
+        if (this.batches.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<OutboundMessage> result = new ArrayList<>(this.batches.size());
+        for (Iterator<Batch> it = this.batches.values().iterator(); it.hasNext();) {
+            result.add(it.next().toMessage());
+            it.remove();
+        }
+        return result;
+    }
+
+    private final class Batch {
+        private final OutboundMessage first;
+        private StringBuilder text;
+        private long[] outboxIds;
+        private int count = 1;
+
+        Batch(OutboundMessage first) {
+            this.first = first;
+            this.outboxIds = first.getOutboxIds();
+        }
+
+        boolean fits(OutboundMessage msg) {
+            int length = this.text != null ? this.text.length() : this.first.getText().length();
+            return this.count < maxMessages
+                && length + 1 + msg.getText().length() <= maxChars;
+        }
+
+        void add(OutboundMessage msg) {
+            if (this.text == null) {
+                this.text = new StringBuilder(this.first.getText());
+            }
+            this.text.append('\n').append(msg.getText());
+            this.count++;
+            long[] ids = msg.getOutboxIds();
+            if (ids.length > 0) {
+                long[] merged = Arrays.copyOf(this.outboxIds, this.outboxIds.length + ids.length);
+                System.arraycopy(ids, 0, merged, this.outboxIds.length, ids.length);
+                this.outboxIds = merged;
+            }
+        }
+
+        OutboundMessage toMessage() {
+            if (this.text == null) {
+                return this.first;
+            }
+            return new OutboundMessage(this.first.getChannel(), this.first.getTarget(), this.text.toString(),
+                    this.first.getSource(), this.outboxIds);
+        }
+    }
+
+    private static final class Key {
+        private final String channel;
+        private final IMMessageTarget target;
+
+        Key(String channel, IMMessageTarget target) {
+            this.channel = channel;
+            this.target = target;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return Objects.equals(this.channel, other.channel) && Objects.equals(this.target, other.target);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.channel, this.target);
+        }
+    }
+}
@@ -0,0 +1,510 @@
+package hudson.plugins.im.outbound;
+
+import hudson.init.Terminator;
+import hudson.plugins.im.Bulkhead;
+import hudson.plugins.im.IMConnection;
+import hudson.plugins.im.IMException;
+import hudson.plugins.im.IMMessageTarget;
+import hudson.plugins.im.IMMetrics;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+
+/**
+ * Decouples sending of notification messages from the build threads.
+ * <p>
+ * Messages are put into one of several bounded queues ('lanes') and are sent by a
+ * dedicated pool of dispatcher threads - one thread per lane.
+ * All messages for the same channel and target always end up in the same lane,
+ * so they are sent in the order in which they were submitted.
+ * What happens if a lane is full is decided by the configured {@link BackpressurePolicy}.
+ * <p>
+ * Messages to the same target which arrive in short succession - e.g. when many matrix
+ * configurations finish at once - are coalesced into a single multi-line message
+ * by a {@link MessageBatcher}.
+ * <p>
+ * Messages are sent via the connection registered for their channel - usually by the
+ * {@link hudson.plugins.im.IMConnectionProvider} of the protocol - or else via the
+ * connection source they were submitted with. The dispatcher only references the latter
+ * while the message is queued.
+ * <p>
+ * A message is retried a few times if the {@link Bulkhead} of its protocol rejected it, as the
+ * connection may still be fine. The retry is scheduled in the lane, so meanwhile the lane sends
+ * the messages to other targets, while the further messages to the same target wait behind it.
+ * A message which timed out isn't retried, as it may have been sent anyway.
+ * Messages which can't be sent are recorded in the {@link Outbox} to be sent on the next reconnect.
+ * <p>
+ * Can be configured with the following system properties (prefixed by the name of this class):
+ * <ul>
+ * <li><code>.enabled</code> - if false, messages are sent synchronously by the caller (default: true)</li>
+ * <li><code>.lanes</code> - number of lanes and dispatcher threads (default: 4)</li>
+ * <li><code>.capacity</code> - maximum number of queued messages per lane (default: 1000)</li>
+ * <li><code>.policy</code> - one of {@link BackpressurePolicy} (default: BLOCK)</li>
+ * <li><code>.blockTimeoutMillis</code> - how long BLOCK waits for room in the lane (default: 10000)</li>
+ * <li><code>.batchWindowMillis</code> - how long to wait for a further message to coalesce; 0 disables batching (default: 250)</li>
+ * <li><code>.batchMaxDelayMillis</code> - a coalesced message is sent at most this long after its first part (default: 1000)</li>
+ * <li><code>.batchMaxMessages</code> - maximum number of messages coalesced into one (default: 20)</li>
+ * <li><code>.batchMaxChars</code> - maximum length of a coalesced message (default: 4000)</li>
+ * <li><code>.retries</code> - how often a rejected message is retried (default: 3)</li>
+ * <li><code>.retryDelayMillis</code> - delay before the first retry, doubled for each further one (default: 1000)</li>
+ * </ul>
+ */
+public final class OutboundDispatcher {
+
+    private static final Logger LOGGER = Logger.getLogger(OutboundDispatcher.class.getName());
+
+    private static final String PROPERTY_PREFIX = OutboundDispatcher.class.getName();
+
+    private static final boolean ENABLED = SystemProperties.getBoolean(PROPERTY_PREFIX + ".enabled", true);
+    private static final int LANES = Math.max(1, SystemProperties.getInteger(PROPERTY_PREFIX + ".lanes", 4));
+    private static final int CAPACITY = Math.max(1, SystemProperties.getInteger(PROPERTY_PREFIX + ".capacity", 1000));
+    private static final BackpressurePolicy POLICY = BackpressurePolicy.forName(
+            SystemProperties.getString(PROPERTY_PREFIX + ".policy"), BackpressurePolicy.BLOCK);
+    private static final long BLOCK_TIMEOUT_MILLIS = SystemProperties.getLong(PROPERTY_PREFIX + ".blockTimeoutMillis", 10000L);
+    private static final long BATCH_WINDOW_MILLIS = SystemProperties.getLong(PROPERTY_PREFIX + ".batchWindowMillis", 250L);
+    private static final long BATCH_MAX_DELAY_MILLIS = SystemProperties.getLong(PROPERTY_PREFIX + ".batchMaxDelayMillis", 1000L);
+    private static final int BATCH_MAX_MESSAGES = SystemProperties.getInteger(PROPERTY_PREFIX + ".batchMaxMessages", 20);
+    private static final int BATCH_MAX_CHARS = SystemProperties.getInteger(PROPERTY_PREFIX + ".batchMaxChars", 4000);
+    private static final int RETRIES = Math.max(0, SystemProperties.getInteger(PROPERTY_PREFIX + ".retries", 3));
+    private static final long RETRY_DELAY_MILLIS = SystemProperties.getLong(PROPERTY_PREFIX + ".retryDelayMillis", 1000L);
+
+    private static OutboundDispatcher INSTANCE;
+
+    /**
+     * Supplies the connection via which the messages of a channel are sent.
+     * Is asked for each message, so that reconnects are picked up.
+     */
+    @FunctionalInterface
+    public interface ConnectionSource {
+        IMConnection getConnection() throws IMException;
+    }
+
+    private static final ConcurrentMap<String, ConnectionSource> CHANNELS = new ConcurrentHashMap<>();
+
+    private final Lane[] lanes;
+    private final ExecutorService executor;
+    private final BackpressurePolicy policy;
+    private final long blockTimeoutMillis;
+    private volatile boolean stopped;
+
+    OutboundDispatcher(int laneCount, int capacity, BackpressurePolicy policy, long blockTimeoutMillis, File spillDir) {
+        this.policy = policy;
+        this.blockTimeoutMillis = blockTimeoutMillis;
+        this.lanes = new Lane[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            SpillFile spill = null;
+            if (policy == BackpressurePolicy.SPILL_TO_DISK) {
+                spill = new SpillFile(new File(spillDir, "lane-" + i + ".spill"));
+                try {
+                    spill.reset();
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Could not reset spill file", e);
+                }
+            }
+            this.lanes[i] = new Lane(capacity, spill);
+        }
+        this.executor = Executors.newFixedThreadPool(laneCount,
+                new NamingThreadFactory(new DaemonThreadFactory(), OutboundDispatcher.class.getSimpleName()));
+        for (Lane lane : this.lanes) {
+            this.executor.execute(lane);
+        }
+    }
+
+    /**
+     * Returns if messages should be sent via the dispatcher at all.
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Returns the configured number of lanes, i.e. of messages sent in parallel.
+     */
+    public static int getLaneCount() {
+        return LANES;
+    }
+
+    public static synchronized OutboundDispatcher get() {
+        if (INSTANCE == null) {
+            INSTANCE = new OutboundDispatcher(LANES, CAPACITY, POLICY, BLOCK_TIMEOUT_MILLIS,
+                    new File(Jenkins.get().getRootDir(), "instant-messaging/spill"));
+            IMMetrics.setQueueDepth(IMMetrics.Queue.OUTBOUND, INSTANCE::getQueueDepth);
+            LOGGER.info("Outbound dispatcher started with " + LANES + " lanes, capacity " + CAPACITY + ", policy " + POLICY);
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Registers where the connection of a channel comes from.
+     *
+     * @param channel identifies the IM protocol
+     * @param source supplies the connection of the channel; null to unregister it
+     */
+    public static void registerChannel(String channel, ConnectionSource source) {
+        if (source != null) {
+            CHANNELS.put(channel, source);
+        } else {
+            CHANNELS.remove(channel);
+        }
+    }
+
+    /**
+     * Queues a message for sending.
+     *
+     * @param channel identifies the IM protocol via which to send the message
+     * @param source supplies the connection if none is registered for the channel
+     * @param target the target to send to
+     * @param text the text to be sent
+     * @return false if the message was dropped, true otherwise
+     * @throws InterruptedException if the caller was interrupted while waiting for room in the queue
+     */
+    public boolean submit(String channel, ConnectionSource source, IMMessageTarget target, String text)
+            throws InterruptedException {
+        return submit(new OutboundMessage(channel, target, text, source, OutboundMessage.NO_IDS));
+    }
+
+    /**
+     * Queues a message replayed from the {@link Outbox}.
+     * The outbox entry is acknowledged once the message has been sent.
+     */
+    boolean submit(String channel, ConnectionSource source, IMMessageTarget target, String text, long outboxId)
+            throws InterruptedException {
+        return submit(new OutboundMessage(channel, target, text, source, outboxId));
+    }
+
+    private boolean submit(OutboundMessage msg) throws InterruptedException {
+        if (this.stopped) {
+            return false;
+        }
+        return laneFor(msg).offer(msg);
+    }
+
+    /**
+     * Returns the number of messages currently waiting to be sent.
+     * Spilled messages are not included.
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (Lane lane : this.lanes) {
+            depth += lane.queue.size();
+        }
+        return depth;
+    }
+
+    private Lane laneFor(OutboundMessage msg) {
+        int hash = Objects.hash(msg.getChannel(), msg.getTarget());
+        return this.lanes[Math.floorMod(hash, this.lanes.length)];
+    }
+
+    /**
+     * Sends the message once.
+     *
+     * @param lastAttempt if a rejected message must not be retried anymore
+     * @return false if the message was rejected and should be retried
+     */
+    private boolean deliver(OutboundMessage msg, boolean lastAttempt) {
+        ConnectionSource source = CHANNELS.get(msg.getChannel());
+        if (source == null) {
+            source = msg.getSource();
+        }
+        if (source == null) {
+            LOGGER.warning("No connection known for " + msg + ". Dropping message.");
+            if (msg.getOutboxIds().length > 0) {
+                Outbox.get().release(msg.getOutboxIds());
+            }
+            return true;
+        }
+        try {
+            source.getConnection().send(msg.getTarget(), msg.getText());
+            if (msg.getOutboxIds().length > 0) {
+                Outbox.get().delivered(msg.getOutboxIds());
+            }
+        } catch (Bulkhead.RejectedCallException e) {
+            // never reached the IM server, so it can safely be sent again
+            if (!lastAttempt) {
+                LOGGER.fine(e.getMessage() + ". Retrying " + msg);
+                return false;
+            }
+            failed(msg, e);
+        } catch (IMException | RuntimeException e) {
+            // other failures usually mean that the connection is lost, so there's no point in retrying
+            failed(msg, e);
+        }
+        return true;
+    }
+
+    private static void failed(OutboundMessage msg, Exception e) {
+        long[] outboxIds = msg.getOutboxIds();
+        if (outboxIds.length > 0) {
+            LOGGER.log(Level.WARNING, "Could not send message to " + msg + ". Keeping it for the next reconnect.", e);
+            Outbox.get().release(outboxIds);
+        } else if (Outbox.isEnabled() && Outbox.get().append(msg.getChannel(), msg.getTarget(), msg.getText())) {
+            LOGGER.log(Level.WARNING, "Could not send message to " + msg + ". Sending it on the next reconnect.", e);
+        } else {
+            LOGGER.log(Level.WARNING, "Could not send message to " + msg, e);
+        }
+    }
+
+    /**
+     * Stops the dispatcher. Waits for up to the given time for queued messages to be sent.
+     */
+    void stop(long timeout, TimeUnit unit) throws InterruptedException {
+        this.stopped = true;
+        this.executor.shutdown();
+        if (!this.executor.awaitTermination(timeout, unit)) {
+            LOGGER.warning("Outbound dispatcher didn't finish in time. Remaining messages: " + getQueueDepth());
+            this.executor.shutdownNow();
+        }
+        for (Lane lane : this.lanes) {
+            if (lane.spill != null) {
+                lane.spill.close();
+            }
+        }
+    }
+
+    @Terminator
+    public static void shutdown() throws InterruptedException {
+        OutboundDispatcher dispatcher;
+        synchronized (OutboundDispatcher.class) {
+            dispatcher = INSTANCE;
+            INSTANCE = null;
+        }
+        IMMetrics.setQueueDepth(IMMetrics.Queue.OUTBOUND, null);
+        if (dispatcher != null) {
+            dispatcher.stop(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private final class Lane implements Runnable {
+
+        private final LinkedBlockingDeque<OutboundMessage> queue;
+        private final SpillFile spill;
+        private final MessageBatcher batcher;
+        // (channel, target) -> the rejected message and the messages waiting behind it; only used by the lane thread
+        private final Map<Map.Entry<String, IMMessageTarget>, Retry> retries = new LinkedHashMap<>();
+
+        Lane(int capacity, SpillFile spill) {
+            this.queue = new LinkedBlockingDeque<>(capacity);
+            this.spill = spill;
+            this.batcher = BATCH_WINDOW_MILLIS > 0 && BATCH_MAX_MESSAGES > 1
+                ? new MessageBatcher(BATCH_MAX_MESSAGES, BATCH_MAX_CHARS) : null;
+        }
+
+        boolean offer(OutboundMessage msg) throws InterruptedException {
+            switch (policy) {
+                case DROP_OLDEST:
+                    while (!this.queue.offerLast(msg)) {
+                        OutboundMessage dropped = this.queue.pollFirst();
+                        if (dropped != null) {
+                            LOGGER.warning("Outbound queue full. Dropped oldest message for " + dropped);
+                            if (dropped.getOutboxIds().length > 0) {
+                                // will be replayed on the next reconnect
+                                Outbox.get().release(dropped.getOutboxIds());
+                            }
+                        }
+                    }
+                    return true;
+                case SPILL_TO_DISK:
+                    synchronized (this.spill) {
+                        if (!this.spill.isActive() && this.queue.offerLast(msg)) {
+                            return true;
+                        }
+                        return this.spill.append(msg);
+                    }
+                case BLOCK:
+                default:
+                    if (this.queue.offerLast(msg, blockTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                    LOGGER.warning("Outbound queue full for " + blockTimeoutMillis + "ms. Dropped message for " + msg);
+                    return false;
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!stopped || !this.queue.isEmpty() || (this.spill != null && this.spill.isActive())
+                        || !this.retries.isEmpty()) {
+                    retryDue();
+                    OutboundMessage msg = this.queue.pollFirst();
+                    if (msg == null) {
+                        if (this.spill != null && this.spill.isActive()) {
+                            drainSpill();
+                            continue;
+                        }
+                        if (stopped && this.retries.isEmpty()) {
+                            break;
+                        }
+                        msg = this.queue.pollFirst(getPollTimeoutNanos(), TimeUnit.NANOSECONDS);
+                        if (msg == null) {
+                            continue;
+                        }
+                    }
+                    if (this.batcher != null) {
+                        collectBatch(msg);
+                    } else {
+                        dispatch(msg);
+                    }
+                }
+            } catch (InterruptedException e) {
+                LOGGER.info("Outbound dispatcher interrupted");
+                Thread.currentThread().interrupt();
+            } finally {
+                for (Retry retry : this.retries.values()) {
+                    for (OutboundMessage msg : retry.messages) {
+                        failed(msg, new IMException("Outbound dispatcher stopped"));
+                    }
+                }
+                this.retries.clear();
+            }
+        }
+
+        /**
+         * Sends the message - unless an earlier message to the same target waits to be retried.
+         * Then it waits behind that one.
+         */
+        private void dispatch(OutboundMessage msg) {
+            Map.Entry<String, IMMessageTarget> key = new SimpleImmutableEntry<>(msg.getChannel(), msg.getTarget());
+            Retry retry = this.retries.get(key);
+            if (retry != null) {
+                retry.messages.addLast(msg);
+            } else if (!deliver(msg, RETRIES == 0)) {
+                retry = new Retry();
+                retry.messages.add(msg);
+                retry.rejected();
+                this.retries.put(key, retry);
+            }
+        }
+
+        /**
+         * Retries the rejected messages which are due and sends the messages waiting behind them.
+         */
+        private void retryDue() {
+            long now = System.nanoTime();
+            for (Iterator<Retry> it = this.retries.values().iterator(); it.hasNext();) {
+                Retry retry = it.next();
+                if (retry.due - now > 0) {
+                    continue;
+                }
+                while (!retry.messages.isEmpty()) {
+                    if (!deliver(retry.messages.peekFirst(), retry.attempts > RETRIES)) {
+                        retry.rejected();
+                        break;
+                    }
+                    retry.messages.removeFirst();
+                    retry.reset();
+                }
+                if (retry.messages.isEmpty()) {
+                    it.remove();
+                }
+            }
+        }
+
+        /**
+         * Returns how long to wait for a message: until the next retry is due, but at most a second.
+         */
+        private long getPollTimeoutNanos() {
+            long timeout = TimeUnit.SECONDS.toNanos(1);
+            long now = System.nanoTime();
+            for (Retry retry : this.retries.values()) {
+                timeout = Math.min(timeout, Math.max(0, retry.due - now));
+            }
+            return timeout;
+        }
+
+        /**
+         * Waits for further messages for up to the batch window after the last one -
+         * but never longer than the max delay after the first one - and sends
+         * the messages coalesced per target.
+         */
+        private void collectBatch(OutboundMessage first) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(BATCH_MAX_DELAY_MILLIS);
+            long window = TimeUnit.MILLISECONDS.toNanos(BATCH_WINDOW_MILLIS);
+            try {
+                OutboundMessage msg = first;
+                while (msg != null) {
+                    OutboundMessage full = this.batcher.add(msg);
+                    if (full != null) {
+                        dispatch(full);
+                    }
+                    long remaining = Math.min(window, deadline - System.nanoTime());
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    msg = this.queue.pollFirst(remaining, TimeUnit.NANOSECONDS);
+                }
+            } finally {
+                flushBatches();
+            }
+        }
+
+        private void drainSpill() {
+            OutboundMessage msg;
+            while ((msg = this.spill.next()) != null) {
+                if (this.batcher != null) {
+                    OutboundMessage full = this.batcher.add(msg);
+                    if (full != null) {
+                        dispatch(full);
+                    }
+                } else {
+                    dispatch(msg);
+                }
+            }
+            flushBatches();
+        }
+
+        private void flushBatches() {
+            if (this.batcher != null) {
+                for (OutboundMessage batch : this.batcher.drain()) {
+                    dispatch(batch);
+                }
+            }
+        }
+    }
+
+    /**
+     * A rejected message which waits to be retried - and the messages to the same target behind it.
+     */
+    private static final class Retry {
+        private final Deque<OutboundMessage> messages = new ArrayDeque<>();
+        // the number of the next attempt to send the first message
+        private int attempts = 1;
+        private long delayMillis = RETRY_DELAY_MILLIS;
+        private long due;
+
+        void rejected() {
+            this.due = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.delayMillis);
+            this.delayMillis *= 2;
+            this.attempts++;
+        }
+
+        /**
+         * Starts over with the next message.
+         */
+        void reset() {
+            this.attempts = 1;
+            this.delayMillis = RETRY_DELAY_MILLIS;
+        }
+    }
+}
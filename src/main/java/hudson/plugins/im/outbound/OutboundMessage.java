@@ -0,0 +1,79 @@
+package hudson.plugins.im.outbound;
+
+import hudson.plugins.im.IMMessageTarget;
+
+/**
+ * A message waiting in the {@link OutboundDispatcher} to be sent to a target.
+ */
+final class OutboundMessage {
+
+    static final long[] NO_IDS = new long[0];
+
+    private final String channel;
+    private final IMMessageTarget target;
+    private final String text;
+    private final long[] outboxIds;
+    // only kept while the message is queued; null if the message was spilled or recorded in the outbox
+    private final OutboundDispatcher.ConnectionSource source;
+
+    OutboundMessage(String channel, IMMessageTarget target, String text) {
+        this(channel, target, text, null, NO_IDS);
+    }
+
+    /**
+     * @param outboxIds the ids of the {@link Outbox} entries which this message delivers
+     */
+    OutboundMessage(String channel, IMMessageTarget target, String text, long... outboxIds) {
+        this(channel, target, text, null, outboxIds);
+    }
+
+    /**
+     * @param source supplies the connection if none is registered for the channel - may be null
+     * @param outboxIds the ids of the {@link Outbox} entries which this message delivers
+     */
+    OutboundMessage(String channel, IMMessageTarget target, String text,
+            OutboundDispatcher.ConnectionSource source, long... outboxIds) {
+        this.channel = channel;
+        this.target = target;
+        this.text = text;
+        this.source = source;
+        this.outboxIds = outboxIds;
+    }
+
+    /**
+     * The channel (i.e. the IM protocol) via which the message should be sent.
+     */
+    String getChannel() {
+        return this.channel;
+    }
+
+    IMMessageTarget getTarget() {
+        return this.target;
+    }
+
+    String getText() {
+        return this.text;
+    }
+
+    /**
+     * The ids of the {@link Outbox} entries which this message delivers.
+     * Empty if the message isn't recorded in the outbox.
+     */
+    long[] getOutboxIds() {
+        return this.outboxIds;
+    }
+
+    /**
+     * Supplies the connection via which the message was submitted - or null.
+     *
+     * @see OutboundDispatcher#registerChannel(String, OutboundDispatcher.ConnectionSource)
+     */
+    OutboundDispatcher.ConnectionSource getSource() {
+        return this.source;
+    }
+
+    @Override
+    public String toString() {
+        return this.channel + " -> " + this.target;
+    }
+}
@@ -0,0 +1,757 @@
+package hudson.plugins.im.outbound;
+
+import hudson.init.Terminator;
+import hudson.plugins.im.IMException;
+import hudson.plugins.im.IMMessageTarget;
+import hudson.plugins.im.IMMetrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+
+/**
+ * Keeps messages which couldn't be delivered - e.g. because Jenkins isn't connected
+ * to the IM server - and replays them in order once the connection is back.
+ * <p>
+ * The messages are recorded in an append-only journal file under
+ * <code>JENKINS_HOME/instant-messaging/outbox</code>, so they survive a restart of Jenkins.
+ * The journal is memory-mapped: appending a message is a copy into memory on the calling
+ * thread, the operating system writes it to disk in the background. That means
+ * messages survive a crash of Jenkins, but not necessarily one of the operating system.
+ * <p>
+ * Journal records are either ENQUEUE (id, timestamp, channel, target and text) or ACK (id).
+ * When all messages have been delivered, the journal is truncated. If it runs full, it is
+ * grown. Once it is mostly taken by delivered messages, it is compacted in the background:
+ * the pending messages are written to the next generation of the journal, a new file,
+ * which then replaces it. The file of a generation is never replaced while it is mapped,
+ * which isn't possible on Windows.
+ * Messages older than the TTL are discarded.
+ * <p>
+ * Can be configured with the following system properties (prefixed by the name of this class):
+ * <ul>
+ * <li><code>.enabled</code> - if false, undeliverable messages are dropped (default: true)</li>
+ * <li><code>.ttlMinutes</code> - how long messages are kept (default: 1440, i.e. one day)</li>
+ * <li><code>.maxJournalBytes</code> - maximum size of the journal (default: 64 MiB)</li>
+ * </ul>
+ */
+public final class Outbox {
+
+    private static final Logger LOGGER = Logger.getLogger(Outbox.class.getName());
+
+    private static final String PROPERTY_PREFIX = Outbox.class.getName();
+
+    private static final boolean ENABLED = SystemProperties.getBoolean(PROPERTY_PREFIX + ".enabled", true);
+    private static final long TTL_MILLIS = TimeUnit.MINUTES.toMillis(
+            SystemProperties.getLong(PROPERTY_PREFIX + ".ttlMinutes", TimeUnit.DAYS.toMinutes(1)));
+    private static final int MAX_JOURNAL_BYTES = SystemProperties.getInteger(PROPERTY_PREFIX + ".maxJournalBytes", 64 << 20);
+
+    static final int INITIAL_JOURNAL_BYTES = 1 << 20;
+
+    private static final byte END = 0;
+    private static final byte ENQUEUE = 1;
+    private static final byte ACK = 2;
+
+    private static final byte[] ZEROS = new byte[8192];
+
+    private static Outbox INSTANCE;
+
+    /**
+     * The journal of generation 0. Later generations have the generation appended to its name,
+     * e.g. <code>outbox.journal.1</code>.
+     */
+    private final File file;
+    private final long ttlMillis;
+    private final int maxBytes;
+    private final Executor compactor;
+
+    private int generation;
+    private FileChannel fileChannel;
+    private MappedByteBuffer journal;
+    private int writePosition;
+    private long nextId = 1;
+    // size of the ENQUEUE records of the pending messages
+    private int pendingBytes;
+    // incremented whenever records are removed from the journal, so a compaction begun before is void
+    private long rewrites;
+    private boolean compactionScheduled;
+
+    private final Map<Long, Entry> pending = new LinkedHashMap<>();
+    private final Set<Long> inFlight = new HashSet<>();
+
+    /**
+     * @param compactor runs the compactions of the journal
+     */
+    Outbox(File file, long ttlMillis, int maxBytes, Executor compactor) {
+        this.file = file;
+        this.ttlMillis = ttlMillis;
+        this.maxBytes = Math.max(INITIAL_JOURNAL_BYTES, maxBytes);
+        this.compactor = compactor;
+    }
+
+    /**
+     * Returns if undeliverable messages should be kept in the outbox at all.
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    public static synchronized Outbox get() {
+        if (INSTANCE == null) {
+            INSTANCE = new Outbox(new File(Jenkins.get().getRootDir(), "instant-messaging/outbox/outbox.journal"),
+                    TTL_MILLIS, MAX_JOURNAL_BYTES, Timer.get());
+            IMMetrics.setQueueDepth(IMMetrics.Queue.OUTBOX, INSTANCE::getPendingCount);
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Records a message for later delivery.
+     *
+     * @param channel identifies the IM protocol via which to send the message
+     * @return false if the message couldn't be recorded
+     */
+    public boolean append(String channel, IMMessageTarget target, String text) {
+        byte[] record;
+        try {
+            record = encode(channel, Jenkins.XSTREAM2.toXML(target), text);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Could not serialize target " + target, e);
+            return false;
+        }
+        synchronized (this) {
+            try {
+                open();
+                if (!ensureCapacity(record.length + 1 + Long.BYTES * 2)) {
+                    LOGGER.warning("Outbox is full. Dropped message for " + target);
+                    return false;
+                }
+                long id = this.nextId++;
+                long timestamp = System.currentTimeMillis();
+                Entry entry = new Entry(id, timestamp, new OutboundMessage(channel, target, text), record);
+                writeEnqueue(entry);
+                this.pending.put(id, entry);
+                this.pendingBytes += entry.size();
+                return true;
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Could not record message for " + target + " in " + this.file, e);
+                return false;
+            } finally {
+                compactIfMostlyDelivered();
+            }
+        }
+    }
+
+    /**
+     * Sends all pending messages of the channel in the order in which they were recorded.
+     * <p>
+     * If the {@link OutboundDispatcher} is enabled, the messages are queued there.
+     * Otherwise they are sent by the calling thread.
+     *
+     * @param channel identifies the IM protocol
+     * @param source supplies the (re-established) connection of the channel
+     */
+    public void replay(String channel, OutboundDispatcher.ConnectionSource source) {
+        List<Entry> entries = takePending(channel);
+        if (entries.isEmpty()) {
+            return;
+        }
+        LOGGER.info("Replaying " + entries.size() + " undelivered messages via " + channel);
+
+        if (OutboundDispatcher.isEnabled()) {
+            OutboundDispatcher dispatcher = OutboundDispatcher.get();
+            for (int i = 0; i < entries.size(); i++) {
+                Entry entry = entries.get(i);
+                try {
+                    if (!dispatcher.submit(channel, source, entry.message.getTarget(), entry.message.getText(), entry.id)) {
+                        release(entry.id);
+                    }
+                } catch (InterruptedException e) {
+                    release(entries.subList(i, entries.size()));
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        } else {
+            for (int i = 0; i < entries.size(); i++) {
+                Entry entry = entries.get(i);
+                try {
+                    source.getConnection().send(entry.message.getTarget(), entry.message.getText());
+                    delivered(entry.id);
+                } catch (IMException | RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Could not replay message to " + entry.message + ". Stopping replay.", e);
+                    release(entries.subList(i, entries.size()));
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of messages waiting for delivery.
+     */
+    public synchronized int getPendingCount() {
+        return this.pending.size();
+    }
+
+    /**
+     * Marks the messages as delivered.
+     */
+    synchronized void delivered(long... ids) {
+        for (long id : ids) {
+            this.inFlight.remove(id);
+            Entry entry = this.pending.remove(id);
+            if (entry != null) {
+                this.pendingBytes -= entry.size();
+                try {
+                    if (this.pending.isEmpty()) {
+                        truncate();
+                    } else {
+                        writeAck(id);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Could not acknowledge message in " + this.file, e);
+                }
+            }
+        }
+        compactIfMostlyDelivered();
+    }
+
+    /**
+     * Marks the messages as undelivered, so they are replayed on the next reconnect.
+     */
+    synchronized void release(long... ids) {
+        for (long id : ids) {
+            this.inFlight.remove(id);
+        }
+    }
+
+    private synchronized void release(List<Entry> entries) {
+        for (Entry entry : entries) {
+            this.inFlight.remove(entry.id);
+        }
+    }
+
+    /**
+     * Returns the pending messages of the channel which aren't being replayed already
+     * and marks them as in flight. Discards expired messages.
+     */
+    synchronized List<Entry> takePending(String channel) {
+        try {
+            open();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not open " + this.file, e);
+            return Collections.emptyList();
+        }
+        long now = System.currentTimeMillis();
+        List<Entry> result = new ArrayList<>();
+        List<Long> expired = new ArrayList<>();
+        for (Entry entry : this.pending.values()) {
+            if (entry.isExpired(now, this.ttlMillis)) {
+                expired.add(entry.id);
+            } else if (entry.message.getChannel().equals(channel) && this.inFlight.add(entry.id)) {
+                result.add(entry);
+            }
+        }
+        if (!expired.isEmpty()) {
+            LOGGER.info("Discarding " + expired.size() + " expired messages");
+            for (long id : expired) {
+                delivered(id);
+            }
+        }
+        return result;
+    }
+
+    synchronized void close() {
+        this.rewrites++;
+        if (this.journal != null) {
+            this.journal.force();
+            this.journal = null;
+        }
+        if (this.fileChannel != null) {
+            try {
+                this.fileChannel.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            this.fileChannel = null;
+        }
+        this.pending.clear();
+        this.pendingBytes = 0;
+        this.inFlight.clear();
+    }
+
+    @Terminator
+    public static void shutdown() {
+        Outbox outbox;
+        synchronized (Outbox.class) {
+            outbox = INSTANCE;
+            INSTANCE = null;
+        }
+        IMMetrics.setQueueDepth(IMMetrics.Queue.OUTBOX, null);
+        if (outbox != null) {
+            outbox.close();
+        }
+    }
+
+    private void open() throws IOException {
+        if (this.journal != null) {
+            return;
+        }
+        File dir = this.file.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create " + dir);
+        }
+        this.generation = 0;
+        String[] names = dir.list();
+        if (names != null) {
+            for (String name : names) {
+                this.generation = Math.max(this.generation, getGeneration(name));
+            }
+        }
+        // left over by a crash during or right after a compaction
+        deleteOldFiles(!this.compactionScheduled);
+
+        this.fileChannel = FileChannel.open(getJournalFile(this.generation),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = Math.min(this.maxBytes, Math.max(INITIAL_JOURNAL_BYTES, this.fileChannel.size()));
+        this.journal = this.fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        load();
+    }
+
+    /**
+     * Rebuilds the pending messages from the journal.
+     */
+    private void load() {
+        long now = System.currentTimeMillis();
+        int position = 0;
+        int expired = 0;
+        boolean corrupt = false;
+        try {
+            while (position < this.journal.capacity()) {
+                byte type = this.journal.get(position);
+                if (type == END) {
+                    break;
+                }
+                this.journal.position(position + 1);
+                long id = this.journal.getLong();
+                this.nextId = Math.max(this.nextId, id + 1);
+                if (type == ENQUEUE) {
+                    long timestamp = this.journal.getLong();
+                    String channel = readString();
+                    String targetXml = readString();
+                    String text = readString();
+                    int end = this.journal.position();
+                    byte[] record = new byte[end - position - 1 - Long.BYTES * 2];
+                    this.journal.get(position + 1 + Long.BYTES * 2, record);
+                    if (now - timestamp >= this.ttlMillis) {
+                        expired++;
+                    } else {
+                        IMMessageTarget target = readTarget(targetXml);
+                        if (target != null) {
+                            Entry entry = new Entry(id, timestamp, new OutboundMessage(channel, target, text), record);
+                            this.pending.put(id, entry);
+                            this.pendingBytes += entry.size();
+                        }
+                    }
+                } else if (type == ACK) {
+                    Entry entry = this.pending.remove(id);
+                    if (entry != null) {
+                        this.pendingBytes -= entry.size();
+                    }
+                } else {
+                    throw new IllegalStateException("Unknown record type " + type);
+                }
+                position = this.journal.position();
+            }
+        } catch (RuntimeException e) {
+            // e.g. BufferUnderflowException for a truncated record
+            LOGGER.log(Level.WARNING, "Journal " + this.file + " is corrupt at offset " + position
+                    + ". Ignoring the rest of it.", e);
+            corrupt = true;
+        }
+        this.writePosition = position;
+        if (expired > 0) {
+            LOGGER.info("Discarded " + expired + " expired messages from " + this.file);
+        }
+        if (!this.pending.isEmpty()) {
+            LOGGER.info(this.pending.size() + " undelivered messages in " + this.file);
+        }
+        if (corrupt) {
+            // rare enough to be compacted right away: nothing may be appended behind a corrupt record
+            try {
+                compact();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not compact " + this.file, e);
+                // it would never be read
+                this.writePosition = this.journal.capacity();
+            }
+        } else if (position > this.pendingBytes) {
+            // there are delivered, expired or unreadable messages
+            scheduleCompaction();
+        }
+    }
+
+    /**
+     * Makes room for a record by growing the journal. Doesn't compact it, as that needs
+     * to force the journal to disk - too slow for the threads sending notifications.
+     */
+    private boolean ensureCapacity(int bytes) throws IOException {
+        // keep room for the END marker
+        if (this.writePosition + bytes < this.journal.capacity()) {
+            return true;
+        }
+        long size = Math.max(2L * this.journal.capacity(), this.writePosition + bytes + 1L);
+        if (size > this.maxBytes) {
+            // a compaction might make room for the next message
+            scheduleCompaction();
+            return false;
+        }
+        this.journal = this.fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        return true;
+    }
+
+    /**
+     * Compacts the journal in the background once it is three quarters full and
+     * at least half of it is taken by delivered messages.
+     */
+    private void compactIfMostlyDelivered() {
+        if (this.journal != null && this.writePosition > this.journal.capacity() / 4 * 3
+                && this.pendingBytes < this.writePosition / 2) {
+            scheduleCompaction();
+        }
+    }
+
+    private void scheduleCompaction() {
+        if (this.compactionScheduled) {
+            return;
+        }
+        this.compactionScheduled = true;
+        this.compactor.execute(() -> {
+            try {
+                compact();
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Could not compact " + this.file, e);
+            } finally {
+                synchronized (this) {
+                    this.compactionScheduled = false;
+                }
+            }
+        });
+    }
+
+    /**
+     * Replaces the journal by its next generation, which only has the pending messages.
+     * <p>
+     * The pending messages are written to a temporary file and forced to disk without holding
+     * the lock of the outbox. Then the records written to the journal in the meantime are
+     * copied and the temporary file is atomically renamed to the next generation, which is
+     * used from then on. A crash at any point leaves the current generation or the next one,
+     * which has all messages of the current one. The current generation is deleted once it is
+     * unmapped - on Windows that's only when it has been garbage collected, so there it
+     * may only be deleted by a later compaction or the next start.
+     */
+    void compact() throws IOException {
+        Compaction compaction = beginCompaction();
+        if (compaction == null) {
+            return;
+        }
+        try {
+            compaction.write();
+        } catch (IOException | RuntimeException e) {
+            compaction.discard();
+            throw e;
+        }
+        if (finishCompaction(compaction)) {
+            forceDirectory(this.file.toPath().getParent());
+        }
+    }
+
+    /**
+     * Returns the compaction of the pending messages, null if the outbox is closed.
+     */
+    synchronized Compaction beginCompaction() {
+        if (this.journal == null) {
+            return null;
+        }
+        return new Compaction(new ArrayList<>(this.pending.values()), this.writePosition, this.rewrites);
+    }
+
+    /**
+     * Switches to the generation written by the compaction.
+     *
+     * @return false if the compaction is void as records were removed from the journal since it was begun
+     */
+    synchronized boolean finishCompaction(Compaction compaction) throws IOException {
+        if (compaction.rewrites != this.rewrites) {
+            compaction.discard();
+            return false;
+        }
+        // records appended since the compaction was begun; not forced to disk, just like the appended records
+        ByteBuffer tail = this.journal.duplicate();
+        tail.limit(this.writePosition).position(compaction.position);
+        int writePosition = compaction.size - 1 + tail.remaining();
+        Path next = getJournalFile(this.generation + 1);
+        try {
+            try (FileChannel out = FileChannel.open(compaction.tmp, StandardOpenOption.WRITE)) {
+                int position = compaction.size - 1;
+                while (tail.hasRemaining()) {
+                    position += out.write(tail, position);
+                }
+                out.write(ByteBuffer.wrap(new byte[] {END}), position);
+            }
+            Files.move(compaction.tmp, next, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            compaction.discard();
+            throw e;
+        }
+
+        FileChannel nextChannel = null;
+        MappedByteBuffer nextJournal;
+        try {
+            nextChannel = FileChannel.open(next, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            nextJournal = nextChannel.map(FileChannel.MapMode.READ_WRITE, 0, this.journal.capacity());
+        } catch (IOException | RuntimeException e) {
+            if (nextChannel != null) {
+                nextChannel.close();
+            }
+            // else it would be loaded on the next start, without the messages appended from now on
+            Files.deleteIfExists(next);
+            throw e;
+        }
+        // unmapped when garbage collected
+        this.journal = nextJournal;
+        this.fileChannel.close();
+        this.fileChannel = nextChannel;
+        this.writePosition = writePosition;
+        this.generation++;
+        this.rewrites++;
+        deleteOldFiles(false);
+        return true;
+    }
+
+    /**
+     * Returns the generation of the journal file with the name, -1 if it isn't one.
+     */
+    private int getGeneration(String name) {
+        String prefix = this.file.getName();
+        if (name.equals(prefix)) {
+            return 0;
+        }
+        if (name.startsWith(prefix + ".")) {
+            try {
+                return Integer.parseInt(name.substring(prefix.length() + 1));
+            } catch (NumberFormatException e) {
+                // e.g. a temporary file
+            }
+        }
+        return -1;
+    }
+
+    private Path getJournalFile(int generation) {
+        return generation == 0 ? this.file.toPath()
+                : this.file.toPath().resolveSibling(this.file.getName() + "." + generation);
+    }
+
+    /**
+     * Deletes the files of older generations and, if no compaction is running, temporary files.
+     */
+    private void deleteOldFiles(boolean temporary) {
+        String[] names = this.file.getParentFile().list();
+        if (names == null) {
+            return;
+        }
+        for (String name : names) {
+            int generation = getGeneration(name);
+            if ((generation >= 0 && generation < this.generation)
+                    || (temporary && name.startsWith(this.file.getName() + ".") && name.endsWith(".tmp"))) {
+                try {
+                    Files.deleteIfExists(this.file.toPath().resolveSibling(name));
+                } catch (IOException e) {
+                    // e.g. on Windows, while it is still mapped
+                    LOGGER.log(Level.FINE, "Could not delete " + name, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes a rename in the directory durable - where the platform supports it.
+     */
+    private static void forceDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // e.g. on Windows, directories can't be opened
+            LOGGER.log(Level.FINE, "Could not force " + dir, e);
+        }
+    }
+
+    private void truncate() {
+        // invalidate the journal with a single write, then clean up
+        this.journal.put(0, END);
+        zero(1, this.writePosition);
+        this.writePosition = 0;
+        this.rewrites++;
+    }
+
+    private void writeEnqueue(Entry entry) {
+        int payload = this.writePosition + 1;
+        this.journal.putLong(payload, entry.id);
+        this.journal.putLong(payload + Long.BYTES, entry.timestamp);
+        this.journal.put(payload + Long.BYTES * 2, entry.record);
+        // type last, so a partially written record is never read
+        this.journal.put(this.writePosition, ENQUEUE);
+        this.writePosition = payload + Long.BYTES * 2 + entry.record.length;
+    }
+
+    private void writeAck(long id) throws IOException {
+        if (!ensureCapacity(1 + Long.BYTES)) {
+            // can't happen after compaction as there's at least one pending message less
+            return;
+        }
+        this.journal.putLong(this.writePosition + 1, id);
+        this.journal.put(this.writePosition, ACK);
+        this.writePosition += 1 + Long.BYTES;
+    }
+
+    private void zero(int from, int to) {
+        for (int position = from; position < to; position += ZEROS.length) {
+            this.journal.put(position, ZEROS, 0, Math.min(ZEROS.length, to - position));
+        }
+    }
+
+    private static IMMessageTarget readTarget(String xml) {
+        try {
+            return (IMMessageTarget) Jenkins.XSTREAM2.fromXML(xml);
+        } catch (RuntimeException e) {
+            // e.g. the plugin providing the target class was removed
+            LOGGER.log(Level.WARNING, "Discarding message for unreadable target " + xml, e);
+            return null;
+        }
+    }
+
+    private String readString() {
+        byte[] bytes = new byte[this.journal.getInt()];
+        this.journal.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] encode(String channel, String targetXml, String text) {
+        byte[] channelBytes = channel.getBytes(StandardCharsets.UTF_8);
+        byte[] targetBytes = targetXml.getBytes(StandardCharsets.UTF_8);
+        byte[] textBytes = text.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(
+                Integer.BYTES * 3 + channelBytes.length + targetBytes.length + textBytes.length);
+        buffer.putInt(channelBytes.length).put(channelBytes);
+        buffer.putInt(targetBytes.length).put(targetBytes);
+        buffer.putInt(textBytes.length).put(textBytes);
+        return buffer.array();
+    }
+
+    static final class Entry {
+        private final long id;
+        private final long timestamp;
+        private final OutboundMessage message;
+        /**
+         * Encoded channel, target and text - kept for compaction.
+         */
+        private final byte[] record;
+
+        Entry(long id, long timestamp, OutboundMessage message, byte[] record) {
+            this.id = id;
+            this.timestamp = timestamp;
+            this.message = message;
+            this.record = record;
+        }
+
+        long getId() {
+            return this.id;
+        }
+
+        OutboundMessage getMessage() {
+            return this.message;
+        }
+
+        boolean isExpired(long now, long ttlMillis) {
+            return now - this.timestamp >= ttlMillis;
+        }
+
+        /**
+         * Returns the size of the ENQUEUE record.
+         */
+        int size() {
+            return 1 + Long.BYTES * 2 + this.record.length;
+        }
+    }
+
+    /**
+     * The pending messages at the start of a compaction, written to a temporary file.
+     */
+    final class Compaction {
+        private final List<Entry> entries;
+        // of the first record not in the entries
+        private final int position;
+        private final long rewrites;
+        // of the compacted records, including the END marker
+        private final int size;
+        private Path tmp;
+
+        Compaction(List<Entry> entries, int position, long rewrites) {
+            this.entries = entries;
+            this.position = position;
+            this.rewrites = rewrites;
+            int size = 1;
+            for (Entry entry : entries) {
+                size += entry.size();
+            }
+            this.size = size;
+        }
+
+        /**
+         * Writes the records and forces them to disk. Doesn't need the lock of the outbox.
+         */
+        void write() throws IOException {
+            ByteBuffer compacted = ByteBuffer.allocate(this.size);
+            for (Entry entry : this.entries) {
+                compacted.put(ENQUEUE).putLong(entry.id).putLong(entry.timestamp).put(entry.record);
+            }
+            compacted.put(END);
+            compacted.flip();
+            this.tmp = Files.createTempFile(file.toPath().getParent(), file.getName() + ".", ".tmp");
+            try (FileChannel out = FileChannel.open(this.tmp, StandardOpenOption.WRITE)) {
+                while (compacted.hasRemaining()) {
+                    out.write(compacted);
+                }
+                out.force(true);
+            }
+        }
+
+        void discard() throws IOException {
+            if (this.tmp != null) {
+                Files.deleteIfExists(this.tmp);
+            }
+        }
+    }
+}
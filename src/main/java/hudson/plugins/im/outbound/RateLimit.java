@@ -0,0 +1,80 @@
+package hudson.plugins.im.outbound;
+
+import java.util.logging.Logger;
+
+/**
+ * A rate limit for sending messages: a steady rate of messages per second
+ * and a burst of messages which may be sent at once.
+ *
+ * @see TokenBucket
+ * @see RateLimiter
+ */
+public final class RateLimit {
+
+    private static final Logger LOGGER = Logger.getLogger(RateLimit.class.getName());
+
+    private final double messagesPerSecond;
+    private final int burst;
+
+    /**
+     * @param messagesPerSecond the sustained rate. Must be positive.
+     * @param burst the number of messages which may be sent at once. At least 1.
+     */
+    public RateLimit(double messagesPerSecond, int burst) {
+        if (!(messagesPerSecond > 0)) {
+            throw new IllegalArgumentException("rate must be positive: " + messagesPerSecond);
+        }
+        this.messagesPerSecond = messagesPerSecond;
+        this.burst = Math.max(1, burst);
+    }
+
+    public double getMessagesPerSecond() {
+        return this.messagesPerSecond;
+    }
+
+    public int getBurst() {
+        return this.burst;
+    }
+
+    /**
+     * Parses a rate limit in the format <code>rate[/burst]</code>, e.g. <code>0.5/3</code>
+     * for one message every 2 seconds with bursts of up to 3 messages.
+     * If no burst is given, it defaults to 1.
+     *
+     * @return the rate limit or null if the string is empty or invalid
+     */
+    public static RateLimit parse(String s) {
+        if (s == null || s.isBlank()) {
+            return null;
+        }
+        try {
+            int slash = s.indexOf('/');
+            if (slash == -1) {
+                return new RateLimit(Double.parseDouble(s.trim()), 1);
+            }
+            return new RateLimit(Double.parseDouble(s.substring(0, slash).trim()),
+                    Integer.parseInt(s.substring(slash + 1).trim()));
+        } catch (IllegalArgumentException e) {
+            LOGGER.warning("Invalid rate limit '" + s + "': " + e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof RateLimit)) return false;
+        RateLimit other = (RateLimit) o;
+        return Double.compare(this.messagesPerSecond, other.messagesPerSecond) == 0 && this.burst == other.burst;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Double.hashCode(this.messagesPerSecond) + this.burst;
+    }
+
+    @Override
+    public String toString() {
+        return this.messagesPerSecond + "/" + this.burst;
+    }
+}
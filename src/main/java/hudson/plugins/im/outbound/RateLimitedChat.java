@@ -0,0 +1,107 @@
+package hudson.plugins.im.outbound;
+
+import hudson.plugins.im.IMChat;
+import hudson.plugins.im.IMException;
+import hudson.plugins.im.IMMessageListener;
+import hudson.plugins.im.IMPublisherDescriptor;
+
+/**
+ * {@link IMChat} which throttles {@link #sendMessage(String)}
+ * according to the limits of the {@link RateLimiter}.
+ * A chat shares the bucket of the target with the same address, see {@link IMChat#getChatId()},
+ * so replies and notifications to the chat are limited together.
+ * A chat without id has its own bucket.
+ */
+public final class RateLimitedChat implements IMChat {
+
+    private final IMChat delegate;
+    private final String connectionKey;
+    private final RateLimit connectionLimit;
+    private final RateLimit targetLimit;
+    // the id of the chat, null if it has none
+    private final String address;
+    // for chats without id
+    private final TokenBucket chatBucket;
+
+    private RateLimitedChat(IMChat delegate, String connectionKey, RateLimit connectionLimit, RateLimit targetLimit,
+            String address, TokenBucket chatBucket) {
+        this.delegate = delegate;
+        this.connectionKey = connectionKey;
+        this.connectionLimit = connectionLimit;
+        this.targetLimit = targetLimit;
+        this.address = address;
+        this.chatBucket = chatBucket;
+    }
+
+    /**
+     * Wraps the chat if there are any limits to enforce.
+     *
+     * @param connectionKey identifies the connection - e.g. the name of the descriptor class
+     * @param descriptor declares the limits of the protocol. May be null.
+     * @return the rate limited chat or the chat itself if there are no limits
+     */
+    public static IMChat wrap(IMChat chat, String connectionKey, IMPublisherDescriptor descriptor) {
+        if (chat instanceof RateLimitedChat) {
+            return chat;
+        }
+        RateLimit connectionLimit = descriptor != null ? descriptor.getConnectionRateLimit() : null;
+        RateLimit targetLimit = descriptor != null ? descriptor.getTargetRateLimit() : null;
+        RateLimiter limiter = RateLimiter.get();
+        if (!limiter.isLimited(connectionLimit, targetLimit)) {
+            return chat;
+        }
+        String address = chat.getChatId();
+        return new RateLimitedChat(chat, connectionKey, connectionLimit, targetLimit,
+                address, address == null ? limiter.createTargetBucket(targetLimit) : null);
+    }
+
+    @Override
+    public void sendMessage(String message) throws IMException {
+        RateLimiter limiter = RateLimiter.get();
+        TokenBucket targetBucket = this.address != null
+                ? limiter.getTargetBucket(this.connectionKey, this.address, this.targetLimit)
+                : this.chatBucket;
+        try {
+            limiter.acquire(this.connectionKey, this.connectionLimit, targetBucket);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IMException(e);
+        }
+        this.delegate.sendMessage(message);
+    }
+
+    @Override
+    public String getNickName(String senderId) {
+        return this.delegate.getNickName(senderId);
+    }
+
+    @Override
+    public String getIMId(String senderId) {
+        return this.delegate.getIMId(senderId);
+    }
+
+    @Override
+    public boolean isMultiUserChat() {
+        return this.delegate.isMultiUserChat();
+    }
+
+    @Override
+    public boolean isCommandsAccepted() {
+        return this.delegate.isCommandsAccepted();
+    }
+
+    @Override
+    public String getChatId() {
+        return this.delegate.getChatId();
+    }
+
+    @Override
+    public void addMessageListener(IMMessageListener listener) {
+        this.delegate.addMessageListener(listener);
+    }
+
+    @Override
+    public void removeMessageListener(IMMessageListener listener) {
+        this.delegate.removeMessageListener(listener);
+    }
+}
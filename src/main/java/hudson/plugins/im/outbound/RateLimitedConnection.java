@@ -0,0 +1,90 @@
+package hudson.plugins.im.outbound;
+
+import hudson.plugins.im.IMConnection;
+import hudson.plugins.im.IMConnectionListener;
+import hudson.plugins.im.IMException;
+import hudson.plugins.im.IMMessageTarget;
+import hudson.plugins.im.IMPresence;
+import hudson.plugins.im.IMPublisherDescriptor;
+
+/**
+ * {@link IMConnection} which throttles {@link #send(IMMessageTarget, String)}
+ * according to the limits of the {@link RateLimiter}.
+ */
+public final class RateLimitedConnection implements IMConnection {
+
+    private final IMConnection delegate;
+    private final String connectionKey;
+    private final RateLimit connectionLimit;
+    private final RateLimit targetLimit;
+
+    private RateLimitedConnection(IMConnection delegate, String connectionKey,
+            RateLimit connectionLimit, RateLimit targetLimit) {
+        this.delegate = delegate;
+        this.connectionKey = connectionKey;
+        this.connectionLimit = connectionLimit;
+        this.targetLimit = targetLimit;
+    }
+
+    /**
+     * Wraps the connection if there are any limits to enforce.
+     *
+     * @param connectionKey identifies the connection - e.g. the name of the descriptor class
+     * @param descriptor declares the limits of the protocol. May be null.
+     * @return the rate limited connection or the connection itself if there are no limits
+     */
+    public static IMConnection wrap(IMConnection connection, String connectionKey, IMPublisherDescriptor descriptor) {
+        if (connection instanceof RateLimitedConnection) {
+            return connection;
+        }
+        RateLimit connectionLimit = descriptor != null ? descriptor.getConnectionRateLimit() : null;
+        RateLimit targetLimit = descriptor != null ? descriptor.getTargetRateLimit() : null;
+        if (!RateLimiter.get().isLimited(connectionLimit, targetLimit)) {
+            return connection;
+        }
+        return new RateLimitedConnection(connection, connectionKey, connectionLimit, targetLimit);
+    }
+
+    @Override
+    public void send(IMMessageTarget target, String text) throws IMException {
+        RateLimiter limiter = RateLimiter.get();
+        try {
+            limiter.acquire(this.connectionKey, this.connectionLimit,
+                    limiter.getTargetBucket(this.connectionKey, target, this.targetLimit));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IMException(e);
+        }
+        this.delegate.send(target, text);
+    }
+
+    @Override
+    public boolean connect() {
+        return this.delegate.connect();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return this.delegate.isConnected();
+    }
+
+    @Override
+    public void close() {
+        this.delegate.close();
+    }
+
+    @Override
+    public void setPresence(IMPresence presence, String statusMessage) throws IMException {
+        this.delegate.setPresence(presence, statusMessage);
+    }
+
+    @Override
+    public void addConnectionListener(IMConnectionListener listener) {
+        this.delegate.addConnectionListener(listener);
+    }
+
+    @Override
+    public void removeConnectionListener(IMConnectionListener listener) {
+        this.delegate.removeConnectionListener(listener);
+    }
+}
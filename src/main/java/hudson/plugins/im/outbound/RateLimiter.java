@@ -0,0 +1,202 @@
+package hudson.plugins.im.outbound;
+
+import hudson.plugins.im.GroupChatIMMessageTarget;
+import hudson.plugins.im.IMMessageTarget;
+import hudson.plugins.im.IMMetrics;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jenkins.util.SystemProperties;
+
+/**
+ * Throttles outgoing messages with a global, a per-connection and a per-target {@link TokenBucket}.
+ * <p>
+ * Messages exceeding the rate are not rejected, but the sending thread waits
+ * until it may send. For build notifications that's one of the threads of the
+ * {@link OutboundDispatcher}, so the messages pile up in its queue.
+ * <p>
+ * Protocol plugins declare their limits via
+ * {@link hudson.plugins.im.IMPublisherDescriptor#getConnectionRateLimit()} and
+ * {@link hudson.plugins.im.IMPublisherDescriptor#getTargetRateLimit()}.
+ * Defaults for all protocols can be set with the system properties
+ * (prefixed by the name of this class) <code>.global</code>, <code>.perConnection</code>
+ * and <code>.perTarget</code> in the format described in {@link RateLimit#parse(String)}.
+ * <p>
+ * Targets are identified by their address, so notifications to a chat and the replies
+ * of the bot in that chat share one bucket.
+ *
+ * @see RateLimitedConnection
+ * @see RateLimitedChat
+ */
+public final class RateLimiter {
+
+    private static final Logger LOGGER = Logger.getLogger(RateLimiter.class.getName());
+
+    private static final String PROPERTY_PREFIX = RateLimiter.class.getName();
+
+    private static final RateLimiter INSTANCE = new RateLimiter(
+            RateLimit.parse(SystemProperties.getString(PROPERTY_PREFIX + ".global")),
+            RateLimit.parse(SystemProperties.getString(PROPERTY_PREFIX + ".perConnection")),
+            RateLimit.parse(SystemProperties.getString(PROPERTY_PREFIX + ".perTarget")));
+
+    static {
+        IMMetrics.setQueueDepth(IMMetrics.Queue.THROTTLED, INSTANCE::getQueueDepth);
+    }
+
+    private final TokenBucket globalBucket;
+    private final RateLimit defaultConnectionLimit;
+    private final RateLimit defaultTargetLimit;
+
+    private final ConcurrentMap<String, TokenBucket> connectionBuckets = new ConcurrentHashMap<>();
+    // (connection key, target address) -> bucket
+    private final ConcurrentMap<Map.Entry<String, String>, TokenBucket> targetBuckets = new ConcurrentHashMap<>();
+
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder throttledNanos = new LongAdder();
+
+    RateLimiter(RateLimit globalLimit, RateLimit defaultConnectionLimit, RateLimit defaultTargetLimit) {
+        this.globalBucket = globalLimit != null ? new TokenBucket(globalLimit) : null;
+        this.defaultConnectionLimit = defaultConnectionLimit;
+        this.defaultTargetLimit = defaultTargetLimit;
+    }
+
+    public static RateLimiter get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns if messages of a connection with the given limits need to be throttled at all.
+     */
+    public boolean isLimited(RateLimit connectionLimit, RateLimit targetLimit) {
+        return this.globalBucket != null
+            || connectionLimit != null || this.defaultConnectionLimit != null
+            || targetLimit != null || this.defaultTargetLimit != null;
+    }
+
+    /**
+     * Returns the bucket for a target of a connection.
+     *
+     * @param limit the limit declared by the protocol or null to use the default
+     * @return the bucket or null if there's no limit per target
+     */
+    public TokenBucket getTargetBucket(String connectionKey, IMMessageTarget target, RateLimit limit) {
+        return getTargetBucket(connectionKey, getAddress(target), limit);
+    }
+
+    /**
+     * Returns the bucket for a target of a connection.
+     *
+     * @param address the address of the target - e.g. the name of the IRC channel,
+     *        see {@link hudson.plugins.im.IMChat#getChatId()}
+     * @param limit the limit declared by the protocol or null to use the default
+     * @return the bucket or null if there's no limit per target
+     */
+    public TokenBucket getTargetBucket(String connectionKey, String address, RateLimit limit) {
+        RateLimit effective = limit != null ? limit : this.defaultTargetLimit;
+        if (effective == null) {
+            return null;
+        }
+        return getBucket(this.targetBuckets, new SimpleImmutableEntry<>(connectionKey, address), effective);
+    }
+
+    /**
+     * Creates a bucket for a single target which can't be addressed - e.g. a chat without id -
+     * using the given or the default limit.
+     *
+     * @return the bucket or null if there's no limit per target
+     */
+    public TokenBucket createTargetBucket(RateLimit limit) {
+        RateLimit effective = limit != null ? limit : this.defaultTargetLimit;
+        return effective != null ? new TokenBucket(effective) : null;
+    }
+
+    /**
+     * Returns the address of the target: the name of a group chat or else its string representation,
+     * e.g. the IM id of a user.
+     */
+    static String getAddress(IMMessageTarget target) {
+        if (target instanceof GroupChatIMMessageTarget) {
+            // equals() also compares the password and the notification only flag
+            return ((GroupChatIMMessageTarget) target).getName();
+        }
+        return target.toString();
+    }
+
+    /**
+     * Waits until a message may be sent.
+     *
+     * @param connectionKey identifies the connection
+     * @param connectionLimit the limit declared by the protocol or null to use the default
+     * @param targetBucket the bucket of the target or null if there is no limit per target
+     */
+    public void acquire(String connectionKey, RateLimit connectionLimit, TokenBucket targetBucket)
+            throws InterruptedException {
+        long now = System.nanoTime();
+        long wait = 0;
+        if (this.globalBucket != null) {
+            wait = this.globalBucket.reserve(now);
+        }
+        RateLimit effective = connectionLimit != null ? connectionLimit : this.defaultConnectionLimit;
+        if (effective != null) {
+            wait = Math.max(wait, getBucket(this.connectionBuckets, connectionKey, effective).reserve(now));
+        }
+        if (targetBucket != null) {
+            wait = Math.max(wait, targetBucket.reserve(now));
+        }
+
+        if (wait > 0) {
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Throttling message via " + connectionKey + " for " + TimeUnit.NANOSECONDS.toMillis(wait) + "ms");
+            }
+            this.waiting.incrementAndGet();
+            this.throttled.increment();
+            this.throttledNanos.add(wait);
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } finally {
+                this.waiting.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of messages currently waiting to be sent because of throttling.
+     */
+    public int getQueueDepth() {
+        return this.waiting.get();
+    }
+
+    /**
+     * Returns the number of messages which had to wait because of throttling.
+     */
+    public long getThrottledCount() {
+        return this.throttled.sum();
+    }
+
+    /**
+     * Returns the total time messages had to wait because of throttling.
+     */
+    public long getThrottleTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(this.throttledNanos.sum());
+    }
+
+    private static <K> TokenBucket getBucket(ConcurrentMap<K, TokenBucket> buckets, K key, RateLimit limit) {
+        TokenBucket bucket = buckets.computeIfAbsent(key, k -> new TokenBucket(limit));
+        if (!bucket.getLimit().equals(limit)) {
+            // limit was reconfigured
+            TokenBucket newBucket = new TokenBucket(limit);
+            buckets.replace(key, bucket, newBucket);
+            return newBucket;
+        }
+        return bucket;
+    }
+}
@@ -0,0 +1,150 @@
+package hudson.plugins.im.outbound;
+
+import hudson.plugins.im.IMMessageTarget;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jenkins.model.Jenkins;
+
+/**
+ * Overflow file of a single {@link OutboundDispatcher} lane.
+ * <p>
+ * Once a message has been spilled, all following messages of the lane are spilled, too,
+ * until the file has been read completely. That way the order of the messages is kept.
+ * <p>
+ * This is an overflow buffer only - not a durable store. The file is truncated when
+ * the lane is created, i.e. on each start of Jenkins.
+ */
+final class SpillFile {
+
+    private static final Logger LOGGER = Logger.getLogger(SpillFile.class.getName());
+
+    private final File file;
+    private RandomAccessFile raf;
+    private long readPosition;
+    private boolean active;
+
+    SpillFile(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Returns true if there are spilled messages which haven't been read, yet.
+     */
+    synchronized boolean isActive() {
+        return this.active;
+    }
+
+    /**
+     * Appends the message to the file.
+     *
+     * @return false if the message couldn't be written
+     */
+    synchronized boolean append(OutboundMessage msg) {
+        try {
+            open();
+            this.raf.seek(this.raf.length());
+            writeString(msg.getChannel());
+            writeString(Jenkins.XSTREAM2.toXML(msg.getTarget()));
+            writeString(msg.getText());
+            long[] ids = msg.getOutboxIds();
+            this.raf.writeInt(ids.length);
+            for (long id : ids) {
+                this.raf.writeLong(id);
+            }
+            this.active = true;
+            return true;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Could not spill message for " + msg + " to " + this.file, e);
+            return false;
+        }
+    }
+
+    /**
+     * Reads the next spilled message.
+     *
+     * @return the next message or null if all spilled messages have been read.
+     */
+    synchronized OutboundMessage next() {
+        if (!this.active) {
+            return null;
+        }
+
+        try {
+            if (this.readPosition >= this.raf.length()) {
+                reset();
+                return null;
+            }
+            this.raf.seek(this.readPosition);
+            String channel = readString();
+            IMMessageTarget target = (IMMessageTarget) Jenkins.XSTREAM2.fromXML(readString());
+            String text = readString();
+            long[] ids = new long[this.raf.readInt()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = this.raf.readLong();
+            }
+            this.readPosition = this.raf.getFilePointer();
+            return new OutboundMessage(channel, target, text, ids);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Could not read spilled messages from " + this.file + ". Discarding them.", e);
+            try {
+                reset();
+            } catch (IOException e1) {
+                LOGGER.log(Level.WARNING, "Could not truncate " + this.file, e1);
+                this.active = false;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Truncates the file.
+     */
+    synchronized void reset() throws IOException {
+        if (this.raf != null) {
+            this.raf.setLength(0);
+        } else if (this.file.exists() && !this.file.delete()) {
+            throw new IOException("Could not delete " + this.file);
+        }
+        this.readPosition = 0;
+        this.active = false;
+    }
+
+    synchronized void close() {
+        if (this.raf != null) {
+            try {
+                this.raf.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            this.raf = null;
+        }
+    }
+
+    private void open() throws IOException {
+        if (this.raf == null) {
+            File dir = this.file.getParentFile();
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Could not create " + dir);
+            }
+            this.raf = new RandomAccessFile(this.file, "rw");
+        }
+    }
+
+    private void writeString(String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        this.raf.writeInt(bytes.length);
+        this.raf.write(bytes);
+    }
+
+    private String readString() throws IOException {
+        byte[] bytes = new byte[this.raf.readInt()];
+        this.raf.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,50 @@
+package hudson.plugins.im.outbound;
+
+/**
+ * Token bucket which enforces a {@link RateLimit}.
+ * <p>
+ * Callers don't get rejected if the bucket is empty. Instead they reserve a future token
+ * and are told how long to wait before they may send. As reservations are handed out
+ * in the order of the calls, waiting callers are served first come, first served.
+ */
+public final class TokenBucket {
+
+    private final RateLimit limit;
+    private final double tokensPerNano;
+    private double tokens;
+    private long lastRefill;
+
+    public TokenBucket(RateLimit limit) {
+        this(limit, System.nanoTime());
+    }
+
+    TokenBucket(RateLimit limit, long now) {
+        this.limit = limit;
+        this.tokensPerNano = limit.getMessagesPerSecond() / 1e9;
+        this.tokens = limit.getBurst();
+        this.lastRefill = now;
+    }
+
+    public RateLimit getLimit() {
+        return this.limit;
+    }
+
+    /**
+     * Reserves a token.
+     *
+     * @param now the current value of {@link System#nanoTime()}
+     * @return the number of nanoseconds the caller must wait before using the token.
+     *         0 if it may be used immediately.
+     */
+    synchronized long reserve(long now) {
+        if (now > this.lastRefill) {
+            this.tokens = Math.min(this.limit.getBurst(), this.tokens + (now - this.lastRefill) * this.tokensPerNano);
+            this.lastRefill = now;
+        }
+        this.tokens -= 1;
+        if (this.tokens >= 0) {
+            return 0;
+        }
+        return (long) Math.ceil(-this.tokens / this.tokensPerNano);
+    }
+}
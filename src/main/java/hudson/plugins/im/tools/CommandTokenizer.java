@@ -0,0 +1,137 @@
+package hudson.plugins.im.tools;
+
+import java.util.Arrays;
+
+/**
+ * Splits a bot command line into words in a single pass.
+ * <p>
+ * Words are separated by whitespace. Double quotes group words containing whitespace,
+ * e.g. <code>build "my job"</code>; they may also appear within a word
+ * (<code>a"b c"</code> is the single word <code>ab c</code>). A quote without a
+ * closing quote is taken literally. A backslash escapes a following quote,
+ * backslash or - outside of quotes - whitespace; any other backslash is taken literally.
+ * Note that the former implementation of {@link MessageHelper#extractCommandLine(String)}
+ * took all backslashes literally, so <code>\\</code> and <code>\"</code> mean something
+ * different now.
+ * <p>
+ * Words without quotes or escapes are copied directly from the input;
+ * a buffer is only allocated for words which need unescaping.
+ */
+public final class CommandTokenizer {
+
+    private static final String[] NO_WORDS = new String[0];
+
+    private CommandTokenizer() {
+    }
+
+    /**
+     * Splits the whole line into words.
+     */
+    public static String[] tokenize(CharSequence line) {
+        return tokenize(line, 0, line.length());
+    }
+
+    /**
+     * Splits the given range of the line into words.
+     *
+     * @param start index of the first character, inclusive
+     * @param end index of the last character, exclusive
+     */
+    public static String[] tokenize(CharSequence line, int start, int end) {
+        String[] words = NO_WORDS;
+        int count = 0;
+        StringBuilder buf = null;
+        // once a quote hasn't got a closing quote, no later one has either
+        boolean unmatchedQuote = false;
+
+        int i = start;
+        while (true) {
+            while (i < end && Character.isWhitespace(line.charAt(i))) {
+                i++;
+            }
+            if (i >= end) {
+                break;
+            }
+
+            int wordStart = i;
+            // true as long as the word can be copied from the input as is
+            boolean plain = true;
+            while (i < end) {
+                char c = line.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    break;
+                }
+                if (c == '"' && !unmatchedQuote) {
+                    int close = findClosingQuote(line, i + 1, end);
+                    if (close >= 0) {
+                        if (plain) {
+                            buf = startBuffer(buf, line, wordStart, i);
+                            plain = false;
+                        }
+                        appendQuoted(buf, line, i + 1, close);
+                        i = close + 1;
+                        continue;
+                    }
+                    unmatchedQuote = true;
+                } else if (c == '\\' && i + 1 < end && isEscapable(line.charAt(i + 1), false)) {
+                    if (plain) {
+                        buf = startBuffer(buf, line, wordStart, i);
+                        plain = false;
+                    }
+                    buf.append(line.charAt(i + 1));
+                    i += 2;
+                    continue;
+                }
+                if (!plain) {
+                    buf.append(c);
+                }
+                i++;
+            }
+
+            if (count == words.length) {
+                words = Arrays.copyOf(words, Math.max(4, count * 2));
+            }
+            words[count++] = plain ? line.subSequence(wordStart, i).toString() : buf.toString();
+        }
+        return count == words.length ? words : Arrays.copyOf(words, count);
+    }
+
+    private static StringBuilder startBuffer(StringBuilder buf, CharSequence line, int start, int end) {
+        if (buf == null) {
+            buf = new StringBuilder(32);
+        } else {
+            buf.setLength(0);
+        }
+        return buf.append(line, start, end);
+    }
+
+    /**
+     * Returns the index of the next unescaped quote or -1.
+     */
+    private static int findClosingQuote(CharSequence line, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                return i;
+            }
+            if (c == '\\' && i + 1 < end && isEscapable(line.charAt(i + 1), true)) {
+                i++;
+            }
+        }
+        return -1;
+    }
+
+    private static void appendQuoted(StringBuilder buf, CharSequence line, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = line.charAt(i);
+            if (c == '\\' && i + 1 < end && isEscapable(line.charAt(i + 1), true)) {
+                c = line.charAt(++i);
+            }
+            buf.append(c);
+        }
+    }
+
+    private static boolean isEscapable(char c, boolean quoted) {
+        return c == '"' || c == '\\' || (!quoted && Character.isWhitespace(c));
+    }
+}
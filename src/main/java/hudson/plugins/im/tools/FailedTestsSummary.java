@@ -0,0 +1,304 @@
+package hudson.plugins.im.tools;
+
+import hudson.Extension;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import hudson.tasks.junit.CaseResult;
+import hudson.tasks.test.AbstractTestResultAction;
+import hudson.tasks.test.TestResult;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jenkins.util.SystemProperties;
+
+/**
+ * A compact summary of the failed tests of a build: the fail and total counts
+ * plus the first failing tests - by default the youngest - with their age and duration.
+ * <p>
+ * Loading the test report of a build parses all of its test results. So the summary
+ * is written to <code>instant-messaging-failed-tests.bin</code> in the build directory
+ * once the build has completed and read from there afterwards. Reading it only holds
+ * the listed tests in memory.
+ * <p>
+ * The maximum number of listed tests can be configured with the system property
+ * <code>hudson.plugins.im.tools.FailedTestsSummary.maxTests</code> (default: 50).
+ * Which tests are listed first is set by <code>hudson.plugins.im.tools.FailedTestsSummary.order</code>,
+ * see {@link Order} (default: <code>age</code>). As the listed tests are stored,
+ * a changed order only applies to builds which complete afterwards.
+ */
+public final class FailedTestsSummary {
+
+    private static final Logger LOGGER = Logger.getLogger(FailedTestsSummary.class.getName());
+
+    static final String FILE_NAME = "instant-messaging-failed-tests.bin";
+
+    static final int MAX_TESTS = Math.max(0, SystemProperties.getInteger(FailedTestsSummary.class.getName() + ".maxTests", 50));
+
+    private static final int MAGIC = 0x494d4654; // "IMFT"
+    private static final int VERSION = 1;
+
+    static final Order ORDER = Order.forName(
+            SystemProperties.getString(FailedTestsSummary.class.getName() + ".order"), Order.AGE);
+
+    // the last summary computed per test results, so the messages for a running build share it
+    private static final Map<Object, FailedTestsSummary> COMPUTED = new WeakHashMap<>();
+
+    private final int failCount;
+    private final int totalCount;
+    private final List<FailedTest> tests;
+    // maximum number of tests and the order the summary was computed for; not persisted
+    private int maxTests = -1;
+    private Order order;
+
+    FailedTestsSummary(int failCount, int totalCount, List<FailedTest> tests) {
+        this.failCount = failCount;
+        this.totalCount = totalCount;
+        this.tests = Collections.unmodifiableList(tests);
+    }
+
+    /**
+     * Returns the summary of the failed tests of the build, or <code>null</code> if it has no test results.
+     */
+    public static FailedTestsSummary of(Run<?, ?> run) {
+        File file = new File(run.getRootDir(), FILE_NAME);
+        if (file.isFile()) {
+            try {
+                return read(file, MAX_TESTS);
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Could not read " + file + ", recomputing it", e);
+            }
+        }
+
+        FailedTestsSummary summary = compute(run, MAX_TESTS, ORDER);
+        if (summary != null && !run.isBuilding()) {
+            // test results may still be added while the build is running
+            summary.save(file);
+        }
+        return summary;
+    }
+
+    @SuppressWarnings("rawtypes")
+    static FailedTestsSummary compute(Run<?, ?> run, int maxTests, Order order) {
+        AbstractTestResultAction action = run.getAction(AbstractTestResultAction.class);
+        if (action == null) {
+            return null;
+        }
+        int failCount = action.getFailCount();
+        int totalCount = action.getTotalCount();
+        synchronized (COMPUTED) {
+            FailedTestsSummary summary = COMPUTED.get(action);
+            if (summary != null && summary.failCount == failCount && summary.totalCount == totalCount
+                    && summary.maxTests == maxTests && summary.order == order) {
+                return summary;
+            }
+        }
+
+        List<FailedTest> tests = new ArrayList<>();
+        if (failCount > 0) {
+            TopK<TestResult> first = new TopK<>(maxTests, order.comparator);
+            for (Object o : action.getFailedTests()) {
+                first.offer((TestResult) o);
+            }
+            // the URL is only built for the selected tests
+            for (TestResult result : first.toList()) {
+                tests.add(new FailedTest(result.getFullName(), ageOf(result), result.getDuration(),
+                        MessageHelper.getTestPath(result)));
+            }
+        }
+        FailedTestsSummary summary = new FailedTestsSummary(failCount, totalCount, tests);
+        summary.maxTests = maxTests;
+        summary.order = order;
+        synchronized (COMPUTED) {
+            COMPUTED.put(action, summary);
+        }
+        return summary;
+    }
+
+    private static int ageOf(TestResult result) {
+        return result instanceof CaseResult ? ((CaseResult) result).getAge() : 0;
+    }
+
+    /**
+     * Reads a summary, keeping at most the given number of tests.
+     */
+    static FailedTestsSummary read(File file, int maxTests) throws IOException {
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+            if (data.readInt() != MAGIC || data.readInt() != VERSION) {
+                throw new IOException("Unknown format");
+            }
+            int failCount = data.readInt();
+            int totalCount = data.readInt();
+            int count = Math.min(data.readInt(), maxTests);
+            List<FailedTest> tests = new ArrayList<>(Math.max(0, count));
+            for (int i = 0; i < count; i++) {
+                tests.add(new FailedTest(data.readUTF(), data.readInt(), data.readFloat(), data.readUTF()));
+            }
+            return new FailedTestsSummary(failCount, totalCount, tests);
+        }
+    }
+
+    /**
+     * Writes the summary. The file is replaced atomically, so readers never see a partial one.
+     */
+    void write(File file) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp.toPath())) {
+            DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+            data.writeInt(MAGIC);
+            data.writeInt(VERSION);
+            data.writeInt(this.failCount);
+            data.writeInt(this.totalCount);
+            data.writeInt(this.tests.size());
+            for (FailedTest test : this.tests) {
+                data.writeUTF(test.fullName);
+                data.writeInt(test.age);
+                data.writeFloat(test.duration);
+                data.writeUTF(test.path);
+            }
+            data.flush();
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void save(File file) {
+        try {
+            write(file);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not write " + file, e);
+        }
+    }
+
+    public int getFailCount() {
+        return this.failCount;
+    }
+
+    public int getTotalCount() {
+        return this.totalCount;
+    }
+
+    /**
+     * Returns the first failing tests in the configured {@link Order}, at most as many as configured.
+     */
+    public List<FailedTest> getTests() {
+        return this.tests;
+    }
+
+    /**
+     * Which failing tests are listed first. Ties are broken by name.
+     */
+    public enum Order {
+
+        /**
+         * The youngest failing tests, i.e. those which started failing most recently.
+         */
+        AGE(Comparator.comparingInt(FailedTestsSummary::ageOf)),
+
+        /**
+         * The slowest failing tests.
+         */
+        DURATION(Comparator.comparing(TestResult::getDuration, Comparator.reverseOrder()));
+
+        private final Comparator<TestResult> comparator;
+
+        Order(Comparator<TestResult> comparator) {
+            this.comparator = comparator.thenComparing(TestResult::getFullName);
+        }
+
+        /**
+         * Returns the order with the given name (case insensitive)
+         * or the given default if there is no such order.
+         */
+        public static Order forName(String name, Order defaultOrder) {
+            if (name != null) {
+                for (Order order : values()) {
+                    if (order.name().equalsIgnoreCase(name.trim())) {
+                        return order;
+                    }
+                }
+            }
+            return defaultOrder;
+        }
+    }
+
+    /**
+     * A failed test.
+     */
+    public static final class FailedTest {
+        private final String fullName;
+        private final int age;
+        private final float duration;
+        // relative to the build's URL
+        private final String path;
+
+        FailedTest(String fullName, int age, float duration, String path) {
+            this.fullName = fullName;
+            this.age = age;
+            this.duration = duration;
+            this.path = path;
+        }
+
+        public String getFullName() {
+            return this.fullName;
+        }
+
+        /**
+         * Returns for how many builds the test has been failing; 0 if unknown.
+         */
+        public int getAge() {
+            return this.age;
+        }
+
+        /**
+         * Returns the duration of the test in seconds.
+         */
+        public float getDuration() {
+            return this.duration;
+        }
+
+        /**
+         * Returns the full URL to the test details page.
+         */
+        public String getUrl(Run<?, ?> run) {
+            return MessageHelper.getBuildURL(run) + this.path;
+        }
+    }
+
+    /**
+     * Writes the summary when a build completes - i.e. after its test results have been recorded.
+     */
+    @Extension
+    @SuppressWarnings("rawtypes")
+    public static final class RunEvents extends RunListener<Run> {
+
+        @Override
+        public void onCompleted(Run r, TaskListener listener) {
+            try {
+                FailedTestsSummary summary = compute(r, MAX_TESTS, ORDER);
+                if (summary != null) {
+                    summary.save(new File(r.getRootDir(), FILE_NAME));
+                }
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Could not summarize the failed tests of " + r, e);
+            }
+        }
+    }
+}
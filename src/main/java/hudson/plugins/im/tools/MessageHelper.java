@@ -8,10 +8,6 @@ import hudson.tasks.test.AbstractTestResultAction;
 import hudson.tasks.test.TestObject;
 
 import java.lang.reflect.Array;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.regex.Pattern;
 
 import jenkins.model.Jenkins;
 import org.apache.commons.lang.StringUtils;
@@ -23,8 +19,6 @@ import org.apache.commons.lang.StringUtils;
  * @author kutzi
  */
 public class MessageHelper {
-    private final static Pattern SPACE_PATTERN = Pattern.compile("\\s");
-    private final static String QUOTE = "\"";
 
     /**
      * Returns the full URL to the build details page for a given build.
@@ -54,7 +48,13 @@ public class MessageHelper {
      * Returns the full URL to the test details page for a given test result;
      */
     public static String getTestUrl(hudson.tasks.test.TestResult result) {
-        String buildUrl = getBuildURL(result.getOwner());
+        return getBuildURL(result.getOwner()) + getTestPath(result);
+    }
+
+    /**
+     * Returns the URL of the test details page relative to the build's URL. Encoded.
+     */
+    public static String getTestPath(hudson.tasks.test.TestResult result) {
         @SuppressWarnings("rawtypes")
         AbstractTestResultAction action = result.getTestResultAction();
 
@@ -80,57 +80,18 @@ public class MessageHelper {
         // remove last /
         buf.deleteCharAt(buf.length() - 1);
 
-        return buildUrl + buf.toString();
+        return buf.toString();
     }
 
     /**
      * Parses a bot command from a given string.
      * The 1st entry in the array contains the command name itself.
      * The following entries contain the command parameters, if any.
+     *
+     * @see CommandTokenizer
      */
     public static String[] extractCommandLine(String message) {
-        List<String> parameters = extractParameters(message);
-        return parameters.toArray(new String[parameters.size()]);
-    }
-
-    private static List<String> extractParameters(String commandLine) {
-        List<String> parameters = new ArrayList<String>();
-
-        // space protection
-        commandLine = commandLine.trim();
-
-        int firstQuote = commandLine.indexOf(QUOTE);
-
-        if (firstQuote != -1) {
-            int endQuoted = commandLine.indexOf(QUOTE, firstQuote + 1);
-
-            if (endQuoted == -1) {
-                //unmatched quotes, just split on spaces
-                Collections.addAll(parameters, SPACE_PATTERN.split(commandLine));
-            } else {
-                if (firstQuote == 0) {
-                    // the first character is the quote
-                    parameters.add(commandLine.substring(1, endQuoted - 1));
-                } else {
-                    // adding every thing before the first quote
-                    parameters.addAll(extractParameters(commandLine.substring(0,
-                            firstQuote)));
-                    // adding the parameter between quotes
-                    parameters.add(commandLine.substring(firstQuote + 1, endQuoted));
-
-                    // adding everything after the quoted parameter into the
-                    // parameters list
-                    if (endQuoted < commandLine.length() - 1) {
-                        parameters.addAll(extractParameters(commandLine
-                                .substring(endQuoted + 1)));
-                    }
-                }
-            }
-        } else {
-            // no quotes, just splitting on spaces
-            Collections.addAll(parameters, SPACE_PATTERN.split(commandLine));
-        }
-        return parameters;
+        return CommandTokenizer.tokenize(message);
     }
 
     /**
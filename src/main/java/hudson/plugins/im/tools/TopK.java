@@ -0,0 +1,77 @@
+package hudson.plugins.im.tools;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Selects the first k of a stream of elements in a given order, without holding
+ * or sorting all of them: n elements cost O(n log k) time and O(k) memory.
+ *
+ * @param <T> the type of the elements
+ */
+public final class TopK<T> {
+
+    private final int k;
+    private final Comparator<? super T> order;
+    // the last of the selected elements at the head
+    private final PriorityQueue<T> selected;
+    private int count;
+
+    /**
+     * @param k the maximum number of elements to select
+     * @param order the order in which the first elements are selected
+     */
+    public TopK(int k, Comparator<? super T> order) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k must not be negative: " + k);
+        }
+        this.k = k;
+        this.order = order;
+        this.selected = new PriorityQueue<>(Math.max(1, Math.min(k, 256)), Collections.reverseOrder(order));
+    }
+
+    /**
+     * Offers an element.
+     *
+     * @return true if the element is currently selected
+     */
+    public boolean offer(T element) {
+        this.count++;
+        if (this.selected.size() < this.k) {
+            this.selected.add(element);
+            return true;
+        }
+        if (this.k > 0 && this.order.compare(element, this.selected.peek()) < 0) {
+            this.selected.poll();
+            this.selected.add(element);
+            return true;
+        }
+        return false;
+    }
+
+    public TopK<T> offerAll(Iterable<? extends T> elements) {
+        for (T element : elements) {
+            offer(element);
+        }
+        return this;
+    }
+
+    /**
+     * Returns the number of elements offered so far.
+     */
+    public int getCount() {
+        return this.count;
+    }
+
+    /**
+     * Returns the selected elements in order.
+     */
+    public List<T> toList() {
+        List<T> list = new ArrayList<>(this.selected);
+        list.sort(this.order);
+        return list;
+    }
+}
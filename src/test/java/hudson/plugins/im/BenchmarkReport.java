@@ -0,0 +1,97 @@
+package hudson.plugins.im;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+/**
+ * Compares the results of a JMH run with a baseline - both in the JSON format of JMH.
+ * <p>
+ * A result is a regression if its score, the average time per operation, exceeds the
+ * score of the same benchmark with the same parameters in the baseline by more than
+ * the threshold. Results which aren't in the baseline are listed as new.
+ */
+final class BenchmarkReport {
+
+    private static final String PACKAGE_PREFIX = "hudson.plugins.im.";
+
+    private final StringBuilder text = new StringBuilder();
+    private final List<String> regressions = new ArrayList<>();
+
+    private BenchmarkReport() {
+    }
+
+    /**
+     * @param thresholdPercent by how many percent a score may exceed the baseline
+     */
+    static BenchmarkReport compare(String baselineJson, String resultJson, double thresholdPercent) {
+        Map<String, Double> baseline = scores(baselineJson);
+        BenchmarkReport report = new BenchmarkReport();
+        report.text.append(String.format(Locale.ENGLISH, "%-80s %14s %14s %9s%n",
+                "Benchmark (ns/op), threshold " + thresholdPercent + "%", "Baseline", "Score", "Change"));
+        for (Map.Entry<String, Double> result : scores(resultJson).entrySet()) {
+            String name = result.getKey();
+            double score = result.getValue();
+            Double base = baseline.get(name);
+            if (base == null) {
+                report.text.append(String.format(Locale.ENGLISH, "%-80s %14s %14.1f %9s%n",
+                        name, "-", score, "new"));
+                continue;
+            }
+            double change = (score - base) * 100 / base;
+            boolean regression = change > thresholdPercent;
+            report.text.append(String.format(Locale.ENGLISH, "%-80s %14.1f %14.1f %+8.1f%%%s%n",
+                    name, base, score, change, regression ? "  REGRESSION" : ""));
+            if (regression) {
+                report.regressions.add(name);
+            }
+        }
+        return report;
+    }
+
+    /**
+     * Returns the scores by benchmark name and parameters, e.g.
+     * "tools.CommandTokenizerBenchmark.tokenizer {commandLine=status}".
+     */
+    static Map<String, Double> scores(String json) {
+        Map<String, Double> scores = new LinkedHashMap<>();
+        for (Object o : JSONArray.fromObject(json)) {
+            JSONObject result = (JSONObject) o;
+            String name = result.getString("benchmark");
+            if (name.startsWith(PACKAGE_PREFIX)) {
+                name = name.substring(PACKAGE_PREFIX.length());
+            }
+            JSONObject params = result.optJSONObject("params");
+            if (params != null && !params.isNullObject() && !params.isEmpty()) {
+                Map<String, Object> sorted = new TreeMap<>();
+                for (Object key : params.keySet()) {
+                    sorted.put((String) key, params.get(key));
+                }
+                name += " " + sorted;
+            }
+            scores.put(name, result.getJSONObject("primaryMetric").getDouble("score"));
+        }
+        return scores;
+    }
+
+    /**
+     * Returns a table of all results, compared with the baseline.
+     */
+    String getText() {
+        return this.text.toString();
+    }
+
+    /**
+     * Returns the names of the results which exceed the baseline by more than the threshold.
+     */
+    List<String> getRegressions() {
+        return Collections.unmodifiableList(this.regressions);
+    }
+}
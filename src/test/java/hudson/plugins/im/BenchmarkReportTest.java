@@ -0,0 +1,62 @@
+package hudson.plugins.im;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BenchmarkReportTest {
+
+    private static String result(String benchmark, String params, double score) {
+        return "{\"benchmark\":\"hudson.plugins.im." + benchmark + "\",\"mode\":\"avgt\","
+                + (params != null ? "\"params\":" + params + "," : "")
+                + "\"primaryMetric\":{\"score\":" + score + ",\"scoreError\":1.0,\"scoreUnit\":\"ns/op\"}}";
+    }
+
+    @Test
+    void testScores() {
+        Map<String, Double> scores = BenchmarkReport.scores("["
+                + result("bot.BotDispatchBenchmark.chatter", null, 12.5) + ","
+                + result("tools.CommandTokenizerBenchmark.tokenizer", "{\"commandLine\":\"status\"}", 30) + "]");
+
+        assertEquals(2, scores.size());
+        assertEquals(12.5, scores.get("bot.BotDispatchBenchmark.chatter"));
+        assertEquals(30.0, scores.get("tools.CommandTokenizerBenchmark.tokenizer {commandLine=status}"));
+    }
+
+    @Test
+    void testCompare() {
+        String baseline = "["
+                + result("A.fast", null, 100) + ","
+                + result("A.slow", null, 100) + ","
+                + result("A.param", "{\"p\":\"1\"}", 100) + ","
+                + result("A.param", "{\"p\":\"2\"}", 100) + "]";
+        String results = "["
+                + result("A.fast", null, 50) + ","
+                + result("A.slow", null, 125) + ","
+                + result("A.param", "{\"p\":\"1\"}", 119) + ","
+                + result("A.param", "{\"p\":\"2\"}", 121) + ","
+                + result("A.added", null, 10) + "]";
+
+        BenchmarkReport report = BenchmarkReport.compare(baseline, results, 20);
+
+        assertEquals(Arrays.asList("A.slow", "A.param {p=2}"), report.getRegressions());
+        String text = report.getText();
+        assertTrue(text.contains("-50.0%"), text);
+        assertTrue(text.contains("+25.0%  REGRESSION"), text);
+        assertTrue(text.contains("+19.0%\n") || text.contains("+19.0%\r\n"), text);
+        assertTrue(text.contains("new"), text);
+    }
+
+    @Test
+    void testEmptyBaseline() {
+        BenchmarkReport report = BenchmarkReport.compare("[]", "[" + result("A.fast", null, 50) + "]", 20);
+
+        assertEquals(Collections.emptyList(), report.getRegressions());
+        assertTrue(report.getText().contains("new"));
+    }
+}
@@ -0,0 +1,63 @@
+package hudson.plugins.im;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the JMH benchmarks of this plugin. Not picked up by the normal test run;
+ * use <code>mvn test -Dbenchmark</code>, which selects this class via the
+ * <code>jmh-benchmark</code> profile of the plugin parent POM.
+ * <p>
+ * The results are compared with the baseline in <code>src/test/jmh-baseline.json</code>,
+ * see {@link BenchmarkReport}, and the run fails if a benchmark got slower by more than
+ * <code>-Dbenchmark.threshold</code> percent (default: 20).
+ * <code>-Dbenchmark.updateBaseline=true</code> replaces the baseline with the results instead.
+ */
+class BenchmarkRunner {
+
+    private static final Path RESULT = Paths.get("target/jmh-report.json");
+    private static final Path COMPARISON = Paths.get("target/jmh-comparison.txt");
+    private static final Path BASELINE = Paths.get("src/test/jmh-baseline.json");
+
+    @Test
+    void runJmhBenchmarks() throws Exception {
+        Options options = new OptionsBuilder()
+                .include("hudson\\.plugins\\.im\\..*Benchmark")
+                .mode(Mode.AverageTime)
+                .timeUnit(TimeUnit.NANOSECONDS)
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .forks(1)
+                .shouldFailOnError(true)
+                .resultFormat(ResultFormatType.JSON)
+                .result(RESULT.toString())
+                .build();
+        new Runner(options).run();
+
+        if (Boolean.getBoolean("benchmark.updateBaseline")) {
+            Files.copy(RESULT, BASELINE, StandardCopyOption.REPLACE_EXISTING);
+            return;
+        }
+        double threshold = Double.parseDouble(System.getProperty("benchmark.threshold", "20"));
+        BenchmarkReport report = BenchmarkReport.compare(
+                Files.readString(BASELINE, StandardCharsets.UTF_8),
+                Files.readString(RESULT, StandardCharsets.UTF_8), threshold);
+        Files.writeString(COMPARISON, report.getText(), StandardCharsets.UTF_8);
+        System.out.println(report.getText());
+        assertTrue(report.getRegressions().isEmpty(),
+                "Slower than the baseline by more than " + threshold + "%: " + report.getRegressions());
+    }
+}
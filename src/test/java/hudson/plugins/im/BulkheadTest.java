@@ -0,0 +1,160 @@
+package hudson.plugins.im;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BulkheadTest {
+
+    @Test
+    void testCallIsRunOnWorker() throws IMException {
+        Bulkhead bulkhead = new Bulkhead("test", 1, 1000, 10);
+        String[] thread = new String[1];
+        bulkhead.call(() -> thread[0] = Thread.currentThread().getName());
+        assertTrue(thread[0].startsWith("IM-Bulkhead-test"), thread[0]);
+    }
+
+    @Test
+    void testFailureIsPropagated() {
+        Bulkhead bulkhead = new Bulkhead("test", 1, 1000, 10);
+        IMException e = assertThrows(IMException.class, () -> bulkhead.call(() -> {
+            throw new IMException("boom");
+        }));
+        assertEquals("boom", e.getMessage());
+    }
+
+    @Test
+    void testHangingCallTimesOutAndFailsFurtherCallsFast() throws Exception {
+        Bulkhead hanging = new Bulkhead("hanging", 1, 100, 10);
+        Bulkhead other = new Bulkhead("other", 1, 100, 10);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            assertThrows(IMException.class, () -> hanging.call(() -> awaitUninterruptibly(release)));
+
+            // the worker is still stuck: don't even queue
+            long start = System.nanoTime();
+            assertThrows(IMException.class, () -> hanging.call(() -> {}));
+            assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(100));
+
+            // other channels aren't affected
+            other.call(() -> {});
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void testWorkersRunInParallel() throws Exception {
+        Bulkhead bulkhead = new Bulkhead("test", 2, 10000, 10);
+        CountDownLatch started = new CountDownLatch(2);
+        Thread first = new Thread(() -> {
+            try {
+                bulkhead.call(() -> {
+                    started.countDown();
+                    awaitUninterruptibly(started);
+                });
+            } catch (IMException e) {
+                // ignore
+            }
+        });
+        first.start();
+        // only returns once both calls run at the same time
+        bulkhead.call(() -> {
+            started.countDown();
+            awaitUninterruptibly(started);
+        });
+        first.join();
+    }
+
+    @Test
+    void testTimeoutStartsWhenCallRuns() throws Exception {
+        Bulkhead bulkhead = new Bulkhead("test", 1, 300, 10);
+        CountDownLatch started = new CountDownLatch(1);
+        Thread busy = new Thread(() -> {
+            try {
+                bulkhead.call(() -> {
+                    started.countDown();
+                    sleep(200);
+                });
+            } catch (IMException e) {
+                // ignore
+            }
+        });
+        busy.start();
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        // waits ~200ms in the queue and runs for ~200ms: longer than the timeout in total
+        bulkhead.call(() -> sleep(200));
+        busy.join();
+    }
+
+    @Test
+    void testTimeoutIsNoRejection() {
+        Bulkhead bulkhead = new Bulkhead("test", 1, 100, 10);
+        IMException e = assertThrows(IMException.class, () -> bulkhead.call(() -> sleep(10000)));
+        // the call was started, so it must not be retried
+        assertTrue(e instanceof Bulkhead.TimedOutCallException, e.toString());
+        assertTrue(e.getMessage().contains("timed out"), e.getMessage());
+    }
+
+    @Test
+    void testQueueIsBounded() throws Exception {
+        Bulkhead bulkhead = new Bulkhead("test", 1, 10000, 1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            Thread caller = new Thread(() -> {
+                try {
+                    bulkhead.call(() -> {
+                        started.countDown();
+                        awaitUninterruptibly(release);
+                    });
+                } catch (IMException e) {
+                    // ignore
+                }
+            });
+            caller.start();
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            Thread queued = new Thread(() -> {
+                try {
+                    bulkhead.call(() -> {});
+                } catch (IMException e) {
+                    // ignore
+                }
+            });
+            queued.start();
+            // wait until the 2nd call is queued
+            while (queued.getState() != Thread.State.TIMED_WAITING) {
+                Thread.sleep(10);
+            }
+            IMException e = assertThrows(IMException.class, () -> bulkhead.call(() -> {}));
+            assertTrue(e.getMessage().startsWith("Too many pending calls"), e.getMessage());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    private static void sleep(long millis) throws IMException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new IMException(e);
+        }
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        while (true) {
+            try {
+                latch.await();
+                return;
+            } catch (InterruptedException e) {
+                // like a blocking socket write
+            }
+        }
+    }
+}
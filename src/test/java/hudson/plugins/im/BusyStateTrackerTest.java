@@ -0,0 +1,89 @@
+package hudson.plugins.im;
+
+import hudson.model.Computer;
+import hudson.model.Executor;
+import hudson.model.OneOffExecutor;
+import hudson.model.Queue;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BusyStateTrackerTest {
+
+    private final BusyStateTracker tracker = new BusyStateTracker();
+
+    @Test
+    void testCountsExecutorTasks() {
+        Executor first = mock(Executor.class);
+        Executor second = mock(Executor.class);
+        Computer computer = computer("agent", true, first, second);
+        this.tracker.reconcile(new Computer[] { computer }, new Queue.Item[0]);
+
+        // e.g. the node block of a Pipeline, which isn't a build
+        this.tracker.taskStarted(first);
+        this.tracker.taskStarted(first);
+        // flyweight tasks don't occupy an executor
+        this.tracker.taskStarted(mock(OneOffExecutor.class));
+        assertEquals(1, this.tracker.getBusyExecutors());
+
+        this.tracker.taskStarted(second);
+        assertEquals(2, this.tracker.getBusyExecutors());
+
+        this.tracker.taskFinished(first);
+        this.tracker.taskFinished(first);
+        assertEquals(1, this.tracker.getBusyExecutors());
+        this.tracker.taskFinished(second);
+        assertEquals(0, this.tracker.getBusyExecutors());
+    }
+
+    @Test
+    void testReconcileRebuildsBusyExecutors() {
+        Executor first = mock(Executor.class);
+        Executor second = mock(Executor.class);
+        Executor third = mock(Executor.class);
+        Computer computer = computer("agent", true, first, second, third);
+
+        // the completion of the first task was missed, the second one started before
+        this.tracker.taskStarted(first);
+        when(second.isBusy()).thenReturn(true);
+        this.tracker.reconcile(new Computer[] { computer }, new Queue.Item[0]);
+        assertEquals(1, this.tracker.getBusyExecutors());
+
+        // no longer counted twice
+        this.tracker.taskStarted(second);
+        assertEquals(1, this.tracker.getBusyExecutors());
+        this.tracker.taskFinished(second);
+        assertEquals(0, this.tracker.getBusyExecutors());
+    }
+
+    @Test
+    void testCountsOnlineExecutorsAndQueue() {
+        Computer online = computer("agent", true, mock(Executor.class), mock(Executor.class));
+        Computer offline = computer("other", false, mock(Executor.class));
+        Queue.Item item = mock(Queue.Item.class);
+        when(item.getId()).thenReturn(42L);
+
+        this.tracker.reconcile(new Computer[] { online, offline }, new Queue.Item[] { item });
+        assertEquals(2, this.tracker.getTotalExecutors());
+        assertEquals(1, this.tracker.getQueueLength());
+
+        this.tracker.setOnline(offline, true);
+        assertEquals(3, this.tracker.getTotalExecutors());
+        this.tracker.setOnline(online, false);
+        assertEquals(1, this.tracker.getTotalExecutors());
+    }
+
+    private static Computer computer(String name, boolean online, Executor... executors) {
+        Computer computer = mock(Computer.class);
+        when(computer.getName()).thenReturn(name);
+        when(computer.isOnline()).thenReturn(online);
+        when(computer.getNumExecutors()).thenReturn(executors.length);
+        when(computer.getExecutors()).thenReturn(Arrays.asList(executors));
+        return computer;
+    }
+}
@@ -0,0 +1,103 @@
+package hudson.plugins.im;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import hudson.plugins.im.outbound.RateLimiter;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class IMMetricsTest {
+
+    private static final String CHANNEL = "hudson.plugins.foo.FooPublisherDescriptor";
+
+    @AfterEach
+    void tearDown() {
+        IMMetrics.setRecorder(null);
+        IMMetrics.setQueueDepth(IMMetrics.Queue.COMMANDS, null);
+    }
+
+    @Test
+    void testNothingRecordedWithoutRecorder() {
+        assertEquals(0L, IMMetrics.start());
+        // must not fail
+        IMMetrics.sent(CHANNEL, mock(IMMessageTarget.class), 0L, true);
+        IMMetrics.commandCompleted(Object.class, 0L, true);
+    }
+
+    @Test
+    void testRecordsSends() {
+        MetricRegistry registry = new MetricRegistry();
+        IMMetrics.setRecorder(new IMMetricProvider(registry));
+
+        IMMessageTarget target = new DefaultIMMessageTarget("someone");
+        long start = IMMetrics.start();
+        assertTrue(start != 0);
+        IMMetrics.sent(CHANNEL, target, start, true);
+        IMMetrics.sent(CHANNEL, target, IMMetrics.start(), false);
+
+        assertEquals(2, registry.timer("instant-messaging.send.FooPublisherDescriptor").getCount());
+        assertEquals(2, registry.timer("instant-messaging.send.FooPublisherDescriptor.target.someone").getCount());
+        assertEquals(1, registry.meter("instant-messaging.send.FooPublisherDescriptor.failures").getCount());
+    }
+
+    @Test
+    void testRecordsBotReplies() throws IMException {
+        MetricRegistry registry = new MetricRegistry();
+        IMMetrics.setRecorder(new IMMetricProvider(registry));
+
+        IMChat chat = IsolatedChat.wrap(mock(IMChat.class), CHANNEL);
+        chat.sendMessage("hello");
+
+        assertEquals(1, registry.timer("instant-messaging.send.FooPublisherDescriptor").getCount());
+        assertEquals(0, registry.meter("instant-messaging.send.FooPublisherDescriptor.failures").getCount());
+        // not a target of notifications
+        assertTrue(registry.getTimers((name, metric) -> name.contains(".target.")).isEmpty());
+    }
+
+    @Test
+    void testRecordsConnectsAndCommands() {
+        MetricRegistry registry = new MetricRegistry();
+        IMMetrics.setRecorder(new IMMetricProvider(registry));
+
+        IMMetrics.connectAttempted(CHANNEL, false);
+        IMMetrics.connectAttempted(CHANNEL, true);
+        IMMetrics.connectionRestored(CHANNEL, 5000);
+        IMMetrics.commandCompleted(String.class, IMMetrics.start(), false);
+        IMMetrics.presenceUpdated(CHANNEL, IMMetrics.start());
+
+        assertEquals(2, registry.meter("instant-messaging.connect.FooPublisherDescriptor.attempts").getCount());
+        assertEquals(1, registry.meter("instant-messaging.connect.FooPublisherDescriptor.failures").getCount());
+        assertEquals(1, registry.timer("instant-messaging.connect.FooPublisherDescriptor.downtime").getCount());
+        assertEquals(1, registry.timer("instant-messaging.command.String").getCount());
+        assertEquals(1, registry.meter("instant-messaging.command.String.failures").getCount());
+        assertEquals(1, registry.timer("instant-messaging.presence.FooPublisherDescriptor").getCount());
+    }
+
+    @Test
+    void testQueueDepthGauges() {
+        IMMetricProvider provider = new IMMetricProvider(new MetricRegistry());
+        @SuppressWarnings("unchecked")
+        Gauge<Integer> gauge = (Gauge<Integer>) provider.getMetricSet().getMetrics().get("instant-messaging.queue.commands");
+        assertEquals(0, gauge.getValue());
+        IMMetrics.setQueueDepth(IMMetrics.Queue.COMMANDS, () -> 7);
+        assertEquals(7, gauge.getValue());
+    }
+
+    @Test
+    void testThrottleGauges() {
+        Map<String, Metric> metrics = new IMMetricProvider(new MetricRegistry()).getMetricSet().getMetrics();
+        assertTrue(metrics.get("instant-messaging.queue.throttled") instanceof Gauge);
+        assertEquals(RateLimiter.get().getThrottledCount(),
+                ((Gauge<?>) metrics.get("instant-messaging.throttle.count")).getValue());
+        assertEquals(RateLimiter.get().getThrottleTimeMillis(),
+                ((Gauge<?>) metrics.get("instant-messaging.throttle.time")).getValue());
+    }
+}
@@ -0,0 +1,36 @@
+package hudson.plugins.im;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class JenkinsIsBusyListenerTest {
+
+    private static long dueTime(long firstRequest, long lastRequest, long lastUpdate) {
+        return JenkinsIsBusyListener.dueTime(firstRequest, lastRequest, lastUpdate, 1000, 5000, 15000);
+    }
+
+    @Test
+    void testWaitsUntilEventsAreQuiet() {
+        // a single event
+        assertEquals(101_000, dueTime(100_000, 100_000, 0));
+        // the last of a burst of events
+        assertEquals(104_000, dueTime(100_000, 103_000, 0));
+    }
+
+    @Test
+    void testKeepsMinimumInterval() {
+        // the previous update was just 2 seconds before
+        assertEquals(103_000, dueTime(100_000, 100_000, 98_000));
+        assertEquals(105_000, dueTime(100_000, 101_000, 100_000));
+    }
+
+    @Test
+    void testLimitsStaleness() {
+        // events keep coming in
+        assertEquals(115_000, dueTime(100_000, 114_900, 0));
+        assertEquals(115_000, dueTime(100_000, 200_000, 0));
+        // ... but the minimum interval still applies
+        assertEquals(120_000, dueTime(100_000, 200_000, 115_000));
+    }
+}
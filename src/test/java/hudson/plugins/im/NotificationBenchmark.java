@@ -0,0 +1,196 @@
+package hudson.plugins.im;
+
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.FreeStyleProject;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.User;
+import hudson.plugins.im.build_notify.BuildToChatNotifier;
+import hudson.plugins.im.build_notify.DefaultBuildToChatNotifier;
+import hudson.plugins.im.build_notify.PrintFailingTestsBuildToChatNotifier;
+import hudson.tasks.BuildStepDescriptor;
+import hudson.tasks.Publisher;
+import hudson.tasks.junit.JUnitResultArchiver;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import jenkins.benchmark.jmh.JmhBenchmarkState;
+import org.jvnet.hudson.test.FakeChangeLogSCM;
+import org.jvnet.hudson.test.TestBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures what happens at the end of a build: {@link NotificationStrategy#notificationWanted(Run)},
+ * the rendering of the completion message by the {@link BuildToChatNotifier}s and
+ * {@link IMPublisher#notifyOnBuildEnd(Run, TaskListener)}, which sends the message to a group chat
+ * via a no-op {@link IMConnection}.
+ * <p>
+ * The builds are real freestyle builds of a Jenkins started by {@link JmhBenchmarkState}, with
+ * a change set and JUnit test results: a successful build, two unstable ones and a fixed one.
+ * The {@link hudson.plugins.im.outbound.OutboundDispatcher} is disabled, so the messages are sent
+ * on the benchmark thread. Run with <code>mvn test -Dbenchmark</code>.
+ */
+@Fork(jvmArgsAppend = "-Dhudson.plugins.im.outbound.OutboundDispatcher.enabled=false")
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class NotificationBenchmark {
+
+    private static final int TESTS = 500;
+    private static final int FAILURES = 40;
+    private static final int CHANGES = 10;
+
+    private static final BuildToChatNotifier DEFAULT_NOTIFIER = new DefaultBuildToChatNotifier();
+    private static final BuildToChatNotifier FAILING_TESTS_NOTIFIER = new PrintFailingTestsBuildToChatNotifier();
+
+    public static class JenkinsState extends JmhBenchmarkState {
+        Run<?, ?> stillUnstable;
+        Run<?, ?> fixed;
+        IMPublisher publisher;
+
+        @Override
+        public void setup() throws Exception {
+            FreeStyleProject project = getJenkins().createProject(FreeStyleProject.class, "benchmark");
+            FakeChangeLogSCM scm = new FakeChangeLogSCM();
+            for (int i = 0; i < CHANGES; i++) {
+                scm.addChange().withAuthor("author" + (i % 3)).withMsg("Change " + i);
+            }
+            project.setScm(scm);
+            JUnitReportBuilder builder = new JUnitReportBuilder();
+            project.getBuildersList().add(builder);
+            project.getPublishersList().add(new JUnitResultArchiver("*.xml"));
+
+            project.scheduleBuild2(0).get();
+            builder.failures = FAILURES;
+            project.scheduleBuild2(0).get();
+            this.stillUnstable = project.scheduleBuild2(0).get();
+            builder.failures = 0;
+            this.fixed = project.scheduleBuild2(0).get();
+
+            this.publisher = new BenchmarkPublisher();
+        }
+    }
+
+    @Benchmark
+    public void notificationWanted(JenkinsState state, Blackhole blackhole) {
+        for (NotificationStrategy strategy : NotificationStrategy.values()) {
+            blackhole.consume(strategy.notificationWanted(state.stillUnstable));
+            blackhole.consume(strategy.notificationWanted(state.fixed));
+        }
+    }
+
+    @Benchmark
+    public String defaultCompletionMessage(JenkinsState state) throws Exception {
+        return DEFAULT_NOTIFIER.buildCompletionMessage(state.publisher, state.stillUnstable, TaskListener.NULL);
+    }
+
+    @Benchmark
+    public String failingTestsCompletionMessage(JenkinsState state) throws Exception {
+        return FAILING_TESTS_NOTIFIER.buildCompletionMessage(state.publisher, state.stillUnstable, TaskListener.NULL);
+    }
+
+    @Benchmark
+    public void notifyOnBuildEnd(JenkinsState state) throws Exception {
+        state.publisher.notifyOnBuildEnd(state.stillUnstable, TaskListener.NULL);
+    }
+
+    /**
+     * Writes a JUnit report with {@link #TESTS} tests of which {@link #failures} fail.
+     */
+    public static final class JUnitReportBuilder extends TestBuilder {
+        int failures;
+
+        @Override
+        public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
+                throws InterruptedException, IOException {
+            StringBuilder xml = new StringBuilder();
+            xml.append("<testsuite name=\"benchmark\" tests=\"").append(TESTS)
+                    .append("\" failures=\"").append(this.failures).append("\">\n");
+            for (int i = 0; i < TESTS; i++) {
+                xml.append("<testcase classname=\"hudson.plugins.im.benchmark.Suite").append(i % 20)
+                        .append("Test\" name=\"test").append(i).append("\" time=\"0.01\">");
+                if (i < this.failures) {
+                    xml.append("<failure message=\"expected:&lt;1&gt; but was:&lt;2&gt;\"/>");
+                }
+                xml.append("</testcase>\n");
+            }
+            xml.append("</testsuite>\n");
+            build.getWorkspace().child("TEST-benchmark.xml").write(xml.toString(), "UTF-8");
+            return true;
+        }
+    }
+
+    /**
+     * Notifies a group chat about every build, without suspects, culprits or fixers.
+     */
+    private static final class BenchmarkPublisher extends IMPublisher {
+        private final IMConnection connection = new NoOpConnection();
+
+        BenchmarkPublisher() {
+            super(Collections.singletonList(new GroupChatIMMessageTarget("#builds")),
+                    NotificationStrategy.ALL.getDisplayName(), false, false, false, false, false,
+                    FAILING_TESTS_NOTIFIER, MatrixJobMultiplier.ALL);
+        }
+
+        @Override
+        protected String getPluginName() {
+            return "benchmark";
+        }
+
+        @Override
+        protected IMConnection getIMConnection() {
+            return this.connection;
+        }
+
+        @Override
+        public BuildStepDescriptor<Publisher> getDescriptor() {
+            return null;
+        }
+
+        @Override
+        protected String getConfiguredIMId(User user) {
+            return null;
+        }
+    }
+
+    private static final class NoOpConnection implements IMConnection {
+
+        @Override
+        public boolean connect() {
+            return true;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void send(IMMessageTarget target, String text) {
+        }
+
+        @Override
+        public void setPresence(IMPresence presence, String statusMessage) {
+        }
+
+        @Override
+        public void addConnectionListener(IMConnectionListener listener) {
+        }
+
+        @Override
+        public void removeConnectionListener(IMConnectionListener listener) {
+        }
+    }
+}
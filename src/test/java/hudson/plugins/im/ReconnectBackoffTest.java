@@ -0,0 +1,51 @@
+package hudson.plugins.im;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ReconnectBackoffTest {
+
+    @Test
+    void testExponentialBackoffWithoutJitter() {
+        ReconnectBackoff backoff = new ReconnectBackoff(1000, 2.0, 5000, 0.0);
+        assertEquals(0, backoff.nextDelayMillis());
+        assertEquals(1000, backoff.nextDelayMillis());
+        assertEquals(2000, backoff.nextDelayMillis());
+        assertEquals(4000, backoff.nextDelayMillis());
+        assertEquals(5000, backoff.nextDelayMillis());
+        assertEquals(5000, backoff.nextDelayMillis());
+    }
+
+    @Test
+    void testResetRestartsWithFastPath() {
+        ReconnectBackoff backoff = new ReconnectBackoff(1000, 2.0, 5000, 0.0);
+        backoff.nextDelayMillis();
+        backoff.nextDelayMillis();
+        backoff.reset();
+        assertEquals(0, backoff.getAttempts());
+        assertEquals(0, backoff.nextDelayMillis());
+        assertEquals(1000, backoff.nextDelayMillis());
+    }
+
+    @Test
+    void testJitterSpreadsDelays() {
+        ReconnectBackoff low = new ReconnectBackoff(1000, 2.0, 5000, 0.5, () -> 0.0);
+        assertEquals(0, low.nextDelayMillis());
+        assertEquals(500, low.nextDelayMillis());
+        assertEquals(1000, low.nextDelayMillis());
+
+        ReconnectBackoff high = new ReconnectBackoff(1000, 2.0, 5000, 0.5, () -> 1.0);
+        assertEquals(500, high.nextDelayMillis());
+        assertEquals(1500, high.nextDelayMillis());
+        assertEquals(3000, high.nextDelayMillis());
+    }
+
+    @Test
+    void testJitterAppliesAtCap() {
+        ReconnectBackoff backoff = new ReconnectBackoff(1000, 10.0, 5000, 0.2, () -> 0.0);
+        backoff.nextDelayMillis();
+        backoff.nextDelayMillis();
+        assertEquals(4000, backoff.nextDelayMillis());
+    }
+}
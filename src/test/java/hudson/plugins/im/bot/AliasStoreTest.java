@@ -0,0 +1,116 @@
+package hudson.plugins.im.bot;
+
+import hudson.plugins.im.bot.SetAliasCommand.AliasCommand;
+
+import java.io.File;
+import java.util.Collections;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AliasStoreTest {
+
+    @TempDir
+    File dir;
+
+    private BotCommand build;
+    private CommandRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        this.build = mock(BotCommand.class);
+        when(this.build.getCommandNames()).thenReturn(Collections.singleton("build"));
+        this.registry = new CommandRegistry(null, Collections.singletonList(this.build));
+    }
+
+    private AliasStore open(boolean shared) {
+        return new AliasStore(new File(dir, "aliases.xml"), shared, () -> this.registry);
+    }
+
+    @Test
+    void testAliasesSurviveRestart() {
+        AliasStore.Aliases aliases = open(false).forChat("bot@server", "#chat");
+        aliases.put("deploy", new AliasCommand(this.build, "build", new String[] {"deploy-job", "now"}));
+        aliases.put("d", new AliasCommand(aliases.get("deploy"), "deploy", new String[0]));
+
+        aliases = open(false).forChat("bot@server", "#chat");
+        AliasCommand deploy = aliases.get("deploy");
+        assertEquals("build", deploy.getCommandName());
+        assertArrayEquals(new String[] {"deploy-job", "now"}, deploy.getArguments());
+        assertEquals("deploy", aliases.get("d").getCommandName());
+
+        assertTrue(open(false).forChat("bot@server", "#other").getAll().isEmpty());
+    }
+
+    @Test
+    void testRemove() {
+        AliasStore.Aliases aliases = open(false).forChat("bot@server", "#chat");
+        aliases.put("deploy", new AliasCommand(this.build, "build", new String[0]));
+        assertEquals("build", aliases.remove("deploy").getCommandName());
+        assertNull(aliases.remove("deploy"));
+
+        assertTrue(open(false).forChat("bot@server", "#chat").getAll().isEmpty());
+    }
+
+    @Test
+    void testUnresolvableAliasesAreKept() {
+        AliasStore.Aliases aliases = open(false).forChat("bot@server", "#chat");
+        aliases.put("deploy", new AliasCommand(this.build, "build", new String[0]));
+
+        // the command is gone, e.g. because its plugin was uninstalled
+        this.registry = new CommandRegistry(null, Collections.emptyList());
+        aliases = open(false).forChat("bot@server", "#chat");
+        assertNull(aliases.get("deploy"));
+        aliases.put("other", new AliasCommand(this.build, "build", new String[0]));
+
+        this.registry = new CommandRegistry(null, Collections.singletonList(this.build));
+        aliases = open(false).forChat("bot@server", "#chat");
+        assertEquals("build", aliases.get("deploy").getCommandName());
+        assertEquals("build", aliases.get("other").getCommandName());
+    }
+
+    @Test
+    void testSharedBetweenChats() {
+        AliasStore store = open(true);
+        store.forChat("bot@server", "#chat").put("deploy", new AliasCommand(this.build, "build", new String[0]));
+        assertSame(store.forChat("bot@server", "#chat"), store.forChat("other@server", null));
+        assertEquals("build", store.forChat("other@server", null).get("deploy").getCommandName());
+    }
+
+    @Test
+    void testChatsWithoutIdShareTheAliasesOfTheBot() {
+        AliasStore store = open(false);
+        store.forChat("bot@server", null).put("deploy", new AliasCommand(this.build, "build", new String[0]));
+        assertSame(store.forChat("bot@server", null), store.forChat("bot@server", null));
+        assertTrue(store.forChat("other@server", null).getAll().isEmpty());
+        assertTrue(store.forChat("bot@server", "#chat").getAll().isEmpty());
+
+        assertEquals("build", open(false).forChat("bot@server", null).get("deploy").getCommandName());
+    }
+
+    @Test
+    void testRemoveUnresolvableAlias() {
+        AliasStore.Aliases aliases = open(false).forChat("bot@server", "#chat");
+        aliases.put("deploy", new AliasCommand(this.build, "build", new String[] {"deploy-job"}));
+
+        this.registry = new CommandRegistry(null, Collections.emptyList());
+        aliases = open(false).forChat("bot@server", "#chat");
+        assertNull(aliases.get("deploy"));
+        AliasCommand removed = aliases.remove("deploy");
+        assertEquals(" - alias for: 'build deploy-job'", removed.getHelp());
+        assertNull(aliases.remove("deploy"));
+
+        // also gone once the command is back
+        this.registry = new CommandRegistry(null, Collections.singletonList(this.build));
+        assertTrue(open(false).forChat("bot@server", "#chat").getAll().isEmpty());
+    }
+}
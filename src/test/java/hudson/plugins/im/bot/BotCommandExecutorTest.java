@@ -0,0 +1,97 @@
+package hudson.plugins.im.bot;
+
+import hudson.plugins.im.IMChat;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+class BotCommandExecutorTest {
+
+    @AfterAll
+    static void shutdown() {
+        BotCommandExecutor.shutdown();
+    }
+
+    @Test
+    void testSendersTakeTurns() throws Exception {
+        BotCommandExecutor.Lane lane = BotCommandExecutor.get().newLane(mock(IMChat.class));
+        List<String> executed = new CopyOnWriteArrayList<>();
+        CountDownLatch blocker = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(5);
+
+        assertTrue(lane.submit("alice", "a1", chat -> {
+            blocker.await();
+            executed.add("a1");
+            done.countDown();
+        }));
+        for (String name : new String[] {"a2", "a3"}) {
+            assertTrue(lane.submit("alice", name, chat -> {
+                executed.add(name);
+                done.countDown();
+            }));
+        }
+        for (String name : new String[] {"b1", "b2"}) {
+            assertTrue(lane.submit("bob", name, chat -> {
+                executed.add(name);
+                done.countDown();
+            }));
+        }
+        blocker.countDown();
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(List.of("a1", "a2", "b1", "a3", "b2"), executed);
+    }
+
+    @Test
+    void testPendingCommandsPerSenderAreLimited() throws Exception {
+        BotCommandExecutor.Lane lane = BotCommandExecutor.get().newLane(mock(IMChat.class));
+        CountDownLatch blocker = new CountDownLatch(1);
+
+        int accepted = 0;
+        while (accepted < 100 && lane.submit("alice", "cmd", chat -> blocker.await())) {
+            accepted++;
+        }
+        // the running one plus 5 pending
+        assertEquals(6, accepted);
+        assertTrue(lane.submit("bob", "cmd", chat -> { }));
+        assertFalse(lane.submit("alice", "cmd", chat -> { }));
+        blocker.countDown();
+    }
+
+    @Test
+    void testTimedOutCommandDoesNotHoldUpTheLane() throws Exception {
+        IMChat imChat = mock(IMChat.class);
+        BotCommandExecutor.Lane lane = BotCommandExecutor.get().newLane(imChat);
+        CountDownLatch blocker = new CountDownLatch(1);
+        CountDownLatch next = new CountDownLatch(1);
+
+        assertTrue(lane.submit("alice", "slow", 1, chat -> {
+            // ignores the interrupt
+            while (blocker.getCount() > 0) {
+                try {
+                    blocker.await();
+                } catch (InterruptedException e) {
+                    // keep running
+                }
+            }
+            chat.sendMessage("late");
+        }));
+        assertTrue(lane.submit("bob", "next", chat -> next.countDown()));
+
+        assertTrue(next.await(10, TimeUnit.SECONDS));
+        verify(imChat, timeout(10000)).sendMessage("Command 'slow' took too long and was aborted.");
+        blocker.countDown();
+    }
+}
@@ -0,0 +1,94 @@
+package hudson.plugins.im.bot;
+
+import hudson.plugins.im.IMChat;
+import hudson.plugins.im.IMMessage;
+import hudson.plugins.im.IMMessageListener;
+
+import java.util.concurrent.TimeUnit;
+
+import jenkins.benchmark.jmh.JmhBenchmarkState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+/**
+ * Measures how {@link Bot#onMessage(IMMessage)} dispatches chat messages: messages which aren't
+ * meant for the bot, unknown commands and a cheap command ('botsnack'), replying to a no-op chat.
+ * <p>
+ * The commands are looked up in a Jenkins started by {@link JmhBenchmarkState}.
+ * The {@link BotCommandExecutor} is disabled, so the commands run on the benchmark thread.
+ * Run with <code>mvn test -Dbenchmark</code>.
+ */
+@Fork(jvmArgsAppend = "-Dhudson.plugins.im.bot.BotCommandExecutor.enabled=false")
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BotDispatchBenchmark {
+
+    private static final IMMessage CHATTER = new IMMessage("alice", "#builds",
+            "did anybody look at the build of my-job yet?");
+    private static final IMMessage UNKNOWN_COMMAND = new IMMessage("alice", "#builds",
+            "!jenkins nosuchcommand my-job");
+    private static final IMMessage SNACK = new IMMessage("alice", "#builds",
+            "!jenkins botsnack \"salted peanuts\"");
+
+    public static class JenkinsState extends JmhBenchmarkState {
+        Bot bot;
+
+        @Override
+        public void setup() throws Exception {
+            this.bot = new Bot(new NoOpChat(), "jenkins", "benchmark", "!jenkins", null);
+        }
+    }
+
+    @Benchmark
+    public void chatter(JenkinsState state) {
+        state.bot.onMessage(CHATTER);
+    }
+
+    @Benchmark
+    public void unknownCommand(JenkinsState state) {
+        state.bot.onMessage(UNKNOWN_COMMAND);
+    }
+
+    @Benchmark
+    public void command(JenkinsState state) {
+        state.bot.onMessage(SNACK);
+    }
+
+    private static final class NoOpChat implements IMChat {
+
+        @Override
+        public void sendMessage(String message) {
+        }
+
+        @Override
+        public String getNickName(String senderId) {
+            return senderId;
+        }
+
+        @Override
+        public String getIMId(String senderId) {
+            return senderId;
+        }
+
+        @Override
+        public boolean isMultiUserChat() {
+            return true;
+        }
+
+        @Override
+        public boolean isCommandsAccepted() {
+            return true;
+        }
+
+        @Override
+        public void addMessageListener(IMMessageListener listener) {
+        }
+
+        @Override
+        public void removeMessageListener(IMMessageListener listener) {
+        }
+    }
+}
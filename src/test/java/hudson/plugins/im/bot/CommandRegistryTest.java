@@ -0,0 +1,77 @@
+package hudson.plugins.im.bot;
+
+import hudson.plugins.im.IMChat;
+import hudson.plugins.im.IMMessage;
+import hudson.plugins.im.Sender;
+import hudson.plugins.im.bot.SetAliasCommand.AliasCommand;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class CommandRegistryTest {
+
+    private final BotCommand build = new TestCommand(" - builds a job", "build", "b");
+    private final BotCommand status = new TestCommand(" - shows the status", "status");
+    private final List<BotCommand> commands = Arrays.asList(this.build, this.status, new Bot.HelpCommand());
+
+    @Test
+    void testLookup() {
+        CommandRegistry registry = new CommandRegistry(null, this.commands);
+        assertSame(this.build, registry.getCommand("build"));
+        assertSame(this.build, registry.getCommand("b"));
+        assertNull(registry.getCommand("foo"));
+        assertEquals(Arrays.asList("b", "build", "help", "status"), Arrays.asList(registry.getCommands().keySet().toArray()));
+    }
+
+    @Test
+    void testHelpIsSharedWithoutAliases() {
+        CommandRegistry registry = new CommandRegistry(null, this.commands);
+        String help = registry.getHelp(Collections.emptySortedMap());
+        assertEquals("Available commands:\nb - builds a job\nbuild - builds a job\nstatus - shows the status", help);
+        assertSame(help, registry.getHelp(Collections.emptySortedMap()));
+    }
+
+    @Test
+    void testHelpIncludesAliases() {
+        CommandRegistry registry = new CommandRegistry(null, this.commands);
+        SortedMap<String, AliasCommand> aliases = new TreeMap<>();
+        aliases.put("deploy", new AliasCommand(this.build, "build", new String[] {"deploy-job"}));
+        assertEquals("Available commands:\nb - builds a job\nbuild - builds a job"
+                + "\ndeploy - alias for: 'build deploy-job'\nstatus - shows the status", registry.getHelp(aliases));
+    }
+
+    private static final class TestCommand extends BotCommand {
+
+        private final String help;
+        private final List<String> names;
+
+        TestCommand(String help, String... names) {
+            this.help = help;
+            this.names = Arrays.asList(names);
+        }
+
+        @Override
+        public Collection<String> getCommandNames() {
+            return this.names;
+        }
+
+        @Override
+        public void executeCommand(Bot bot, IMChat chat, IMMessage message, Sender sender, String[] args) {
+        }
+
+        @Override
+        public String getHelp() {
+            return this.help;
+        }
+    }
+}
@@ -12,6 +12,8 @@ import java.util.regex.Pattern;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -91,4 +93,16 @@ class HealthCommandTest {
         String match = m.group(1);
         assertEquals("0", match);
     }
+
+    @Test
+    void testLastBuildIsOnlyLoadedForTheSnapshot() {
+        AbstractMavenProject job = mock(AbstractMavenProject.class);
+        when(job.getFullDisplayName()).thenReturn("fsProject");
+
+        String reply = new HealthCommand().getMessageForJob(job).toString();
+
+        assertEquals("fsProject: no finished build yet", reply);
+        // once by HealthSnapshot.compute, not for the duration of a running build
+        verify(job, times(1)).getLastBuild();
+    }
 }
@@ -0,0 +1,93 @@
+package hudson.plugins.im.bot;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.HealthReport;
+import hudson.model.Result;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.FailureBuilder;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class HealthSnapshotTest {
+
+    @AfterEach
+    void tearDown() {
+        HealthSnapshot.remove("job");
+    }
+
+    @Test
+    void testSkipsRunningBuilds() {
+        FreeStyleBuild finished = mock(FreeStyleBuild.class);
+        when(finished.getNumber()).thenReturn(41);
+        when(finished.getResult()).thenReturn(Result.UNSTABLE);
+        when(finished.getUrl()).thenReturn("job/job/41/");
+        FreeStyleBuild running = mock(FreeStyleBuild.class);
+        when(running.isBuilding()).thenReturn(true);
+        when(running.getPreviousBuild()).thenReturn(finished);
+
+        FreeStyleProject project = mock(FreeStyleProject.class);
+        when(project.getLastBuild()).thenReturn(running);
+        when(project.getBuildHealthReports()).thenReturn(Arrays.asList(
+                new HealthReport(80, "Build stability"), new HealthReport(50, "Tests")));
+
+        HealthSnapshot snapshot = HealthSnapshot.compute(project);
+        assertTrue(snapshot.hasBuild());
+        assertEquals(41, snapshot.getBuildNumber());
+        assertEquals(Result.UNSTABLE, snapshot.getResult());
+        assertTrue(snapshot.getBuildUrl().endsWith("job/job/41/"), snapshot.getBuildUrl());
+        assertEquals("Build stability(80%), Tests(50%)", snapshot.getHealth());
+    }
+
+    @Test
+    void testNoBuild() {
+        FreeStyleProject project = mock(FreeStyleProject.class);
+        assertFalse(HealthSnapshot.compute(project).hasBuild());
+    }
+
+    @Test
+    void testSnapshotIsKeptUntilRemoved() {
+        FreeStyleProject project = mock(FreeStyleProject.class);
+        when(project.getFullName()).thenReturn("job");
+
+        HealthSnapshot snapshot = HealthSnapshot.of(project);
+        assertSame(snapshot, HealthSnapshot.of(project));
+        verify(project, times(1)).getLastBuild();
+
+        HealthSnapshot.remove("job");
+        HealthSnapshot.of(project);
+        verify(project, times(2)).getLastBuild();
+    }
+
+    @Test
+    @WithJenkins
+    void testSnapshotIsRecomputedWhenABuildFinishes(JenkinsRule j) throws Exception {
+        FreeStyleProject project = j.createFreeStyleProject("job");
+        j.buildAndAssertSuccess(project);
+        project.getBuildersList().add(new FailureBuilder());
+        HealthSnapshot snapshot = HealthSnapshot.of(project);
+        assertEquals(1, snapshot.getBuildNumber());
+        assertEquals(Result.SUCCESS, snapshot.getResult());
+
+        j.buildAndAssertStatus(Result.FAILURE, project);
+
+        // the cached snapshot of build 1 was replaced by the listener
+        snapshot = HealthSnapshot.of(project);
+        assertEquals(2, snapshot.getBuildNumber());
+        assertEquals(Result.FAILURE, snapshot.getResult());
+        assertTrue(snapshot.getBuildUrl().endsWith("job/job/2/"), snapshot.getBuildUrl());
+    }
+}
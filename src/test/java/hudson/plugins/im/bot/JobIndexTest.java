@@ -0,0 +1,100 @@
+package hudson.plugins.im.bot;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JobIndexTest {
+
+    private final JobIndex index = new JobIndex(true);
+
+    @Test
+    void testLookupByDisplayName() {
+        index.put("folder/job1", "My Job");
+        index.put("job2", "My Job");
+        index.put("job3", "Other");
+
+        assertEquals(Set.of("folder/job1", "job2"), index.getByDisplayName("My Job"));
+        assertTrue(index.getByDisplayName("my job").isEmpty());
+    }
+
+    @Test
+    void testLookupIgnoringCase() {
+        index.put("folder/Job1", "My Job");
+
+        assertEquals(Set.of("folder/Job1"), index.getByNameIgnoreCase("FOLDER/job1"));
+        assertEquals(Set.of("folder/Job1"), index.getByNameIgnoreCase("my JOB"));
+    }
+
+    @Test
+    void testDisplayNameChange() {
+        index.put("job1", "Old");
+        index.put("job1", "New");
+
+        assertTrue(index.getByDisplayName("Old").isEmpty());
+        assertTrue(index.getByNameIgnoreCase("old").isEmpty());
+        assertEquals(Set.of("job1"), index.getByDisplayName("New"));
+    }
+
+    @Test
+    void testPrefix() {
+        index.put("deploy-prod", "deploy-prod");
+        index.put("deploy-staging", "Deploy Staging");
+        index.put("build", "build");
+
+        // sorted by the matching name: "deploy staging" comes first
+        assertEquals(Arrays.asList("deploy-staging", "deploy-prod"),
+                index.getByPrefix("DEPLOY", 10, Function.identity()));
+        assertEquals(1, index.getByPrefix("deploy", 1, Function.identity()).size());
+        assertTrue(index.getByPrefix("x", 10, Function.identity()).isEmpty());
+    }
+
+    @Test
+    void testPrefixLimitCountsVisibleJobsOnly() {
+        index.put("deploy-a", "deploy-a");
+        index.put("deploy-b", "deploy-b");
+        index.put("deploy-c", "deploy-c");
+        index.put("deploy-d", "deploy-d");
+
+        List<String> visible = index.getByPrefix("deploy", 2,
+                fullName -> fullName.equals("deploy-a") || fullName.equals("deploy-b") ? null : fullName);
+        assertEquals(Arrays.asList("deploy-c", "deploy-d"), visible);
+    }
+
+    @Test
+    void testSimilar() {
+        index.put("folder/deploy-production", "Deploy Production");
+        index.put("build", "build");
+
+        assertEquals(List.of("folder/deploy-production"),
+                index.getSimilar("deploy producton", 3, Function.identity()));
+    }
+
+    @Test
+    void testSimilarRespectsLimit() {
+        // each job matches by its full and by its display name
+        index.put("deploy-prod-1", "Deploy Prod 1");
+        index.put("deploy-prod-2", "Deploy Prod 2");
+        index.put("deploy-prod-3", "Deploy Prod 3");
+
+        assertEquals(2, index.getSimilar("deploy-prod", 2, Function.identity()).size());
+        assertEquals(List.of("deploy-prod-3"), index.getSimilar("deploy-prod", 1,
+                fullName -> fullName.equals("deploy-prod-3") ? fullName : null));
+    }
+
+    @Test
+    void testRemove() {
+        index.put("job1", "Job");
+        index.remove("job1");
+        index.remove("unknown");
+
+        assertTrue(index.getByDisplayName("Job").isEmpty());
+        assertTrue(index.getByNameIgnoreCase("job1").isEmpty());
+    }
+}
@@ -0,0 +1,53 @@
+package hudson.plugins.im.bot;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PagedReplyTest {
+
+    private final List<String> jobs = Arrays.asList("alpha", "beta", "gamma", "delta", "epsilon");
+
+    @Test
+    void testPages() {
+        PagedReply<String> reply = new PagedReply<>("health of all projects:\n", this.jobs, job -> job + ": ok");
+        assertEquals("health of all projects:\nalpha: ok\nbeta: ok", reply.nextPage(40));
+        assertEquals(3, reply.getRemaining());
+        assertEquals("gamma: ok\ndelta: ok\nepsilon: ok", reply.nextPage(20));
+        assertFalse(reply.hasMore());
+    }
+
+    @Test
+    void testPageHasAtLeastOneItem() {
+        PagedReply<String> reply = new PagedReply<>("", this.jobs, job -> job);
+        assertEquals("alpha", reply.nextPage(1));
+        assertEquals("beta", reply.nextPage(1));
+        assertTrue(reply.hasMore());
+    }
+
+    @Test
+    void testItemsAreRenderedOnDemand() {
+        int[] rendered = new int[1];
+        PagedReply<String> reply = new PagedReply<>("", this.jobs, job -> {
+            rendered[0]++;
+            return job;
+        });
+        reply.nextPage(1);
+        assertEquals(1, rendered[0]);
+        assertEquals("beta\ngamma\ndelta\nepsilon", reply.nextPage(Integer.MAX_VALUE));
+        assertEquals(5, rendered[0]);
+    }
+
+    @Test
+    void testEmpty() {
+        PagedReply<String> reply = new PagedReply<>("header", Collections.emptyList(), job -> job);
+        assertFalse(reply.hasMore());
+        assertEquals("header", reply.nextPage(10));
+    }
+}
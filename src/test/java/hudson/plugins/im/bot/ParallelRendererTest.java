@@ -0,0 +1,80 @@
+package hudson.plugins.im.bot;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ParallelRendererTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @AfterEach
+    void tearDown() {
+        this.executor.shutdownNow();
+    }
+
+    @Test
+    void testMessagesAreInOrderOfItems() {
+        ParallelRenderer renderer = new ParallelRenderer(this.executor);
+        List<CharSequence> messages = renderer.render(Arrays.asList(30, 0, 20, 10), millis -> {
+            sleep(millis);
+            return "job" + millis;
+        }, millis -> "pending", deadlineIn(10000));
+        assertEquals(Arrays.asList("job30", "job0", "job20", "job10"), messages);
+    }
+
+    @Test
+    void testSlowItemsArePending() {
+        ParallelRenderer renderer = new ParallelRenderer(this.executor);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            List<CharSequence> messages = renderer.render(Arrays.asList("fast", "slow", "fast2"), name -> {
+                if (name.equals("slow")) {
+                    await(release);
+                }
+                return name;
+            }, name -> name + ": pending", deadlineIn(200));
+            assertEquals(Arrays.asList("fast", "slow: pending", "fast2"), messages);
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void testSequentialRenderingStopsAtDeadline() {
+        ParallelRenderer renderer = new ParallelRenderer(null);
+        List<CharSequence> messages = renderer.render(Arrays.asList("a", "b"), name -> {
+            sleep(100);
+            return name;
+        }, name -> name + ": pending", deadlineIn(50));
+        assertEquals(Arrays.asList("a", "b: pending"), messages);
+    }
+
+    private static long deadlineIn(long millis) {
+        return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package hudson.plugins.im.bot;
+
+import hudson.model.Queue;
+import hudson.model.Queue.Item;
+
+import java.lang.reflect.Field;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class QueueCommandTest {
+
+    private final QueueCommand command = new QueueCommand();
+
+    @Test
+    void testListsQueue() throws Exception {
+        Item[] items = {item("b", 2, "waiting"), item("a", 1, "blocked")};
+        assertEquals("Build queue (2 items):\n- b: waiting\n- a: blocked",
+                this.command.getReply(items, "user", new String[] {"q"}));
+        assertEquals("Build queue is empty", this.command.getReply(new Item[0], "user", new String[] {"q"}));
+    }
+
+    @Test
+    void testFiltersByNameFirst() throws Exception {
+        Item other = item("other", 1, "waiting");
+        Item[] items = {item("Foo-1", 2, "waiting"), other, item("foo-2", 3, "blocked")};
+        assertEquals("Build queue (3 items total, of which 2 items matched the filter):\n- Foo-1: waiting\n- foo-2: blocked",
+                this.command.getReply(items, "user", new String[] {"q", "name=foo"}));
+        verify(other, never()).getWhy();
+    }
+
+    @Test
+    void testCountOnlyDoesNotLookUpReasons() throws Exception {
+        Item item = item("foo", 1, "waiting");
+        assertTrue(this.command.getReply(new Item[] {item}, "user", new String[] {"q", "#", "name=f"})
+                .startsWith("Build queue (1 items total, of which 1 items matched the filter):"));
+        verify(item, never()).getWhy();
+    }
+
+    @Test
+    void testLimitAndSort() throws Exception {
+        Item notShown = item("c", 3, "waiting");
+        Item[] items = {item("b", 2, "waiting"), notShown, item("a", 1, "blocked")};
+        assertEquals("Build queue (3 items):\n- b: waiting\n- (2 more)",
+                this.command.getReply(items, "user", new String[] {"q", "limit=1"}));
+        assertEquals("Build queue (3 items):\n- a: blocked\n- b: waiting\n- (1 more)",
+                this.command.getReply(items, "user", new String[] {"q", "sort=age", "limit=2"}));
+        verify(notShown, never()).getWhy();
+        assertEquals("Build queue (3 items):\n- a: blocked\n- b: waiting\n- c: waiting",
+                this.command.getReply(items, "user", new String[] {"q", "sort=name"}));
+    }
+
+    @Test
+    void testRegexFilter() throws Exception {
+        Item[] items = {item("b", 2, "waiting"), item("a", 1, "blocked")};
+        assertEquals("Build queue (2 items total, of which 1 items matched the filter):"
+                + "\n- NOTE: got ~ filtering argument for queue: applying regex filter to reported strings: block"
+                + "\n- a: blocked",
+                this.command.getReply(items, "user", new String[] {"q", "~", "block"}));
+    }
+
+    @Test
+    void testInvalidOptions() throws Exception {
+        Item[] items = {item("a", 1, "blocked")};
+        String reply = this.command.getReply(items, "user", new String[] {"q", "limit=x", "sort=size"});
+        assertTrue(reply.contains("unsupported argument 'limit=x'"), reply);
+        assertTrue(reply.contains("unsupported argument 'sort=size'"), reply);
+        assertTrue(reply.contains("- a: blocked"), reply);
+    }
+
+    private static Item item(String name, long inQueueSince, String why) throws Exception {
+        Queue.Task task = mock(Queue.Task.class);
+        when(task.getFullDisplayName()).thenReturn(name);
+        Item item = mock(Queue.WaitingItem.class);
+        when(item.getWhy()).thenReturn(why);
+        when(item.getInQueueSince()).thenReturn(inQueueSince);
+        // public final field, not set on mocks
+        Field field = Item.class.getField("task");
+        field.setAccessible(true);
+        field.set(item, task);
+        return item;
+    }
+}
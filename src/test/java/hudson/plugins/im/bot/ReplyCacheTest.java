@@ -0,0 +1,162 @@
+package hudson.plugins.im.bot;
+
+import hudson.model.AbstractProject;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ReplyCacheTest {
+
+    private static final long TTL = TimeUnit.MINUTES.toNanos(1);
+
+    @Test
+    void testMessageIsCached() {
+        ReplyCache cache = new ReplyCache(10, TTL);
+        CountingCommand command = new CountingCommand();
+        AbstractProject<?, ?> job = job("a");
+
+        assertEquals("a#1", cache.getMessage(command, job).toString());
+        assertEquals("a#1", cache.getMessage(command, job).toString());
+        assertEquals(1, command.count);
+    }
+
+    @Test
+    void testCommandsAreCachedSeparately() {
+        ReplyCache cache = new ReplyCache(10, TTL);
+        CountingCommand status = new CountingCommand();
+        CountingCommand health = new CountingCommand() {
+        };
+        AbstractProject<?, ?> job = job("a");
+
+        cache.getMessage(status, job);
+        cache.getMessage(health, job);
+        assertEquals(1, status.count);
+        assertEquals(1, health.count);
+    }
+
+    @Test
+    void testInvalidate() {
+        ReplyCache cache = new ReplyCache(10, TTL);
+        CountingCommand command = new CountingCommand();
+        AbstractProject<?, ?> a = job("a");
+        AbstractProject<?, ?> b = job("b");
+        cache.getMessage(command, a);
+        cache.getMessage(command, b);
+
+        cache.invalidate(a);
+        assertEquals("a#3", cache.getMessage(command, a).toString());
+        assertEquals("b#2", cache.getMessage(command, b).toString());
+    }
+
+    @Test
+    void testLeastRecentlyUsedJobIsEvicted() {
+        ReplyCache cache = new ReplyCache(2, TTL);
+        CountingCommand command = new CountingCommand();
+        AbstractProject<?, ?> a = job("a");
+        AbstractProject<?, ?> b = job("b");
+        AbstractProject<?, ?> c = job("c");
+        cache.getMessage(command, a);
+        cache.getMessage(command, b);
+        cache.getMessage(command, a);
+        cache.getMessage(command, c);
+
+        assertEquals(3, command.count);
+        cache.getMessage(command, a);
+        assertEquals(3, command.count);
+        cache.getMessage(command, b);
+        assertEquals(4, command.count);
+    }
+
+    @Test
+    void testExpired() {
+        ReplyCache cache = new ReplyCache(10, 0);
+        CountingCommand command = new CountingCommand();
+        AbstractProject<?, ?> job = job("a");
+        cache.getMessage(command, job);
+        cache.getMessage(command, job);
+        assertEquals(2, command.count);
+    }
+
+    @Test
+    void testMessageRenderedDuringInvalidationIsNotCached() {
+        ReplyCache cache = new ReplyCache(10, TTL);
+        AbstractProject<?, ?> job = job("a");
+        CountingCommand command = new CountingCommand() {
+            @Override
+            protected CharSequence getMessageForJob(AbstractProject<?, ?> project) {
+                cache.invalidate(project);
+                return super.getMessageForJob(project);
+            }
+        };
+        cache.getMessage(command, job);
+        cache.getMessage(command, job);
+        assertEquals(2, command.count);
+    }
+
+    @Test
+    void testInvalidationOfOtherJobDoesNotPreventCaching() {
+        ReplyCache cache = new ReplyCache(10, TTL);
+        AbstractProject<?, ?> a = job("a");
+        AbstractProject<?, ?> b = job("b");
+        CountingCommand command = new CountingCommand() {
+            @Override
+            protected CharSequence getMessageForJob(AbstractProject<?, ?> project) {
+                // e.g. builds of other jobs finishing all the time
+                cache.invalidate(b);
+                return super.getMessageForJob(project);
+            }
+        };
+        cache.getMessage(command, a);
+        cache.getMessage(command, a);
+        assertEquals(1, command.count);
+    }
+
+    @Test
+    void testMessageRenderedDuringRemovalIsNotCached() {
+        ReplyCache cache = new ReplyCache(10, TTL);
+        AbstractProject<?, ?> job = job("a");
+        CountingCommand command = new CountingCommand() {
+            @Override
+            protected CharSequence getMessageForJob(AbstractProject<?, ?> project) {
+                cache.remove(project.getFullName());
+                return super.getMessageForJob(project);
+            }
+        };
+        cache.getMessage(command, job);
+        cache.getMessage(command, job);
+        assertEquals(2, command.count);
+    }
+
+    private static AbstractProject<?, ?> job(String name) {
+        AbstractProject<?, ?> job = mock(AbstractProject.class);
+        when(job.getFullName()).thenReturn(name);
+        return job;
+    }
+
+    private static class CountingCommand extends AbstractMultipleJobCommand {
+
+        int count;
+
+        @Override
+        protected CharSequence getMessageForJob(AbstractProject<?, ?> job) {
+            return job.getFullName() + "#" + ++this.count;
+        }
+
+        @Override
+        protected String getCommandShortName() {
+            return "count";
+        }
+
+        @Override
+        public Collection<String> getCommandNames() {
+            return Collections.singleton("count");
+        }
+    }
+}
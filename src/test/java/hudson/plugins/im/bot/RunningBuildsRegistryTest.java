@@ -0,0 +1,80 @@
+package hudson.plugins.im.bot;
+
+import hudson.model.Computer;
+import hudson.model.Executor;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RunningBuildsRegistryTest {
+
+    @Test
+    void testDescribesBuild() {
+        Executor executor = executor("agent", 1);
+        FreeStyleBuild build = build("job", 3);
+
+        RunningBuildsRegistry.Entry entry = RunningBuildsRegistry.describe(executor, build, false);
+        assertEquals("agent#1: job #3", entry.getName());
+        assertEquals("job/job/3/console", entry.getUrl());
+
+        entry = RunningBuildsRegistry.describe(executor, build, true);
+        assertTrue(entry.getName().contains("URL:currExec= "), entry.getName());
+    }
+
+    @Test
+    void testTracksExecutors() {
+        RunningBuildsRegistry registry = new RunningBuildsRegistry();
+        Executor idle = executor("agent", 0);
+        Executor busy = executor("agent", 1);
+        Executor other = executor("other", 0);
+        FreeStyleBuild build = build("job", 3);
+        when(busy.getCurrentExecutable()).thenReturn(build);
+        when(other.getCurrentExecutable()).thenReturn(build("a", 1));
+
+        registry.started(idle);
+        registry.started(other);
+        registry.started(busy);
+        List<RunningBuildsRegistry.Entry> running = registry.getRunning();
+        assertEquals(2, running.size());
+        assertSame(busy, running.get(0).executor);
+        assertSame(other, running.get(1).executor);
+        // described only once
+        assertSame(running.get(0), registry.getRunning().get(0));
+
+        // the next build on the same executor
+        FreeStyleBuild next = build("job", 4);
+        when(busy.getCurrentExecutable()).thenReturn(next);
+        assertEquals("agent#1: job #4", registry.getRunning().get(0).getName());
+
+        registry.finished(busy);
+        assertEquals(1, registry.getRunning().size());
+    }
+
+    private static Executor executor(String computerName, int number) {
+        Computer computer = mock(Computer.class);
+        when(computer.getName()).thenReturn(computerName);
+        when(computer.getDisplayName()).thenReturn(computerName);
+        Executor executor = mock(Executor.class);
+        when(executor.getOwner()).thenReturn(computer);
+        when(executor.getNumber()).thenReturn(number);
+        return executor;
+    }
+
+    private static FreeStyleBuild build(String job, int number) {
+        FreeStyleProject project = mock(FreeStyleProject.class);
+        FreeStyleBuild build = mock(FreeStyleBuild.class);
+        when(build.getParent()).thenReturn(project);
+        when(build.getFullDisplayName()).thenReturn(job + " #" + number);
+        when(build.getUrl()).thenReturn("job/" + job + "/" + number + "/");
+        return build;
+    }
+}
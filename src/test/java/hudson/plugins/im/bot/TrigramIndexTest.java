@@ -0,0 +1,50 @@
+package hudson.plugins.im.bot;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TrigramIndexTest {
+
+    @Test
+    void testFindsTypos() {
+        TrigramIndex index = new TrigramIndex();
+        index.add("deploy-production");
+        index.add("deploy-staging");
+        index.add("unit-tests");
+
+        List<String> similar = index.findSimilar("deploy-prodution", 3, 0.4);
+        assertEquals("deploy-production", similar.get(0));
+        assertFalse(similar.contains("unit-tests"));
+    }
+
+    @Test
+    void testBestMatchFirst() {
+        TrigramIndex index = new TrigramIndex();
+        index.add("build");
+        index.add("build-all");
+        index.add("nightly-build-all");
+
+        assertEquals(List.of("build-all", "build"), index.findSimilar("build-al", 2, 0.1));
+    }
+
+    @Test
+    void testRemove() {
+        TrigramIndex index = new TrigramIndex();
+        index.add("job1");
+        index.remove("job1");
+        index.remove("job1");
+        assertTrue(index.findSimilar("job1", 3, 0.0).isEmpty());
+    }
+
+    @Test
+    void testNothingSimilar() {
+        TrigramIndex index = new TrigramIndex();
+        index.add("deploy");
+        assertTrue(index.findSimilar("xyz", 3, 0.4).isEmpty());
+    }
+}
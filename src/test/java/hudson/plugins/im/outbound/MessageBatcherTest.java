@@ -0,0 +1,74 @@
+package hudson.plugins.im.outbound;
+
+import hudson.plugins.im.DefaultIMMessageTarget;
+import hudson.plugins.im.IMMessageTarget;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MessageBatcherTest {
+
+    private final IMMessageTarget alice = new DefaultIMMessageTarget("alice");
+    private final IMMessageTarget bob = new DefaultIMMessageTarget("bob");
+
+    @Test
+    void testCoalescesPerTarget() {
+        MessageBatcher batcher = new MessageBatcher(10, 1000);
+        assertNull(batcher.add(new OutboundMessage("irc", alice, "a1")));
+        assertNull(batcher.add(new OutboundMessage("irc", bob, "b1")));
+        assertNull(batcher.add(new OutboundMessage("irc", alice, "a2")));
+
+        List<OutboundMessage> batches = batcher.drain();
+        assertEquals(2, batches.size());
+        assertEquals(alice, batches.get(0).getTarget());
+        assertEquals("a1\na2", batches.get(0).getText());
+        assertEquals(bob, batches.get(1).getTarget());
+        assertEquals("b1", batches.get(1).getText());
+        assertTrue(batcher.isEmpty());
+    }
+
+    @Test
+    void testChannelsAreNotMixed() {
+        MessageBatcher batcher = new MessageBatcher(10, 1000);
+        batcher.add(new OutboundMessage("irc", alice, "a1"));
+        batcher.add(new OutboundMessage("xmpp", alice, "a2"));
+        assertEquals(2, batcher.drain().size());
+    }
+
+    @Test
+    void testFullBatchIsReturned() {
+        MessageBatcher batcher = new MessageBatcher(2, 1000);
+        assertNull(batcher.add(new OutboundMessage("irc", alice, "a1")));
+        assertNull(batcher.add(new OutboundMessage("irc", alice, "a2")));
+
+        OutboundMessage full = batcher.add(new OutboundMessage("irc", alice, "a3"));
+        assertEquals("a1\na2", full.getText());
+
+        List<OutboundMessage> batches = batcher.drain();
+        assertEquals(1, batches.size());
+        assertEquals("a3", batches.get(0).getText());
+    }
+
+    @Test
+    void testCharacterLimit() {
+        MessageBatcher batcher = new MessageBatcher(10, 5);
+        assertNull(batcher.add(new OutboundMessage("irc", alice, "aa")));
+        assertNull(batcher.add(new OutboundMessage("irc", alice, "bb")));
+        OutboundMessage full = batcher.add(new OutboundMessage("irc", alice, "cc"));
+        assertEquals("aa\nbb", full.getText());
+    }
+
+    @Test
+    void testSingleMessageIsPassedThrough() {
+        MessageBatcher batcher = new MessageBatcher(10, 1000);
+        OutboundMessage msg = new OutboundMessage("irc", alice, "a1");
+        batcher.add(msg);
+        assertSame(msg, batcher.drain().get(0));
+    }
+}
@@ -0,0 +1,269 @@
+package hudson.plugins.im.outbound;
+
+import hudson.plugins.im.Bulkhead;
+import hudson.plugins.im.DefaultIMMessageTarget;
+import hudson.plugins.im.IMConnection;
+import hudson.plugins.im.IMConnectionListener;
+import hudson.plugins.im.IMException;
+import hudson.plugins.im.IMMessageTarget;
+import hudson.plugins.im.IMPresence;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OutboundDispatcherTest {
+
+    @TempDir
+    File dir;
+
+    private final RecordingConnection connection = new RecordingConnection();
+    private OutboundDispatcher dispatcher;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        this.connection.open();
+        if (this.dispatcher != null) {
+            this.dispatcher.stop(5, TimeUnit.SECONDS);
+        }
+        OutboundDispatcher.registerChannel("irc", null);
+    }
+
+    private OutboundDispatcher start(int lanes, int capacity, BackpressurePolicy policy) {
+        this.dispatcher = new OutboundDispatcher(lanes, capacity, policy, 200, this.dir);
+        return this.dispatcher;
+    }
+
+    private boolean submit(String target, String text) throws InterruptedException {
+        return this.dispatcher.submit("irc", () -> this.connection, new DefaultIMMessageTarget(target), text);
+    }
+
+    /**
+     * Submits a message and waits until the connection is busy sending it,
+     * so the following messages stay in the queue.
+     */
+    private void blockLane() throws InterruptedException {
+        this.connection.close();
+        assertTrue(submit("alice", "m0"));
+        assertTrue(this.connection.sending.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testKeepsOrderPerTargetAcrossLanes() throws InterruptedException {
+        start(4, 1000, BackpressurePolicy.BLOCK);
+        List<String> targets = Arrays.asList("alice", "bob", "carol", "dave", "eve", "frank");
+        for (int i = 0; i < 50; i++) {
+            for (String target : targets) {
+                assertTrue(submit(target, target + ":" + i));
+            }
+        }
+        this.dispatcher.stop(10, TimeUnit.SECONDS);
+
+        for (String target : targets) {
+            List<String> received = this.connection.getLines(target);
+            assertEquals(50, received.size(), target);
+            for (int i = 0; i < 50; i++) {
+                assertEquals(target + ":" + i, received.get(i));
+            }
+        }
+    }
+
+    @Test
+    void testBlockDropsAfterTimeout() throws InterruptedException {
+        start(1, 1, BackpressurePolicy.BLOCK);
+        blockLane();
+        assertTrue(submit("alice", "m1"));
+
+        long start = System.nanoTime();
+        assertFalse(submit("alice", "m2"));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(150));
+
+        this.connection.open();
+        this.dispatcher.stop(5, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("m0", "m1"), this.connection.getLines("alice"));
+    }
+
+    @Test
+    void testDropOldest() throws InterruptedException {
+        start(1, 2, BackpressurePolicy.DROP_OLDEST);
+        blockLane();
+        assertTrue(submit("alice", "m1"));
+        assertTrue(submit("alice", "m2"));
+        assertTrue(submit("alice", "m3"));
+        assertTrue(submit("alice", "m4"));
+
+        this.connection.open();
+        this.dispatcher.stop(5, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("m0", "m3", "m4"), this.connection.getLines("alice"));
+    }
+
+    @Test
+    void testSpillToDiskKeepsOrder() throws InterruptedException {
+        // spilled messages are sent via the connection registered for their channel
+        OutboundDispatcher.registerChannel("irc", () -> this.connection);
+        start(1, 1, BackpressurePolicy.SPILL_TO_DISK);
+        blockLane();
+        assertTrue(submit("alice", "m1"));
+        // the lane is full: these are spilled ...
+        assertTrue(submit("alice", "m2"));
+        assertTrue(submit("bob", "b1"));
+        assertTrue(new File(this.dir, "lane-0.spill").length() > 0);
+        // ... and so is this one, as older messages are still spilled
+        assertTrue(submit("alice", "m3"));
+
+        this.connection.open();
+        this.dispatcher.stop(5, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("m0", "m1", "m2", "m3"), this.connection.getLines("alice"));
+        assertEquals(Collections.singletonList("b1"), this.connection.getLines("bob"));
+    }
+
+    @Test
+    void testRegisteredChannelIsPreferred() throws InterruptedException {
+        RecordingConnection registered = new RecordingConnection();
+        OutboundDispatcher.registerChannel("irc", () -> registered);
+        start(1, 10, BackpressurePolicy.BLOCK);
+        assertTrue(submit("alice", "m1"));
+        assertTrue(this.dispatcher.submit("irc", null, new DefaultIMMessageTarget("alice"), "m2"));
+
+        this.dispatcher.stop(5, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("m1", "m2"), registered.getLines("alice"));
+        assertEquals(Collections.emptyList(), this.connection.getLines("alice"));
+    }
+
+    @Test
+    void testRetriesRejectedSend() throws InterruptedException {
+        start(1, 10, BackpressurePolicy.BLOCK);
+        this.connection.rejections = 1;
+        assertTrue(submit("alice", "m1"));
+        assertTrue(submit("alice", "m2"));
+
+        this.dispatcher.stop(10, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("m1", "m2"), this.connection.getLines("alice"));
+        assertEquals(0, this.connection.rejections);
+    }
+
+    @Test
+    void testRetryDoesNotHoldUpOtherTargets() throws InterruptedException {
+        start(1, 10, BackpressurePolicy.BLOCK);
+        this.connection.rejections = 1;
+        assertTrue(submit("alice", "a1"));
+        assertTrue(submit("alice", "a2"));
+        assertTrue(submit("bob", "b1"));
+
+        // bob's message is sent while alice's wait for the retry of the rejected one
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (this.connection.getLines("bob").isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(Collections.singletonList("b1"), this.connection.getLines("bob"));
+        assertEquals(Collections.emptyList(), this.connection.getLines("alice"));
+
+        this.dispatcher.stop(10, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("a1", "a2"), this.connection.getLines("alice"));
+    }
+
+    @Test
+    void testStopDrainsQueuedMessages() throws InterruptedException {
+        start(2, 100, BackpressurePolicy.BLOCK);
+        blockLane();
+        for (int i = 1; i <= 20; i++) {
+            assertTrue(submit("alice", "m" + i));
+        }
+
+        new Thread(this.connection::open).start();
+        this.dispatcher.stop(10, TimeUnit.SECONDS);
+        assertEquals(21, this.connection.getLines("alice").size());
+        assertEquals(0, this.dispatcher.getQueueDepth());
+
+        assertFalse(submit("alice", "too late"));
+    }
+
+    /**
+     * Records the sent lines per target. Sending blocks while the connection is closed.
+     */
+    private static final class RecordingConnection implements IMConnection {
+        final CountDownLatch sending = new CountDownLatch(1);
+        // number of sends to reject, as if the bulkhead was overloaded
+        int rejections;
+        private final List<IMMessageTarget> targets = new ArrayList<>();
+        private final List<String> lines = new ArrayList<>();
+        private boolean closed;
+
+        synchronized void open() {
+            this.closed = false;
+            notifyAll();
+        }
+
+        @Override
+        public synchronized void close() {
+            this.closed = true;
+        }
+
+        synchronized List<String> getLines(String target) {
+            IMMessageTarget t = new DefaultIMMessageTarget(target);
+            List<String> result = new ArrayList<>();
+            for (int i = 0; i < this.lines.size(); i++) {
+                if (this.targets.get(i).equals(t)) {
+                    result.add(this.lines.get(i));
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public synchronized void send(IMMessageTarget target, String text) throws IMException {
+            this.sending.countDown();
+            if (this.rejections > 0) {
+                this.rejections--;
+                throw new Bulkhead.RejectedCallException("Too many pending calls");
+            }
+            while (this.closed) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            // coalesced messages are split again
+            for (String line : text.split("\n")) {
+                this.targets.add(target);
+                this.lines.add(line);
+            }
+        }
+
+        @Override
+        public boolean connect() {
+            return true;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return true;
+        }
+
+        @Override
+        public void setPresence(IMPresence presence, String statusMessage) {
+        }
+
+        @Override
+        public void addConnectionListener(IMConnectionListener listener) {
+        }
+
+        @Override
+        public void removeConnectionListener(IMConnectionListener listener) {
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package hudson.plugins.im.outbound;
+
+import hudson.plugins.im.DefaultIMMessageTarget;
+import hudson.plugins.im.IMMessageTarget;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OutboxTest {
+
+    private static final long TTL = TimeUnit.HOURS.toMillis(1);
+
+    @TempDir
+    File dir;
+
+    private final IMMessageTarget alice = new DefaultIMMessageTarget("alice");
+    private final IMMessageTarget bob = new DefaultIMMessageTarget("bob");
+
+    private Outbox open() {
+        // compacts on the calling thread
+        return open(Runnable::run);
+    }
+
+    private Outbox open(Executor compactor) {
+        return new Outbox(new File(dir, "outbox.journal"), TTL, Outbox.INITIAL_JOURNAL_BYTES, compactor);
+    }
+
+    @Test
+    void testPendingMessagesSurviveRestart() {
+        Outbox outbox = open();
+        assertTrue(outbox.append("irc", alice, "a1"));
+        assertTrue(outbox.append("irc", bob, "b1"));
+        assertTrue(outbox.append("irc", alice, "a2"));
+        outbox.close();
+
+        outbox = open();
+        List<Outbox.Entry> entries = outbox.takePending("irc");
+        assertEquals(3, entries.size());
+        assertEquals("a1", entries.get(0).getMessage().getText());
+        assertEquals(alice, entries.get(0).getMessage().getTarget());
+        assertEquals("b1", entries.get(1).getMessage().getText());
+        assertEquals("a2", entries.get(2).getMessage().getText());
+        outbox.close();
+    }
+
+    @Test
+    void testDeliveredMessagesAreNotReplayed() {
+        Outbox outbox = open();
+        outbox.append("irc", alice, "a1");
+        outbox.append("irc", alice, "a2");
+        List<Outbox.Entry> entries = outbox.takePending("irc");
+        outbox.delivered(entries.get(0).getId());
+        outbox.release(entries.get(1).getId());
+        outbox.close();
+
+        outbox = open();
+        entries = outbox.takePending("irc");
+        assertEquals(1, entries.size());
+        assertEquals("a2", entries.get(0).getMessage().getText());
+
+        outbox.delivered(entries.get(0).getId());
+        assertEquals(0, outbox.getPendingCount());
+        outbox.close();
+
+        assertEquals(0, open().takePending("irc").size());
+    }
+
+    @Test
+    void testMessagesInFlightAreNotTakenTwice() {
+        Outbox outbox = open();
+        outbox.append("irc", alice, "a1");
+        outbox.append("xmpp", alice, "x1");
+
+        List<Outbox.Entry> entries = outbox.takePending("irc");
+        assertEquals(1, entries.size());
+        assertEquals(0, outbox.takePending("irc").size());
+
+        outbox.release(entries.get(0).getId());
+        assertEquals(1, outbox.takePending("irc").size());
+        outbox.close();
+    }
+
+    @Test
+    void testExpiredMessagesAreDiscarded() {
+        Outbox outbox = new Outbox(new File(dir, "outbox.journal"), 0, Outbox.INITIAL_JOURNAL_BYTES, Runnable::run);
+        outbox.append("irc", alice, "a1");
+        assertEquals(0, outbox.takePending("irc").size());
+        assertEquals(0, outbox.getPendingCount());
+        outbox.close();
+    }
+
+    @Test
+    void testJournalIsCompacted() {
+        String text = "x".repeat(100_000);
+        Outbox outbox = open();
+        // would need far more than the maximum journal size without compaction
+        for (int i = 0; i < 50; i++) {
+            assertTrue(outbox.append("irc", alice, text));
+            assertTrue(outbox.append("irc", bob, text));
+            List<Outbox.Entry> entries = outbox.takePending("irc");
+            for (int j = 0; j < entries.size() - 1; j++) {
+                outbox.delivered(entries.get(j).getId());
+            }
+            outbox.release(entries.get(entries.size() - 1).getId());
+        }
+        assertEquals(1, outbox.getPendingCount());
+        outbox.close();
+    }
+
+    @Test
+    void testCompactedJournalSurvivesRestart() throws IOException {
+        String text = "x".repeat(100_000);
+        // left over by a crash during compaction
+        Files.write(new File(dir, "outbox.journal.tmp").toPath(), new byte[] {1, 2, 3});
+        Outbox outbox = open();
+        for (int i = 0; i < 30; i++) {
+            assertTrue(outbox.append("irc", alice, text + i));
+            List<Outbox.Entry> entries = outbox.takePending("irc");
+            Outbox.Entry newest = entries.get(entries.size() - 1);
+            for (Outbox.Entry entry : entries) {
+                if (entry == newest && i % 10 != 0) {
+                    outbox.delivered(entry.getId());
+                } else {
+                    outbox.release(entry.getId());
+                }
+            }
+        }
+        assertEquals(3, outbox.getPendingCount());
+        outbox.close();
+        assertFalse(new File(dir, "outbox.journal.tmp").exists());
+
+        outbox = open();
+        List<Outbox.Entry> entries = outbox.takePending("irc");
+        assertEquals(3, entries.size());
+        assertEquals(text + 0, entries.get(0).getMessage().getText());
+        assertEquals(text + 10, entries.get(1).getMessage().getText());
+        assertEquals(text + 20, entries.get(2).getMessage().getText());
+        outbox.close();
+    }
+
+    @Test
+    void testFullJournalRejectsMessages() {
+        String text = "x".repeat(100_000);
+        Outbox outbox = open();
+        int appended = 0;
+        while (appended < 50 && outbox.append("irc", alice, text)) {
+            appended++;
+        }
+        assertTrue(appended > 5);
+        assertFalse(outbox.append("irc", alice, text));
+        outbox.close();
+    }
+
+    @Test
+    void testJournalIsCompactedInTheBackground() {
+        String text = "x".repeat(100_000);
+        List<Runnable> compactions = new ArrayList<>();
+        Outbox outbox = open(compactions::add);
+        assertTrue(outbox.append("irc", bob, "pending"));
+        while (compactions.isEmpty()) {
+            assertTrue(outbox.append("irc", alice, text));
+            List<Outbox.Entry> entries = outbox.takePending("irc");
+            outbox.release(entries.get(0).getId());
+            outbox.delivered(entries.get(1).getId());
+        }
+        // scheduled, but not run by the thread appending the messages
+        assertFalse(new File(dir, "outbox.journal.1").exists());
+        assertTrue(outbox.append("irc", alice, "last"));
+        assertEquals(1, compactions.size());
+
+        compactions.remove(0).run();
+        assertTrue(new File(dir, "outbox.journal.1").exists());
+        assertFalse(new File(dir, "outbox.journal").exists());
+        outbox.close();
+
+        outbox = open();
+        List<Outbox.Entry> entries = outbox.takePending("irc");
+        assertEquals(2, entries.size());
+        assertEquals("pending", entries.get(0).getMessage().getText());
+        assertEquals("last", entries.get(1).getMessage().getText());
+        outbox.close();
+    }
+
+    @Test
+    void testRecordsWrittenDuringCompactionAreKept() throws IOException {
+        Outbox outbox = open();
+        outbox.append("irc", alice, "a1");
+        outbox.append("irc", alice, "a2");
+        List<Outbox.Entry> entries = outbox.takePending("irc");
+
+        Outbox.Compaction compaction = outbox.beginCompaction();
+        outbox.delivered(entries.get(0).getId());
+        outbox.release(entries.get(1).getId());
+        outbox.append("irc", alice, "a3");
+        compaction.write();
+        assertTrue(outbox.finishCompaction(compaction));
+        outbox.append("irc", alice, "a4");
+        outbox.close();
+
+        outbox = open();
+        entries = outbox.takePending("irc");
+        assertEquals(3, entries.size());
+        assertEquals("a2", entries.get(0).getMessage().getText());
+        assertEquals("a3", entries.get(1).getMessage().getText());
+        assertEquals("a4", entries.get(2).getMessage().getText());
+        outbox.close();
+    }
+
+    @Test
+    void testCompactionIsVoidAfterTruncation() throws IOException {
+        Outbox outbox = open();
+        outbox.append("irc", alice, "a1");
+        List<Outbox.Entry> entries = outbox.takePending("irc");
+
+        Outbox.Compaction compaction = outbox.beginCompaction();
+        outbox.delivered(entries.get(0).getId());
+        compaction.write();
+        assertFalse(outbox.finishCompaction(compaction));
+        assertEquals(1, dir.list().length);
+        outbox.close();
+
+        assertEquals(0, open().takePending("irc").size());
+    }
+}
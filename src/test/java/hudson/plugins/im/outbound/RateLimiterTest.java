@@ -0,0 +1,43 @@
+package hudson.plugins.im.outbound;
+
+import hudson.plugins.im.DefaultIMMessageTarget;
+import hudson.plugins.im.GroupChatIMMessageTarget;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class RateLimiterTest {
+
+    private final RateLimiter limiter = new RateLimiter(null, null, new RateLimit(1, 2));
+
+    @Test
+    void testChatSharesTheBucketOfItsTarget() {
+        TokenBucket bucket = this.limiter.getTargetBucket("irc", new DefaultIMMessageTarget("#jenkins"), null);
+        assertSame(bucket, this.limiter.getTargetBucket("irc", "#jenkins", null));
+        assertNotSame(bucket, this.limiter.getTargetBucket("irc", "#other", null));
+        assertNotSame(bucket, this.limiter.getTargetBucket("xmpp", "#jenkins", null));
+    }
+
+    @Test
+    void testGroupChatsAreIdentifiedByName() {
+        TokenBucket bucket = this.limiter.getTargetBucket("irc", new GroupChatIMMessageTarget("#jenkins", true), null);
+        assertSame(bucket, this.limiter.getTargetBucket("irc", new GroupChatIMMessageTarget("#jenkins", false), null));
+        assertSame(bucket, this.limiter.getTargetBucket("irc", "#jenkins", null));
+    }
+
+    @Test
+    void testReconfiguredLimitReplacesTheBucket() {
+        TokenBucket bucket = this.limiter.getTargetBucket("irc", "#jenkins", null);
+        TokenBucket reconfigured = this.limiter.getTargetBucket("irc", "#jenkins", new RateLimit(2, 2));
+        assertNotSame(bucket, reconfigured);
+        assertSame(reconfigured, this.limiter.getTargetBucket("irc", "#jenkins", new RateLimit(2, 2)));
+    }
+
+    @Test
+    void testNoLimitPerTarget() {
+        assertNull(new RateLimiter(null, null, null).getTargetBucket("irc", "#jenkins", null));
+    }
+}
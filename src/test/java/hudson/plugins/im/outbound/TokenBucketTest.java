@@ -0,0 +1,50 @@
+package hudson.plugins.im.outbound;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class TokenBucketTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void testBurstIsSentImmediately() {
+        TokenBucket bucket = new TokenBucket(new RateLimit(1, 2), 0);
+        assertEquals(0, bucket.reserve(0));
+        assertEquals(0, bucket.reserve(0));
+    }
+
+    @Test
+    void testExcessMessagesAreQueued() {
+        TokenBucket bucket = new TokenBucket(new RateLimit(1, 2), 0);
+        bucket.reserve(0);
+        bucket.reserve(0);
+        assertEquals(SECOND, bucket.reserve(0), 1);
+        assertEquals(2 * SECOND, bucket.reserve(0), 1);
+        // all reserved tokens are used up 2 seconds later
+        assertEquals(SECOND, bucket.reserve(2 * SECOND), 1);
+    }
+
+    @Test
+    void testRefillIsCappedByBurst() {
+        TokenBucket bucket = new TokenBucket(new RateLimit(1, 2), 0);
+        bucket.reserve(0);
+        bucket.reserve(0);
+        assertEquals(0, bucket.reserve(100 * SECOND));
+        assertEquals(0, bucket.reserve(100 * SECOND));
+        assertEquals(SECOND, bucket.reserve(100 * SECOND), 1);
+    }
+
+    @Test
+    void testParse() {
+        assertEquals(new RateLimit(0.5, 3), RateLimit.parse("0.5/3"));
+        assertEquals(new RateLimit(2, 1), RateLimit.parse(" 2 "));
+        assertNull(RateLimit.parse(""));
+        assertNull(RateLimit.parse("fast"));
+        assertNull(RateLimit.parse("0/1"));
+    }
+}
@@ -0,0 +1,75 @@
+package hudson.plugins.im.tools;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares the {@link CommandTokenizer} with the former implementation of
+ * {@link MessageHelper#extractCommandLine(String)}.
+ * Run with <code>mvn test -Dbenchmark</code>; add <code>-prof gc</code> to the
+ * options in {@link hudson.plugins.im.BenchmarkRunner} to see the allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CommandTokenizerBenchmark {
+
+    @Param({
+        "status",
+        "build my-job 5 branch=main",
+        "build \"my job\" \"second param\" third \"fourth param\""
+    })
+    public String commandLine;
+
+    @Benchmark
+    public String[] tokenizer() {
+        return CommandTokenizer.tokenize(this.commandLine);
+    }
+
+    @Benchmark
+    public String[] extractCommandLine() {
+        return MessageHelper.extractCommandLine(this.commandLine);
+    }
+
+    @Benchmark
+    public String[] legacy() {
+        List<String> parameters = legacyExtractParameters(this.commandLine);
+        return parameters.toArray(new String[parameters.size()]);
+    }
+
+    private static final Pattern SPACE_PATTERN = Pattern.compile("\\s");
+
+    private static List<String> legacyExtractParameters(String commandLine) {
+        List<String> parameters = new ArrayList<String>();
+        commandLine = commandLine.trim();
+        int firstQuote = commandLine.indexOf('"');
+        if (firstQuote != -1) {
+            int endQuoted = commandLine.indexOf('"', firstQuote + 1);
+            if (endQuoted == -1) {
+                Collections.addAll(parameters, SPACE_PATTERN.split(commandLine));
+            } else if (firstQuote == 0) {
+                parameters.add(commandLine.substring(1, endQuoted - 1));
+            } else {
+                parameters.addAll(legacyExtractParameters(commandLine.substring(0, firstQuote)));
+                parameters.add(commandLine.substring(firstQuote + 1, endQuoted));
+                if (endQuoted < commandLine.length() - 1) {
+                    parameters.addAll(legacyExtractParameters(commandLine.substring(endQuoted + 1)));
+                }
+            }
+        } else {
+            Collections.addAll(parameters, SPACE_PATTERN.split(commandLine));
+        }
+        return parameters;
+    }
+}
@@ -0,0 +1,66 @@
+package hudson.plugins.im.tools;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class CommandTokenizerTest {
+
+    @Test
+    void testSplitsOnWhitespace() {
+        assertArrayEquals(new String[] {"build", "a", "b"}, CommandTokenizer.tokenize("  build \t a  b  "));
+        assertArrayEquals(new String[0], CommandTokenizer.tokenize("   "));
+    }
+
+    @Test
+    void testQuotes() {
+        assertArrayEquals(new String[] {"build", "my job", "x"}, CommandTokenizer.tokenize("build \"my job\" x"));
+        assertArrayEquals(new String[] {"ab c"}, CommandTokenizer.tokenize("a\"b c\""));
+        assertArrayEquals(new String[] {"a", ""}, CommandTokenizer.tokenize("a \"\""));
+        assertArrayEquals(new String[] {"it's"}, CommandTokenizer.tokenize("it's"));
+    }
+
+    @Test
+    void testUnmatchedQuoteIsLiteral() {
+        assertArrayEquals(new String[] {"\"a", "b"}, CommandTokenizer.tokenize("\"a b"));
+        assertArrayEquals(new String[] {"a", "b\""}, CommandTokenizer.tokenize("a b\""));
+        assertArrayEquals(new String[] {"x y", "\"z"}, CommandTokenizer.tokenize("\"x y\" \"z"));
+    }
+
+    @Test
+    void testEscapes() {
+        assertArrayEquals(new String[] {"say", "\"hi\""}, CommandTokenizer.tokenize("say \\\"hi\\\""));
+        assertArrayEquals(new String[] {"my job"}, CommandTokenizer.tokenize("my\\ job"));
+        assertArrayEquals(new String[] {"a \"b\" c"}, CommandTokenizer.tokenize("\"a \\\"b\\\" c\""));
+        // other backslashes are kept, e.g. in Windows paths
+        assertArrayEquals(new String[] {"C:\\temp"}, CommandTokenizer.tokenize("C:\\temp"));
+        assertArrayEquals(new String[] {"a\\"}, CommandTokenizer.tokenize("a\\"));
+    }
+
+    @Test
+    void testEscapedBackslash() {
+        assertArrayEquals(new String[] {"a\\b"}, CommandTokenizer.tokenize("a\\\\b"));
+        assertArrayEquals(new String[] {"\\\\server\\share"}, CommandTokenizer.tokenize("\\\\\\\\server\\\\share"));
+        // the backslash is escaped, so the quote isn't
+        assertArrayEquals(new String[] {"x\\", "y"}, CommandTokenizer.tokenize("\"x\\\\\" y"));
+        assertArrayEquals(new String[] {"\\a b"}, CommandTokenizer.tokenize("\\\\\"a b\""));
+    }
+
+    @Test
+    void testEscapedQuote() {
+        // differs from former releases, which kept the backslash
+        assertArrayEquals(new String[] {"\""}, CommandTokenizer.tokenize("\\\""));
+        assertArrayEquals(new String[] {"say", "\"hi", "there\""}, CommandTokenizer.tokenize("say \\\"hi there\\\""));
+        // an escaped quote doesn't close a quoted word
+        assertArrayEquals(new String[] {"a\" b"}, CommandTokenizer.tokenize("\"a\\\" b\""));
+        // an escaped quote doesn't open one either
+        assertArrayEquals(new String[] {"\"a", "b\""}, CommandTokenizer.tokenize("\\\"a b\\\""));
+    }
+
+    @Test
+    void testRange() {
+        String line = "!jenkins build foo";
+        assertArrayEquals(new String[] {"build", "foo"}, CommandTokenizer.tokenize(line, 8, line.length()));
+        assertArrayEquals(new String[] {"bu"}, CommandTokenizer.tokenize(line, 8, 11));
+    }
+}
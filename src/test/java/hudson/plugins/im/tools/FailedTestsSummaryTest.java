@@ -0,0 +1,188 @@
+package hudson.plugins.im.tools;
+
+import hudson.model.AbstractBuild;
+import hudson.plugins.im.tools.FailedTestsSummary.FailedTest;
+import hudson.plugins.im.tools.FailedTestsSummary.Order;
+import hudson.tasks.junit.CaseResult;
+import hudson.tasks.test.AbstractTestResultAction;
+import hudson.tasks.test.TestResult;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class FailedTestsSummaryTest {
+
+    @TempDir
+    File dir;
+
+    @Test
+    void testWriteAndRead() throws IOException {
+        FailedTestsSummary summary = new FailedTestsSummary(3, 10, Arrays.asList(
+                new FailedTest("a.b.CTest.testX", 1, 0.5f, "testReport/a.b/CTest/testX"),
+                new FailedTest("a.b.\u00c4Test.testY", 4, 12f, "testReport/a.b/%C3%84Test/testY")));
+        File file = new File(this.dir, FailedTestsSummary.FILE_NAME);
+        summary.write(file);
+
+        FailedTestsSummary read = FailedTestsSummary.read(file, 50);
+        assertEquals(3, read.getFailCount());
+        assertEquals(10, read.getTotalCount());
+        assertEquals(2, read.getTests().size());
+        FailedTest test = read.getTests().get(1);
+        assertEquals("a.b.\u00c4Test.testY", test.getFullName());
+        assertEquals(4, test.getAge());
+        assertEquals(12f, test.getDuration());
+
+        // only the requested number of tests is read
+        read = FailedTestsSummary.read(file, 1);
+        assertEquals(3, read.getFailCount());
+        assertEquals(1, read.getTests().size());
+        assertEquals("a.b.CTest.testX", read.getTests().get(0).getFullName());
+    }
+
+    @Test
+    void testRejectsUnknownFormat() throws IOException {
+        File file = new File(this.dir, FailedTestsSummary.FILE_NAME);
+        Files.write(file.toPath(), new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+        assertThrows(IOException.class, () -> FailedTestsSummary.read(file, 50));
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    @Test
+    void testComputeSortsYoungestFirstAndLimits() {
+        AbstractTestResultAction action = mock(AbstractTestResultAction.class);
+        when(action.getUrlName()).thenReturn("testReport");
+        when(action.getFailCount()).thenReturn(3);
+        when(action.getTotalCount()).thenReturn(7);
+        // the results are stubbed before the list is returned - Mockito doesn't allow nested stubbing
+        List<TestResult> results = Arrays.asList(
+                caseResult(action, "old", 5), caseResult(action, "b.new", 1), caseResult(action, "a.new", 1));
+        when(action.getFailedTests()).thenReturn(results);
+        AbstractBuild build = mock(AbstractBuild.class);
+        when(build.getAction(AbstractTestResultAction.class)).thenReturn(action);
+
+        FailedTestsSummary summary = FailedTestsSummary.compute(build, 2, Order.AGE);
+        assertEquals(3, summary.getFailCount());
+        assertEquals(7, summary.getTotalCount());
+        assertEquals(2, summary.getTests().size());
+        assertEquals("a.new", summary.getTests().get(0).getFullName());
+        assertEquals("b.new", summary.getTests().get(1).getFullName());
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    @Test
+    void testComputeSortsSlowestFirst() {
+        AbstractTestResultAction action = mock(AbstractTestResultAction.class);
+        when(action.getUrlName()).thenReturn("testReport");
+        when(action.getFailCount()).thenReturn(3);
+        when(action.getTotalCount()).thenReturn(3);
+        TestResult fast = caseResult(action, "fast", 1);
+        when(fast.getDuration()).thenReturn(0.1f);
+        TestResult slow = caseResult(action, "slow", 5);
+        when(slow.getDuration()).thenReturn(30f);
+        TestResult medium = caseResult(action, "medium", 1);
+        when(medium.getDuration()).thenReturn(2f);
+        when(action.getFailedTests()).thenReturn(Arrays.asList(fast, slow, medium));
+        AbstractBuild build = mock(AbstractBuild.class);
+        when(build.getAction(AbstractTestResultAction.class)).thenReturn(action);
+
+        FailedTestsSummary summary = FailedTestsSummary.compute(build, 2, Order.DURATION);
+        assertEquals(2, summary.getTests().size());
+        assertEquals("slow", summary.getTests().get(0).getFullName());
+        assertEquals("medium", summary.getTests().get(1).getFullName());
+    }
+
+    @Test
+    void testOrderForName() {
+        assertEquals(Order.DURATION, Order.forName(" Duration ", Order.AGE));
+        assertEquals(Order.AGE, Order.forName("size", Order.AGE));
+        assertEquals(Order.AGE, Order.forName(null, Order.AGE));
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    @Test
+    void testComputedOncePerTestResults() {
+        AbstractTestResultAction action = mock(AbstractTestResultAction.class);
+        when(action.getUrlName()).thenReturn("testReport");
+        when(action.getFailCount()).thenReturn(1);
+        when(action.getTotalCount()).thenReturn(2);
+        List<TestResult> results = Collections.singletonList(caseResult(action, "t", 1));
+        when(action.getFailedTests()).thenReturn(results);
+        AbstractBuild build = mock(AbstractBuild.class);
+        when(build.getAction(AbstractTestResultAction.class)).thenReturn(action);
+
+        FailedTestsSummary summary = FailedTestsSummary.compute(build, 5, Order.AGE);
+        assertSame(summary, FailedTestsSummary.compute(build, 5, Order.AGE));
+        verify(action, times(1)).getFailedTests();
+
+        // more results recorded
+        when(action.getTotalCount()).thenReturn(3);
+        assertNotSame(summary, FailedTestsSummary.compute(build, 5, Order.AGE));
+        verify(action, times(2)).getFailedTests();
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Test
+    void testDoesNotLoadTestsOfSuccessfulBuild() {
+        AbstractTestResultAction action = mock(AbstractTestResultAction.class);
+        when(action.getTotalCount()).thenReturn(7);
+        AbstractBuild build = mock(AbstractBuild.class);
+        when(build.getAction(AbstractTestResultAction.class)).thenReturn(action);
+
+        FailedTestsSummary summary = FailedTestsSummary.compute(build, 50, Order.AGE);
+        assertEquals(0, summary.getFailCount());
+        assertTrue(summary.getTests().isEmpty());
+        verify(action, never()).getFailedTests();
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Test
+    void testReadsSavedSummary() throws IOException {
+        new FailedTestsSummary(1, 1, Collections.singletonList(new FailedTest("t", 0, 1f, "testReport/t")))
+                .write(new File(this.dir, FailedTestsSummary.FILE_NAME));
+        AbstractBuild build = mock(AbstractBuild.class);
+        when(build.getRootDir()).thenReturn(this.dir);
+        when(build.getUrl()).thenReturn("job/j/1/");
+
+        FailedTestsSummary summary = FailedTestsSummary.of(build);
+        assertEquals("t", summary.getTests().get(0).getFullName());
+        assertTrue(summary.getTests().get(0).getUrl(build).endsWith("job/j/1/testReport/t"));
+        verify(build, never()).getAction(AbstractTestResultAction.class);
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Test
+    void testNoTestResults() {
+        AbstractBuild build = mock(AbstractBuild.class);
+        when(build.getRootDir()).thenReturn(this.dir);
+        assertNull(FailedTestsSummary.of(build));
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static TestResult caseResult(AbstractTestResultAction action, String name, int age) {
+        CaseResult result = mock(CaseResult.class);
+        when(result.getFullName()).thenReturn(name);
+        when(result.getAge()).thenReturn(age);
+        when(result.getTestResultAction()).thenReturn(action);
+        when(result.getUrl()).thenReturn("/" + name);
+        return result;
+    }
+}
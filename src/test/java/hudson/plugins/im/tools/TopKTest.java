@@ -0,0 +1,60 @@
+package hudson.plugins.im.tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TopKTest {
+
+    @Test
+    void testSelectsFirstInOrder() {
+        TopK<Integer> topK = new TopK<Integer>(3, Comparator.naturalOrder()).offerAll(Arrays.asList(5, 1, 9, 3, 7, 2));
+        assertEquals(Arrays.asList(1, 2, 3), topK.toList());
+        assertEquals(6, topK.getCount());
+    }
+
+    @Test
+    void testFewerElementsThanK() {
+        TopK<String> topK = new TopK<String>(5, Comparator.reverseOrder()).offerAll(Arrays.asList("a", "c", "b"));
+        assertEquals(Arrays.asList("c", "b", "a"), topK.toList());
+    }
+
+    @Test
+    void testOffer() {
+        TopK<Integer> topK = new TopK<>(1, Comparator.naturalOrder());
+        assertTrue(topK.offer(2));
+        assertFalse(topK.offer(3));
+        assertTrue(topK.offer(1));
+        assertEquals(Collections.singletonList(1), topK.toList());
+    }
+
+    @Test
+    void testZero() {
+        TopK<Integer> topK = new TopK<Integer>(0, Comparator.naturalOrder()).offerAll(Arrays.asList(1, 2));
+        assertTrue(topK.toList().isEmpty());
+        assertEquals(2, topK.getCount());
+        assertThrows(IllegalArgumentException.class, () -> new TopK<Integer>(-1, Comparator.naturalOrder()));
+    }
+
+    @Test
+    void testSameAsSorting() {
+        Random random = new Random(42);
+        List<Integer> elements = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            elements.add(random.nextInt(1000));
+        }
+        List<Integer> sorted = new ArrayList<>(elements);
+        Collections.sort(sorted);
+        assertEquals(sorted.subList(0, 50), new TopK<Integer>(50, Comparator.naturalOrder()).offerAll(elements).toList());
+    }
+}